@@ -3,10 +3,27 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -15,7 +32,44 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
- * locks to read/write the page.
+ * locks to read/write the page. The locks come from a {@link LockManager}
+ * and follow strict two-phase locking: they are held until
+ * {@link #transactionComplete}.
+ * <p>
+ * A transaction registered with {@link #beginSnapshot} instead reads, without
+ * taking any locks, the pages as they were committed when it began. Each
+ * commit takes the next timestamp from a commit clock; while any snapshot is
+ * open, the before-image of every page a commit changes is kept in that
+ * page's version chain, stamped with the commit that replaced it. A snapshot
+ * reads the oldest version replaced after it began, or failing that the
+ * current committed page (the before-image, if an uncommitted writer has
+ * dirtied the frame). Versions are dropped as soon as no open snapshot began
+ * before the commit that replaced them.
+ * <p>
+ * Pages live in a fixed array of numPages frames. A {@link PageTable} maps
+ * each page's packed key to its frame index; lookups in it take no lock and
+ * allocate nothing, so a hit costs a few array reads. A miss installs a
+ * frame under {@link #lock} before reading the page, and other threads that
+ * want the same page wait on that frame rather than reading it again. The
+ * page table's updates, the eviction policy and the scan rings are guarded
+ * by the lock; hits are logged in a lossy {@link AccessBuffer} and replayed
+ * into the policy by whichever thread next takes the lock.
+ * <p>
+ * Every getPage pins the page's frame until the caller calls
+ * {@link #unpinPage}; pinned frames are never evicted. Pins are counted on
+ * the frame and also recorded per transaction, so that
+ * {@link #transactionComplete} can find and release any the transaction
+ * leaked.
+ * <p>
+ * Sequential scans read ahead with {@link #prefetchPage}, which installs
+ * the frame at once and reads the page on a small background executor.
+ * <p>
+ * An off-heap pool (see {@link #OFF_HEAP_PROPERTY}) allocates one page of
+ * direct memory per frame up front and reads HeapFile pages straight into
+ * it; the HeapPage decodes tuples from that memory on demand, so the pool's
+ * bulk stays out of the Java heap. Before a frame is reused, the page that
+ * was in it is {@link HeapPage#detach detached} onto the heap, so a page
+ * returned by getPage stays valid just as it does in an on-heap pool.
  * 
  * @Threadsafe, all fields are final
  */
@@ -30,24 +84,447 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
-    /** TODO for Lab 4: create your private Lock Manager class. 
-	Be sure to instantiate it in the constructor. */
+    /**
+     * System property naming the page replacement policy used by pools
+     * created without an explicit one: "lru" (the default), "clock" or "2q".
+     */
+    public static final String POLICY_PROPERTY = "simpledb.BufferPool.policy";
+
+    /**
+     * System property giving the number of frames in each sequential scan's
+     * ring (see {@link ScanRing}). 0 disables rings. Defaults to an eighth
+     * of the pool, at most 32 frames.
+     */
+    public static final String RING_PROPERTY = "simpledb.BufferPool.ringPages";
+
+    /**
+     * System property giving the most pages a sequential scan may read ahead
+     * of itself (see {@link #prefetchPage}). 0 disables read-ahead. Defaults
+     * to 16.
+     */
+    public static final String PREFETCH_PROPERTY = "simpledb.BufferPool.prefetchPages";
+
+    /**
+     * System property that makes pools created without an explicit mode
+     * keep HeapFile pages in off-heap frames, e.g.
+     * -Dsimpledb.BufferPool.offHeap=true
+     */
+    public static final String OFF_HEAP_PROPERTY = "simpledb.BufferPool.offHeap";
+
+    /** How long a miss waits for another transaction to unpin a frame. */
+    private static final long PIN_WAIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /** Stands in for a null TransactionId in pinsByTxn. */
+    private static final TransactionId NO_TRANSACTION = new TransactionId();
+
+    /** Upper bound on the size of one direct buffer of an off-heap arena. */
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    /** Threads reading prefetched pages, per pool. */
+    private static final int IO_THREADS = 2;
+
+    /** Page locks taken by getPage and held until transactionComplete. */
+    private final LockManager lockManager = new LockManager();
+
+    /** Timestamp of the latest commit that changed pages. */
+    private final AtomicLong commitClock = new AtomicLong();
+
+    /**
+     * Serializes commits, which stamp versions and advance commitClock in
+     * order, with snapshots beginning and the collection of old versions.
+     */
+    private final Object commitLock = new Object();
+
+    /** Open snapshot transactions, with the commit timestamp each reads as of. */
+    private final ConcurrentHashMap<TransactionId, Long> snapshots =
+        new ConcurrentHashMap<TransactionId, Long>();
+
+    /** Replaced committed versions of pages, newest first. */
+    private final ConcurrentHashMap<PageId, PageVersion> versions =
+        new ConcurrentHashMap<PageId, PageVersion>();
+
+    /** Work registered with onCompletion, per transaction. */
+    private final ConcurrentHashMap<TransactionId, List<CompletionAction>> completions =
+        new ConcurrentHashMap<TransactionId, List<CompletionAction>>();
 
     
     //private Page[] pool;
-    private Hashtable<PageId, Page> deadPool;
-    private int numPages = DEFAULT_PAGES;
+    private final PageTable table;
+    /** The frames; frame i holds the page table entries that map to i. */
+    private final AtomicReferenceArray<Frame> frames;
+    /** Indexes of the empty frames, numFree of them. Guarded by lock. */
+    private final int[] freeFrames;
+    private int numFree;
+    private final int numPages;
+    private final EvictionPolicy policy;
+    private final int ringPages;
+    private final int prefetchPages;
+    /** Frame i's slice of the off-heap arena; null for an on-heap pool. */
+    private final ByteBuffer[] frameBuffers;
+    /** The page size the arena was cut for. */
+    private final int frameBytes;
+
+    /** Reads pages for prefetchPage; its threads exit when idle. */
+    private final ThreadPoolExecutor ioExecutor;
+
+    /** Guards policy, the scan rings, and the occupancy of the frames. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when a read finishes or a frame is unpinned, to a miss that
+     * found no frame to evict.
+     */
+    private final Condition frameFreed = lock.newCondition();
+    private volatile int waitingForFrame = 0;
+
+    /** The frames each transaction has pinned and not yet unpinned. */
+    private final ConcurrentHashMap<TransactionId, PinSet> pinsByTxn =
+        new ConcurrentHashMap<TransactionId, PinSet>();
+
+    /** Frames installed whose page has not been read yet. */
+    private final AtomicInteger loading = new AtomicInteger();
+
+    /** Pages currently recycled by a scan ring, which the policy doesn't track. */
+    private final ConcurrentHashMap<PageId, ScanRing> ringOwner =
+        new ConcurrentHashMap<PageId, ScanRing>();
+
+    private final AccessBuffer accesses = new AccessBuffer();
+
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final StripedCounter evictions = new StripedCounter();
+    private final StripedCounter prefetches = new StripedCounter();
+    private final StripedCounter prefetchHits = new StripedCounter();
+    private final StripedCounter wastedPrefetches = new StripedCounter();
+    private final StripedCounter leakedPins = new StripedCounter();
+
+    /** Only clean, fully loaded pages may be evicted; see evictPage. */
+    private final EvictionPolicy.Filter evictable = new EvictionPolicy.Filter() {
+        public boolean canEvict(PageId pid) {
+            Frame f = lookup(pid);
+            if (f == null)
+                return true; // already gone; lets the policy forget it
+            Page page = f.page;
+            return page != null && page.isDirty() == null && f.pins.get() == 0;
+        }
+    };
+
+    /**
+     * One page's residence in the pool. The thread that installs a frame
+     * reads the page into it; threads that find the frame while that read is
+     * in flight wait on its latch instead of reading the page a second time.
+     * A Frame is never reused for another page.
+     */
+    private static class Frame {
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        final PageId pid;
+        /** pid's packed key; see HeapPageId#toKey */
+        final long key;
+        /** Index in frames, set when installed. */
+        int index = -1;
+        volatile Page page;
+        private volatile Throwable failure;
+        /** Non-null for a prefetched frame; true until a getPage asks for it. */
+        final AtomicBoolean unusedPrefetch;
+        /**
+         * LOADING until the read finishes, then LOADED; ORPHANED if the
+         * frame left the pool first, in which case its slot is still being
+         * read into and the reading thread frees it.
+         */
+        private final AtomicInteger state = new AtomicInteger(LOADING);
+        static final int LOADING = 0, LOADED = 1, ORPHANED = 2;
+        /** Outstanding pins; -1 once the frame has been claimed for eviction. */
+        final AtomicInteger pins;
+
+        /** A getPage's frame starts out pinned for it; a prefetch's does not. */
+        Frame(PageId pid, boolean prefetched) {
+            this.pid = pid;
+            this.key = key(pid);
+            unusedPrefetch = prefetched ? new AtomicBoolean(true) : null;
+            pins = new AtomicInteger(prefetched ? 0 : 1);
+        }
+
+        /** @return false if the frame is being evicted and can't be pinned */
+        boolean tryPin() {
+            while (true) {
+                int p = pins.get();
+                if (p < 0)
+                    return false;
+                if (pins.compareAndSet(p, p + 1))
+                    return true;
+            }
+        }
+
+        /** @return true if this took the last pin */
+        boolean unpin() {
+            return pins.decrementAndGet() == 0;
+        }
+
+        /**
+         * Claims an unpinned frame for eviction; it can't be pinned again.
+         * Caller holds the pool lock.
+         */
+        boolean claim() {
+            return pins.compareAndSet(0, -1);
+        }
+
+        void complete(Page p) {
+            page = p;
+            loaded.countDown();
+        }
+
+        void fail(Throwable t) {
+            failure = t;
+            loaded.countDown();
+        }
+
+        /** @return false if the frame was orphaned during the read */
+        boolean finishLoad() {
+            return state.compareAndSet(LOADING, LOADED);
+        }
+
+        /** @return true if the read is still going and will free the slot */
+        boolean orphan() {
+            return state.compareAndSet(LOADING, ORPHANED);
+        }
+
+        /** @return the page, waiting for the loading thread if necessary */
+        Page await() throws IOException, DbException {
+            Page p = page;
+            if (p != null)
+                return p;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    loaded.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            Throwable t = failure;
+            if (t instanceof IOException)
+                throw new IOException(t.getMessage(), t);
+            if (t instanceof DbException)
+                throw new DbException(t.getMessage());
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            return page;
+        }
+    }
+
+    /**
+     * A committed version of a page that a later commit replaced. The chain
+     * only loses its tail, and only under commitLock.
+     */
+    private static final class PageVersion {
+        /** The page as committed; never modified. */
+        final Page page;
+        /** Timestamp of the commit that replaced it. */
+        final long end;
+        volatile PageVersion older;
+
+        PageVersion(Page page, long end, PageVersion older) {
+            this.page = page;
+            this.end = end;
+            this.older = older;
+        }
+    }
+
+    /**
+     * Work a file has left to do when a transaction completes, such as
+     * publishing or throwing away pages it wrote around the pool.
+     *
+     * @see #onCompletion
+     */
+    interface CompletionAction {
+        /**
+         * Called by transactionComplete once tid's pages have been
+         * committed or discarded, before its locks are released.
+         */
+        void complete(TransactionId tid, boolean commit) throws IOException;
+    }
+
+    /**
+     * The frames one transaction has pinned, once per pin. Unpinning
+     * searches from the most recent pin, which is usually the one released.
+     */
+    private static class PinSet {
+        private Frame[] frames = new Frame[8];
+        private int size;
+
+        synchronized void add(Frame f) {
+            if (size == frames.length)
+                frames = Arrays.copyOf(frames, size * 2);
+            frames[size++] = f;
+        }
+
+        /** @return the frame of the latest pin on pid, now removed, or null */
+        synchronized Frame remove(PageId pid) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (frames[i].pid.equals(pid)) {
+                    Frame f = frames[i];
+                    System.arraycopy(frames, i + 1, frames, i, size - i - 1);
+                    frames[--size] = null;
+                    return f;
+                }
+            }
+            return null;
+        }
+
+        /** @return the number of pins this transaction holds on f */
+        synchronized int count(Frame f) {
+            int n = 0;
+            for (int i = 0; i < size; i++)
+                if (frames[i] == f)
+                    n++;
+            return n;
+        }
+
+        synchronized Frame[] toArray() {
+            return Arrays.copyOf(frames, size);
+        }
+    }
+
+    /**
+     * Lossy, striped log of buffer pool hits. Recording a hit is a store into
+     * the calling thread's stripe; whoever holds the pool lock replays the log
+     * into the eviction policy. Entries overwritten before a replay are lost,
+     * which only makes the policy's recency information slightly coarser.
+     */
+    private static class AccessBuffer {
+        private static final int SLOTS = 32; // per stripe, a power of two
+        private static final int PAD = 32; // ints per cursor, one per line
+
+        private final int mask;
+        private final AtomicReferenceArray<PageId> slots;
+        private final AtomicIntegerArray cursors;
+
+        AccessBuffer() {
+            int stripes = Integer.highestOneBit(
+                    Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) * 2;
+            mask = stripes - 1;
+            slots = new AtomicReferenceArray<PageId>(stripes * SLOTS);
+            cursors = new AtomicIntegerArray(stripes * PAD);
+        }
+
+        /** @return true if the stripe just filled up and should be replayed */
+        boolean record(PageId pid) {
+            int stripe = StripedCounter.stripe(mask);
+            int n = cursors.getAndIncrement(stripe * PAD) & (SLOTS - 1);
+            slots.lazySet(stripe * SLOTS + n, pid);
+            return n == SLOTS - 1;
+        }
+
+        /** Replays and clears the log. Caller holds the pool lock. */
+        void drainTo(EvictionPolicy policy) {
+            for (int i = 0; i < slots.length(); i++) {
+                PageId pid = slots.getAndSet(i, null);
+                if (pid != null)
+                    policy.pageAccessed(pid);
+            }
+        }
+    }
     
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, using the
+     * replacement policy named by the {@link #POLICY_PROPERTY} system
+     * property.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, createPolicy(System.getProperty(POLICY_PROPERTY, "lru"), numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy chooses which page to evict when the pool is full.
+     */
+    public BufferPool(int numPages, EvictionPolicy policy) {
+        this(numPages, policy, Boolean.getBoolean(OFF_HEAP_PROPERTY));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy chooses which page to evict when the pool is full.
+     * @param offHeap if true, HeapFile pages are kept in a direct memory
+     *     arena of numPages pages allocated now, rather than on the heap.
+     */
+    public BufferPool(int numPages, EvictionPolicy policy, boolean offHeap) {
         // = new Page[50];
-    	this.deadPool = new Hashtable<PageId, Page>(numPages);
+    	this.frameBytes = getPageSize();
+    	this.frameBuffers = offHeap ? allocateArena(numPages, frameBytes) : null;
+    	this.table = new PageTable(numPages);
+    	this.frames = new AtomicReferenceArray<Frame>(numPages);
+    	this.freeFrames = new int[numPages];
+    	for (int i = 0; i < numPages; i++)
+    		freeFrames[i] = numPages - 1 - i;
+    	this.numFree = numPages;
     	this.numPages = numPages;
-    	
+    	this.policy = policy;
+    	this.ringPages = Integer.getInteger(RING_PROPERTY, Math.min(32, numPages / 8));
+    	this.prefetchPages = Integer.getInteger(PREFETCH_PROPERTY, 16);
+    	this.ioExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 1, TimeUnit.SECONDS,
+    	        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+    	            public Thread newThread(Runnable r) {
+    	                Thread t = new Thread(r, "BufferPool-prefetch");
+    	                t.setDaemon(true);
+    	                return t;
+    	            }
+    	        });
+    	this.ioExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Allocates numPages frames of frameBytes each in as few direct
+     * buffers as the segment limit allows, and returns a slice per frame.
+     */
+    private static ByteBuffer[] allocateArena(int numPages, int frameBytes) {
+        ByteBuffer[] slices = new ByteBuffer[numPages];
+        int perSegment = Math.max(1, MAX_SEGMENT_BYTES / frameBytes);
+        ByteBuffer segment = null;
+        for (int i = 0; i < numPages; i++) {
+            int k = i % perSegment;
+            if (k == 0)
+                segment = ByteBuffer.allocateDirect(
+                        Math.min(perSegment, numPages - i) * frameBytes);
+            segment.limit((k + 1) * frameBytes);
+            segment.position(k * frameBytes);
+            slices[i] = segment.slice();
+        }
+        return slices;
+    }
+
+    /** @return true if this pool keeps HeapFile pages off the Java heap */
+    public boolean isOffHeap() {
+        return frameBuffers != null;
+    }
+
+    /**
+     * Creates the replacement policy with the given name.
+     *
+     * @param name "lru", "clock" or "2q"
+     * @param numPages the capacity of the pool the policy serves
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static EvictionPolicy createPolicy(String name, int numPages) {
+        String n = name.trim().toLowerCase();
+        if (n.equals("lru"))
+            return new LruEvictionPolicy();
+        if (n.equals("clock"))
+            return new ClockEvictionPolicy(numPages);
+        if (n.equals("2q"))
+            return new TwoQueueEvictionPolicy(numPages);
+        throw new IllegalArgumentException("Unknown eviction policy " + name);
     }
     
     public static int getPageSize() {
@@ -71,28 +548,592 @@ public class BufferPool {
      * be added to the buffer pool and returned.  If there is insufficient
      * space in the buffer pool, an page should be evicted and the new page
      * should be added in its place.
+     * <p>
+     * The page is pinned for tid: it stays in the pool until tid calls
+     * {@link #unpinPage} once for every getPage, or completes.
+     * <p>
+     * tid first gets a shared lock on the page for READ_ONLY and an
+     * exclusive one for READ_WRITE, waiting while another transaction holds
+     * a conflicting lock. A null tid takes no lock.
      *
      * @param tid the ID of the transaction requesting the page
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
+     * @throws TransactionAbortedException if waiting for the lock would
+     *     deadlock; the caller should then abort tid
      * @throws IOException 
      * @throws NoSuchElementException 
      */
-    public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException, NoSuchElementException, IOException {
-    	
-    	if(this.deadPool.containsKey(pid)){
-    		return this.deadPool.get(pid);	
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve the specified page on behalf of a sequential scan. Behaves
+     * like {@link #getPage(TransactionId, PageId, Permissions)}, except that
+     * a page read from disk is placed in the scan's ring rather than being
+     * handed to the eviction policy, and when the pool is full and the ring
+     * is at capacity the ring's oldest frame is reused instead of evicting
+     * some other page. Hits on pages already in the pool do not count as
+     * accesses for the policy either.
+     *
+     * @param ring the scan's ring, or null for an ordinary request
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm,
+            ScanRing ring)
+        throws TransactionAbortedException, DbException, NoSuchElementException, IOException {
+    	if (tid != null) {
+    		Long snapshot = snapshots.isEmpty() ? null : snapshots.get(tid);
+    		if (snapshot != null)
+    			return snapshotPage(tid, pid, perm, ring, snapshot);
+    		lockManager.acquire(tid, pid, perm);
+    	}
+    	return pinPage(tid, pid, ring);
+    }
+
+    /**
+     * Starts tid as a read-only snapshot transaction: until it completes,
+     * its getPage calls take no locks and return pages as committed now.
+     */
+    public void beginSnapshot(TransactionId tid) {
+    	synchronized (commitLock) {
+    		snapshots.put(tid, commitClock.get());
+    	}
+    }
+
+    /** @return true if tid is an open snapshot transaction */
+    public boolean isSnapshot(TransactionId tid) {
+    	return snapshots.containsKey(tid);
+    }
+
+    /**
+     * getPage for a snapshot that reads as of commit timestamp asOf. The
+     * current page is pinned as usual; an old version is not in the pool
+     * and needs no pin.
+     */
+    private Page snapshotPage(TransactionId tid, PageId pid, Permissions perm,
+            ScanRing ring, long asOf) throws DbException, IOException {
+    	if (perm != Permissions.READ_ONLY)
+    		throw new DbException("snapshot transaction " + tid.getId() + " is read-only");
+    	while (true) {
+    		PageVersion head = versions.get(pid);
+    		if (head != null && head.end > asOf) {
+    			PageVersion v = head;
+    			PageVersion older = v.older;
+    			while (older != null && older.end > asOf) {
+    				v = older;
+    				older = v.older;
+    			}
+    			return v.page;
+    		}
+    		Page page = pinPage(tid, pid, ring);
+    		Page visible = page.isDirty() == null ? page : page.getBeforeImage();
+    		// a commit publishes the old version before it changes the page,
+    		// so if none appeared, what we read was committed by asOf
+    		if (versions.get(pid) == head)
+    			return visible;
+    		unpinPage(tid, pid);
+    	}
+    }
+
+    /** getPage, once tid holds the lock it needs. */
+    private Page pinPage(TransactionId tid, PageId pid, ScanRing ring)
+        throws DbException, IOException {
+    	Frame frame = pin(lookup(pid));
+    	if (frame == null) {
+    		Frame mine = new Frame(pid, false);
+    		lock.lock();
+    		try {
+    			frame = reserve(mine, ring, tid);
+    		} finally {
+    			lock.unlock();
+    		}
+    		if (frame == mine) {
+    			misses.increment();
+    			Page page = read(mine);
+    			pinsOf(tid).add(mine);
+    			return page;
+    		}
+    		if (pin(frame) == null) // evicted again since reserve
+    			return pinPage(tid, pid, ring);
+    	}
+    	hits.increment();
+    	if (frame.unusedPrefetch != null && frame.unusedPrefetch.compareAndSet(true, false))
+    		prefetchHits.increment();
+    	if (ring == null) {
+    		if (!ringOwner.isEmpty() && ringOwner.containsKey(pid)) {
+    			promote(pid);
+    		} else if (accesses.record(pid) && lock.tryLock()) {
+    			try {
+    				accesses.drainTo(policy);
+    			} finally {
+    				lock.unlock();
+    			}
+    		}
+    	}
+    	Page page;
+    	try {
+    		page = frame.await();
+    	} catch (IOException e) {
+    		unpin(frame);
+    		throw e;
+    	} catch (DbException e) {
+    		unpin(frame);
+    		throw e;
+    	} catch (RuntimeException e) {
+    		unpin(frame);
+    		throw e;
+    	}
+    	pinsOf(tid).add(frame);
+    	return page;
+    }
+
+    /**
+     * Pins frame if it is still in the pool.
+     *
+     * @return frame, or null if it was null, is being evicted, or has left
+     *     the pool
+     */
+    private Frame pin(Frame frame) {
+    	if (frame == null || !frame.tryPin())
+    		return null;
+    	if (frames.get(frame.index) != frame) { // discarded since the lookup
+    		unpin(frame);
+    		return null;
+    	}
+    	return frame;
+    }
+
+    /** Drops a pin on frame, waking a miss waiting for a frame to free up. */
+    private void unpin(Frame frame) {
+    	if (frame.unpin() && waitingForFrame > 0)
+    		signalFrameFreed();
+    }
+
+    private PinSet pinsOf(TransactionId tid) {
+    	TransactionId t = tid == null ? NO_TRANSACTION : tid;
+    	PinSet pins = pinsByTxn.get(t);
+    	if (pins == null) {
+    		PinSet fresh = new PinSet();
+    		pins = pinsByTxn.putIfAbsent(t, fresh);
+    		if (pins == null)
+    			pins = fresh;
+    	}
+    	return pins;
+    }
+
+    /**
+     * Releases one pin tid holds on pid, taken by getPage. Once a page has
+     * no pins it may be evicted. Does nothing if tid holds no pin on pid.
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+    	PinSet pins = pinsByTxn.get(tid == null ? NO_TRANSACTION : tid);
+    	Frame frame = pins == null ? null : pins.remove(pid);
+    	if (frame != null)
+    		unpin(frame);
+    }
+
+    /** @return the number of pins on pid, or 0 if it is not in the pool */
+    int getPinCount(PageId pid) {
+    	Frame frame = lookup(pid);
+    	return frame == null ? 0 : Math.max(0, frame.pins.get());
+    }
+
+    /**
+     * Releases every pin tid still holds. A transaction should have unpinned
+     * all its pages before it completes, so each one released here is
+     * counted as leaked and logged.
+     */
+    private void releasePins(TransactionId tid) {
+    	PinSet pins = pinsByTxn.remove(tid == null ? NO_TRANSACTION : tid);
+    	if (pins == null)
+    		return;
+    	Frame[] leaked = pins.toArray();
+    	for (Frame frame : leaked) {
+    		Debug.log("BufferPool: transaction %s completed still pinning %s",
+    		        tid == null ? "null" : String.valueOf(tid.getId()), frame.pid);
+    		unpin(frame);
+    	}
+    	leakedPins.add(leaked.length);
+    }
+
+    /**
+     * @return true if a transaction other than tid holds pins; a miss that
+     *     finds every frame pinned waits only then. Caller holds lock.
+     */
+    private boolean pinnedByOthers(TransactionId tid) {
+    	PinSet mine = tid == null ? null : pinsByTxn.get(tid);
+    	for (int i = 0; i < frames.length(); i++) {
+    		Frame f = frames.get(i);
+    		if (f != null && f.pins.get() > (mine == null ? 0 : mine.count(f)))
+    			return true;
+    	}
+    	return false;
+    }
+
+    /** @return the packed page table key of pid */
+    private static long key(PageId pid) {
+    	return HeapPageId.key(pid.getTableId(), pid.pageNumber());
+    }
+
+    /**
+     * @return the frame holding pid, or null. Takes no lock, and may miss a
+     *     page that a concurrent eviction is moving within the page table;
+     *     under the lock it is exact.
+     */
+    private Frame lookup(PageId pid) {
+    	long key = key(pid);
+    	int i = table.get(key);
+    	if (i < 0)
+    		return null;
+    	Frame f = frames.get(i);
+    	return f != null && f.key == key ? f : null;
+    }
+
+    /**
+     * Installs frame, which is not yet in the pool, in a free slot, evicting
+     * a page if there is none, and registers its page with the ring or the
+     * policy. When nothing can be evicted because the other pages are still
+     * being read in, or are pinned by other transactions, waits for a read
+     * to finish or a page to be unpinned (for a pin, at most
+     * PIN_WAIT_NANOS); a prefetch frame gives up instead. Caller holds lock.
+     *
+     * @param tid the transaction the frame is for, or null for a prefetch
+     * @return frame, or the frame of another thread that installed the same
+     *     page first (while this one was waiting)
+     * @throws DbException if no frame can be freed
+     */
+    private Frame reserve(Frame frame, ScanRing ring, TransactionId tid)
+            throws DbException {
+    	long deadline = 0;
+    	while (true) {
+    		Frame present = lookup(frame.pid);
+    		if (present != null)
+    			return present;
+    		accesses.drainTo(policy);
+    		if (ring != null && numFree == 0 && ring.isFull())
+    			recycle(ring);
+    		while (numFree == 0 && evictPage())
+    			;
+    		if (numFree > 0)
+    			break;
+    		// Read-ahead is optional, so it never waits for a frame.
+    		if (frame.unusedPrefetch != null)
+    			throw new DbException("Too many pages! All pages in the buffer pool are pinned or dirty");
+    		waitingForFrame++;
+    		try {
+    			if (loading.get() > 0) {
+    				frameFreed.awaitUninterruptibly();
+    				continue;
+    			}
+    			if (!pinnedByOthers(tid))
+    				throw new DbException("Too many pages! All pages in the buffer pool are pinned or dirty");
+    			long now = System.nanoTime();
+    			if (deadline == 0)
+    				deadline = now + PIN_WAIT_NANOS;
+    			else if (now - deadline >= 0)
+    				throw new DbException("timed out waiting for a buffer pool page to be unpinned");
+    			frameFreed.awaitNanos(deadline - now);
+    		} catch (InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    			throw new DbException("interrupted waiting for a buffer pool frame");
+    		} finally {
+    			waitingForFrame--;
+    		}
+    	}
+    	int i = freeFrames[--numFree];
+    	frame.index = i;
+    	frames.set(i, frame);
+    	table.put(frame.key, i);
+    	loading.incrementAndGet();
+    	if (ring != null) {
+    		ring.pages.addLast(frame.pid);
+    		ringOwner.put(frame.pid, ring);
     	} else {
-    		if (this.deadPool.size() >= this.numPages) {
-    			throw new DbException("Too many pages!");
-    		} else {
-    			this.deadPool.put(pid, Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid));
-    			return this.deadPool.get(pid);
+    		policy.pageAdded(frame.pid);
+    	}
+    	return frame;
+    }
+
+    /**
+     * Takes frame out of the pool and frees its slot, unless its page is
+     * still being read into the slot, in which case the reader frees it.
+     * Caller holds lock.
+     */
+    private void removeFrame(Frame frame) {
+    	table.remove(frame.key);
+    	frames.set(frame.index, null);
+    	if (!frame.orphan())
+    		freeSlot(frame);
+    }
+
+    /**
+     * Returns a removed frame's slot to the free list, first moving its page
+     * out of the off-heap arena. Caller holds lock.
+     */
+    private void freeSlot(Frame frame) {
+    	Page page = frame.page;
+    	if (frameBuffers != null && page instanceof HeapPage)
+    		((HeapPage) page).detach();
+    	freeFrames[numFree++] = frame.index;
+    }
+
+    /** Tells a reserve waiting for a frame that a read has finished. */
+    private void readFinished() {
+    	loading.decrementAndGet();
+    	if (waitingForFrame > 0)
+    		signalFrameFreed();
+    }
+
+    private void signalFrameFreed() {
+    	lock.lock();
+    	try {
+    		frameFreed.signalAll();
+    	} finally {
+    		lock.unlock();
+    	}
+    }
+
+    /**
+     * Reads the page for a reserved frame. Room was made and the page
+     * registered with the policy (or ring) by reserve, so the disk I/O
+     * itself happens outside the pool lock.
+     */
+    private Page read(Frame frame) throws IOException {
+    	PageId pid = frame.pid;
+    	try {
+    		DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    		Page page;
+    		// another subclass may override readPage(PageId), so it is left to it
+    		if (frameBuffers != null
+    		        && (file.getClass() == HeapFile.class || file.getClass() == PaxFile.class)
+    		        && pid instanceof HeapPageId && getPageSize() == frameBytes)
+    			page = ((HeapFile) file).readPage((HeapPageId) pid, frameBuffers[frame.index]);
+    		else
+    			page = file.readPage(pid);
+    		frame.complete(page);
+    		if (!frame.finishLoad()) {
+    			lock.lock();
+    			try {
+    				freeSlot(frame);
+    			} finally {
+    				lock.unlock();
+    			}
     		}
+    		readFinished();
+    		return page;
+    	} catch (Throwable t) {
+    		lock.lock();
+    		try {
+    			if (frames.get(frame.index) == frame) {
+    				removeFrame(frame);
+    				forget(pid);
+    			}
+    			if (!frame.finishLoad())
+    				freeSlot(frame);
+    		} finally {
+    			lock.unlock();
+    		}
+    		frame.fail(t);
+    		readFinished();
+    		if (t instanceof IOException)
+    			throw (IOException) t;
+    		if (t instanceof RuntimeException)
+    			throw (RuntimeException) t;
+    		throw (Error) t;
+    	}
+    }
+
+    /**
+     * Starts reading pid into the pool in the background, for a sequential
+     * scan that expects to want it soon. Does nothing if the page is already
+     * in the pool (or on its way), if read-ahead is disabled, or if no frame
+     * can be freed for it. A later getPage of the page waits for the read
+     * instead of issuing its own.
+     *
+     * @param ring the scan's ring, or null; the page is placed in it as if
+     *     the scan had read it
+     */
+    public void prefetchPage(PageId pid, ScanRing ring) {
+        if (prefetchPages == 0 || lookup(pid) != null)
+            return;
+        final Frame mine = new Frame(pid, true);
+        lock.lock();
+        try {
+            if (reserve(mine, ring, null) != mine)
+                return;
+        } catch (DbException e) {
+            return; // the pool is pinned full; the scan will read it itself
+        } finally {
+            lock.unlock();
+        }
+        prefetches.increment();
+        ioExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    read(mine);
+                } catch (Throwable t) {
+                    // recorded in the frame; a getPage waiting on it rethrows
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the most pages a scan using ring should have prefetched ahead
+     *     of the page it is reading. Prefetched pages wait in the ring, so
+     *     the window must leave room in it for the page being read.
+     */
+    public int getPrefetchLimit(ScanRing ring) {
+        int room = ring != null ? ring.getCapacity() - 1 : numPages / 4;
+        return Math.max(0, Math.min(prefetchPages, room));
+    }
+
+    /** @return true if pid is in the pool and has been read from disk. */
+    public boolean isLoaded(PageId pid) {
+        Frame frame = lookup(pid);
+        return frame != null && frame.page != null;
+    }
+
+    /** Counts a frame leaving the pool that was prefetched but never used. */
+    private void dropped(Frame frame) {
+        if (frame.unusedPrefetch != null && frame.unusedPrefetch.get())
+            wastedPrefetches.increment();
+    }
+
+    /** Moves a page wanted outside its scan from the ring into the main pool. */
+    private void promote(PageId pid) {
+    	lock.lock();
+    	try {
+    		ScanRing owner = ringOwner.remove(pid);
+    		if (owner != null) {
+    			owner.pages.remove(pid);
+    			policy.pageAdded(pid);
+    		}
+    	} finally {
+    		lock.unlock();
+    	}
+    }
+
+    /**
+     * Stops tracking a page that has left the page table. Caller holds lock.
+     */
+    private void forget(PageId pid) {
+    	ScanRing owner = ringOwner.remove(pid);
+    	if (owner != null)
+    		owner.pages.remove(pid);
+    	else
+    		policy.pageRemoved(pid);
+    }
+
+    /**
+     * Frees the oldest frame of a full ring. If that page can't be evicted it
+     * is handed to the eviction policy instead. Caller holds lock.
+     */
+    private void recycle(ScanRing ring) {
+    	PageId oldest = ring.pages.removeFirst();
+    	if (ringOwner.get(oldest) != ring)
+    		return;
+    	ringOwner.remove(oldest);
+    	Frame frame = lookup(oldest);
+    	if (frame == null)
+    		return;
+    	if (evictable.canEvict(oldest) && frame.claim()) {
+    		removeFrame(frame);
+    		evictions.increment();
+    		dropped(frame);
+    	} else {
+    		policy.pageAdded(oldest);
     	}
     }
 
+    /**
+     * Creates a ring for a sequential scan over this pool.
+     *
+     * @return the new ring, or null if scan rings are disabled
+     */
+    public ScanRing newScanRing() {
+        return ringPages > 0 ? new ScanRing(ringPages) : null;
+    }
+
+    /**
+     * Called when a scan is done with its ring: pages still in the ring are
+     * handed to the eviction policy like any other resident page.
+     */
+    public void releaseScanRing(ScanRing ring) {
+        if (ring == null)
+            return;
+        lock.lock();
+        try {
+            for (PageId pid : ring.pages) {
+                if (ringOwner.remove(pid, ring))
+                    policy.pageAdded(pid);
+            }
+            ring.pages.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the number of getPage calls served from the pool. */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return the number of getPage calls that had to read from disk. */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** @return the number of pages evicted to make room for others. */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /** @return the number of pages prefetchPage started reading. */
+    public long getPrefetchCount() {
+        return prefetches.get();
+    }
+
+    /** @return the number of prefetched pages a later getPage asked for. */
+    public long getPrefetchHitCount() {
+        return prefetchHits.get();
+    }
+
+    /**
+     * @return the number of prefetched pages that were evicted or discarded
+     *     before anyone asked for them.
+     */
+    public long getWastedPrefetchCount() {
+        return wastedPrefetches.get();
+    }
+
+    /**
+     * @return the number of pins transactions still held when they
+     *     completed, which transactionComplete released for them.
+     */
+    public long getLeakedPinCount() {
+        return leakedPins.get();
+    }
+
+    /** @return prefetch hits as a fraction of prefetches, or 0 if none. */
+    public double getPrefetchHitRatio() {
+        long issued = prefetches.get();
+        return issued == 0 ? 0 : (double) prefetchHits.get() / issued;
+    }
+
+    /** Zeroes the hit, miss, eviction and prefetch counters. */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        prefetches.reset();
+        prefetchHits.reset();
+        wastedPrefetches.reset();
+        leakedPins.reset();
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -104,7 +1145,7 @@ public class BufferPool {
      */
     public  void releasePage(TransactionId tid, PageId pid) {
         // some code goes here
-        // not necessary for lab1|lab2
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -114,14 +1155,13 @@ public class BufferPool {
      */
     public void transactionComplete(TransactionId tid) throws IOException {
         // some code goes here
-        // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
-        // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -134,7 +1174,124 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
         // some code goes here
-        // not necessary for lab1|lab2
+        releasePins(tid);
+        if (snapshots.containsKey(tid)) {
+            synchronized (commitLock) {
+                snapshots.remove(tid);
+                collectVersions();
+            }
+            return;
+        }
+        try {
+            if (commit)
+                commitPages(tid);
+            else
+                abortPages(tid);
+            List<CompletionAction> actions = completions.remove(tid);
+            if (actions != null) {
+                for (CompletionAction a : actions)
+                    a.complete(tid, commit);
+            }
+        } finally {
+            lockManager.releaseAll(tid);
+        }
+    }
+
+    /**
+     * Has transactionComplete run action when tid completes, in the order
+     * actions were registered.
+     */
+    void onCompletion(TransactionId tid, CompletionAction action) {
+        List<CompletionAction> actions = completions.get(tid);
+        if (actions == null) {
+            List<CompletionAction> fresh = new CopyOnWriteArrayList<CompletionAction>();
+            actions = completions.putIfAbsent(tid, fresh);
+            if (actions == null)
+                actions = fresh;
+        }
+        actions.add(action);
+    }
+
+    /**
+     * Locks pid for tid as getPage would, without reading the page. For
+     * locks on things other than pages a file wants held until tid
+     * completes, such as the end of a HeapFile.
+     */
+    void lock(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException {
+        lockManager.acquire(tid, pid, perm);
+    }
+
+    /**
+     * Forces the pages tid dirtied to disk and makes them the committed
+     * versions, keeping the versions they replace for open snapshots.
+     */
+    private void commitPages(TransactionId tid) throws IOException {
+        synchronized (commitLock) {
+            long ts = commitClock.get() + 1;
+            boolean changed = false;
+            for (PageId pid : lockManager.lockedBy(tid)) {
+                Frame frame = lookup(pid);
+                Page page = frame == null ? null : frame.page;
+                if (page == null || !tid.equals(page.isDirty()))
+                    continue;
+                if (!snapshots.isEmpty()) {
+                    // published before the page changes; see snapshotPage
+                    versions.put(pid, new PageVersion(page.getBeforeImage(), ts,
+                            versions.get(pid)));
+                }
+                // before writing, so the file sees the page is committed
+                page.setBeforeImage();
+                Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+                page.markDirty(false, null);
+                changed = true;
+            }
+            if (changed)
+                commitClock.set(ts);
+        }
+    }
+
+    /** Throws away the pages tid dirtied; they are reread from disk. */
+    private void abortPages(TransactionId tid) {
+        for (PageId pid : lockManager.lockedBy(tid)) {
+            Frame frame = lookup(pid);
+            Page page = frame == null ? null : frame.page;
+            if (page != null && tid.equals(page.isDirty()))
+                discardPage(pid);
+        }
+    }
+
+    /**
+     * Drops the page versions no open snapshot can read: those replaced by
+     * a commit at or before the oldest snapshot's timestamp. Caller holds
+     * commitLock.
+     */
+    private void collectVersions() {
+        if (versions.isEmpty())
+            return;
+        long oldest = Long.MAX_VALUE;
+        for (Long asOf : snapshots.values())
+            oldest = Math.min(oldest, asOf);
+        Iterator<Map.Entry<PageId, PageVersion>> it = versions.entrySet().iterator();
+        while (it.hasNext()) {
+            PageVersion v = it.next().getValue();
+            if (v.end <= oldest) {
+                it.remove();
+                continue;
+            }
+            while (v.older != null && v.older.end > oldest)
+                v = v.older;
+            v.older = null;
+        }
+    }
+
+    /** @return the number of old page versions kept for snapshots */
+    int getVersionCount() {
+        int n = 0;
+        for (PageVersion v : versions.values())
+            for (; v != null; v = v.older)
+                n++;
+        return n;
     }
 
     /**
@@ -154,7 +1311,9 @@ public class BufferPool {
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-        // not necessary for lab1
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        for (Page p : file.insertTuple(tid, t))
+            p.markDirty(true, tid);
     }
 
     /**
@@ -172,7 +1331,31 @@ public class BufferPool {
     public  void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-        // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null)
+            throw new DbException("tuple is not stored in any table");
+        DbFile file = Database.getCatalog().getDatabaseFile(rid.getPageId().getTableId());
+        for (Page p : file.deleteTuple(tid, t))
+            p.markDirty(true, tid);
+    }
+
+    /**
+     * Returns the version of page, which tid holds exclusively and has
+     * pinned, that tid may modify. The first time tid writes a clean page
+     * the pool swaps a {@link HeapPage#fork} of it, already marked dirty,
+     * into its frame, so snapshots reading the committed page keep a copy
+     * that never changes, and those that arrive later see the dirty mark
+     * and read the before-image.
+     */
+    HeapPage writable(TransactionId tid, HeapPage page) {
+        if (page.isDirty() != null)
+            return page;
+        HeapPage copy = page.fork();
+        copy.markDirty(true, tid);
+        Frame frame = lookup(page.getId());
+        if (frame != null && frame.page == page)
+            frame.page = copy;
+        return copy;
     }
 
     /**
@@ -181,9 +1364,11 @@ public class BufferPool {
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-        // some code goes here
-        // not necessary for lab1
-
+        for (int i = 0; i < frames.length(); i++) {
+            Frame frame = frames.get(i);
+            if (frame != null)
+                flushPage(frame.pid);
+        }
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -192,8 +1377,17 @@ public class BufferPool {
         cache.
     */
     public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // not necessary for labs 1--4
+        lock.lock();
+        try {
+            Frame frame = lookup(pid);
+            if (frame != null) {
+                removeFrame(frame);
+                forget(pid);
+                dropped(frame);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -201,24 +1395,65 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
-        // some code goes here
-        // not necessary for lab1
+        Frame frame = lookup(pid);
+        Page page = frame == null ? null : frame.page;
+        if (page != null && page.isDirty() != null) {
+            Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+            page.markDirty(false, null);
+        }
     }
 
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
-        // not necessary for labs 1--4
+        for (PageId pid : lockManager.lockedBy(tid)) {
+            Frame frame = lookup(pid);
+            Page page = frame == null ? null : frame.page;
+            if (page != null && tid.equals(page.isDirty()))
+                flushPage(pid);
+        }
     }
 
     /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Discards a page from the buffer pool, as chosen by the eviction policy,
+     * or failing that one held by a scan ring.
+     * Dirty pages are never evicted (NO STEAL), so uncommitted changes never
+     * reach disk and an abort only has to discard them. Pinned pages and
+     * pages still being read in are not evictable either. Caller holds lock.
+     *
+     * @return false if no page could be evicted
      */
-    private synchronized  void evictPage() throws DbException {
-        // some code goes here
-        // not necessary for lab1
+    private boolean evictPage() {
+        while (true) {
+            PageId victim = policy.chooseVictim(evictable);
+            if (victim == null) {
+                // everything the policy tracks is pinned down; take a frame from a ring
+                for (Map.Entry<PageId, ScanRing> e : ringOwner.entrySet()) {
+                    if (evictable.canEvict(e.getKey())) {
+                        victim = e.getKey();
+                        e.getValue().pages.remove(victim);
+                        ringOwner.remove(victim);
+                        break;
+                    }
+                }
+            }
+            if (victim == null) {
+                return false;
+            }
+            Frame frame = lookup(victim);
+            if (frame == null)
+                continue; // the policy still knew a page already discarded
+            if (!frame.claim()) {
+                // pinned since the filter passed it; the policy keeps it
+                policy.pageAdded(victim);
+                continue;
+            }
+            removeFrame(frame);
+            evictions.increment();
+            dropped(frame);
+            return true;
+        }
     }
 
 }
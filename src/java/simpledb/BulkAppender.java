@@ -0,0 +1,190 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * BulkAppender loads tuples into new pages at the end of a HeapFile on
+ * behalf of one transaction, without the per-tuple page lookup, lock and
+ * dirty mark of {@link BufferPool#insertTuple}. Tuples are serialized
+ * straight into a local buffer of {@link #BATCH_PAGES} pages, which is
+ * written past the end of the file in one sequential write as it fills,
+ * with one APPEND record in the log per batch.
+ * <p>
+ * The new pages are not part of the table until the transaction commits:
+ * until then {@link HeapFile#numPages} stops short of them, so no scan
+ * sees them. The commit writes the last, partly filled page, forces the
+ * file and makes every page visible at once; an abort truncates them
+ * away. Only one transaction at a time can append to a file, whether in
+ * bulk or by inserting into a new page.
+ * <p>
+ * The APPEND records are not read back on recovery. Instead, a load in
+ * progress is recorded on disk in a side file next to the table, named
+ * after it with an ".append" suffix. The side file holds the number of
+ * pages the table had before the load, and it is forced before the first
+ * batch is written. The commit deletes it once the pages and their
+ * dictionary entries are forced; that is the point at which the load
+ * commits. A HeapFile opened on a table that still has the side file, after a crash,
+ * truncates the load away.
+ * <p>
+ * Tuples are copied, not stored: their RecordIds are not set.
+ *
+ * @see HeapFile#bulkAppend
+ */
+public class BulkAppender {
+
+    /** Pages filled before they are written. */
+    public static final int BATCH_PAGES = 64;
+
+    /** Suffix of the side file marking a load, added to the table file's name. */
+    static final String SUFFIX = ".append";
+
+    private final HeapFile file;
+    private final TransactionId tid;
+    private final TupleDesc td;
+    private final StringDictionary dict;
+    private final int pageSize;
+    private final int slots;
+    private final int headerSize;
+    private final int tupleSize;
+
+    /** The pages being filled; those past the current one are zero. */
+    private final byte[] batch;
+    private final BatchStream stream = new BatchStream();
+    private final DataOutputStream out = new DataOutputStream(stream);
+    /** Full pages in batch. */
+    private int fullPages;
+    /** The next slot of the page after them. */
+    private int slot;
+    /** The last page written, or -1 if none has been. */
+    private int lastPage = -1;
+    /** Empty slots on lastPage. */
+    private int lastFree;
+    private boolean completed;
+
+    BulkAppender(HeapFile file, TransactionId tid, StringDictionary dict) {
+        this.file = file;
+        this.tid = tid;
+        this.td = file.getTupleDesc();
+        this.dict = dict;
+        this.pageSize = BufferPool.getPageSize();
+        this.slots = file.slotsPerPage();
+        this.headerSize = (slots + 7) / 8;
+        this.tupleSize = td.getSize();
+        this.batch = new byte[BATCH_PAGES * pageSize];
+    }
+
+    /** @return the side file marking a load into the table stored in tableFile */
+    static File fileFor(File tableFile) {
+        return new File(tableFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Records durably that a load starts on the table stored in tableFile,
+     * which has numPages pages.
+     */
+    static void begin(File tableFile, int numPages) throws IOException {
+        FileOutputStream fos = new FileOutputStream(fileFor(tableFile));
+        try {
+            DataOutputStream dos = new DataOutputStream(fos);
+            dos.writeInt(numPages);
+            dos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * @return the pages the table stored in tableFile had before a load
+     *     that didn't complete; -1 if there is none, or if its side file
+     *     was cut short, in which case no page of it was written
+     */
+    static int pendingFrom(File tableFile) throws IOException {
+        File marker = fileFor(tableFile);
+        if (marker.length() < 4)
+            return -1;
+        DataInputStream in = new DataInputStream(new FileInputStream(marker));
+        try {
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Writes into batch at pos. */
+    private final class BatchStream extends OutputStream {
+        int pos;
+
+        public void write(int b) {
+            batch[pos++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            System.arraycopy(b, off, batch, pos, len);
+            pos += len;
+        }
+    }
+
+    /**
+     * Adds t to the table when the transaction commits.
+     *
+     * @throws DbException if t doesn't match the table's TupleDesc or the
+     *     transaction has completed
+     * @throws IOException if a full batch can't be written
+     */
+    public synchronized void append(Tuple t) throws DbException, IOException {
+        if (completed)
+            throw new DbException("transaction " + tid.getId() + " has completed");
+        if (!td.sameFields(t.getTupleDesc()))
+            throw new DbException("tuple does not match the TupleDesc of table " + file.getId());
+        int page = fullPages * pageSize;
+        stream.pos = page + headerSize + slot * tupleSize;
+        for (int j = 0; j < td.numFields(); j++)
+            HeapPage.writeField(td, dict, j, t.getField(j), out);
+        batch[page + (slot >> 3)] |= 1 << (slot & 7);
+        if (++slot == slots) {
+            slot = 0;
+            if (++fullPages == BATCH_PAGES)
+                writeBatch();
+        }
+    }
+
+    /** Writes the pages in batch, including a partly filled one. */
+    private void writeBatch() throws IOException {
+        int pages = fullPages + (slot > 0 ? 1 : 0);
+        if (pages == 0)
+            return;
+        int first = file.appendPages(batch, pages);
+        Database.getLogFile().logAppend(tid, file.getId(), first, pages);
+        lastPage = first + pages - 1;
+        lastFree = slot > 0 ? slots - slot : 0;
+        Arrays.fill(batch, 0, pages * pageSize, (byte) 0);
+        fullPages = 0;
+        slot = 0;
+    }
+
+    /**
+     * Writes what is left for the commit; appends are refused from then
+     * on.
+     */
+    synchronized void finish() throws IOException {
+        completed = true;
+        writeBatch();
+    }
+
+    /** Refuses appends from now on, for an abort. */
+    synchronized void discard() {
+        completed = true;
+    }
+
+    /** @return the last page written, or -1 if none has been */
+    int getLastPage() {
+        return lastPage;
+    }
+
+    /** @return the empty slots on the last page written */
+    int getLastFree() {
+        return lastFree;
+    }
+}
@@ -136,8 +136,11 @@ public class Catalog {
         return idNameDict.get(id);
     }
     
-    /** Delete all tables from the catalog */
+    /** Delete all tables from the catalog, closing their files */
     public void clear() {
+        for (DbFile file : idDict.values()) {
+            file.close();
+        }
         idDict.clear();
         nameDict.clear();
         idNameDict.clear();
@@ -146,6 +149,16 @@ public class Catalog {
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line has the form
+     * <code>name (field type [pk] [dict], ...) [mmap] [pax]</code>, where type is
+     * <code>int</code>, <code>string</code>, or <code>string(n)</code> for
+     * strings of at most n bytes (Type.STRING_LEN if no length is given).
+     * The field marked <code>pk</code> is the table's primary key, and a
+     * string field marked <code>dict</code> is dictionary encoded. Of the
+     * optional table annotations after the field list, <code>mmap</code>
+     * selects the memory-mapped read path for that table, and
+     * <code>pax</code> stores it as a {@link PaxFile}, by columns within
+     * each page.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -158,35 +171,73 @@ public class Catalog {
                 //assume line is of the format name (field type, field type, ...)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
-                String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                int close = line.lastIndexOf(")");
+                String fields = line.substring(line.indexOf("(") + 1, close).trim();
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
+                ArrayList<Integer> lens = new ArrayList<Integer>();
+                ArrayList<Boolean> dicts = new ArrayList<Boolean>();
                 String primaryKey = "";
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
-                    if (els2[1].trim().toLowerCase().equals("int"))
+                    String type = els2[1].trim().toLowerCase();
+                    int len = Type.STRING_LEN;
+                    //strings may declare their maximum length, e.g. "string(16)"
+                    if (type.startsWith("string(") && type.endsWith(")")) {
+                        len = Integer.parseInt(type.substring(7, type.length() - 1).trim());
+                        type = "string";
+                    }
+                    lens.add(len);
+                    if (type.equals("int"))
                         types.add(Type.INT_TYPE);
-                    else if (els2[1].trim().toLowerCase().equals("string"))
+                    else if (type.equals("string"))
                         types.add(Type.STRING_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    //annotations: "pk", and "dict" to dictionary encode a string
+                    boolean dict = false;
+                    for (int a = 2; a < els2.length; a++) {
+                        if (els2[a].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[a].trim().equals("dict") && type.equals("string"))
+                            dict = true;
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[a]);
                             System.exit(0);
                         }
                     }
+                    dicts.add(dict);
                 }
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
-                TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                int[] lensAr = new int[lens.size()];
+                boolean[] dictsAr = new boolean[dicts.size()];
+                for (int i = 0; i < lensAr.length; i++) {
+                    lensAr[i] = lens.get(i);
+                    dictsAr[i] = dicts.get(i);
+                }
+                TupleDesc t = new TupleDesc(typeAr, namesAr, lensAr, dictsAr);
+                //optional table annotations after the field list, e.g. "... ) mmap",
+                //and "pax" for a table stored by columns within each page
+                boolean mapped = Boolean.getBoolean(HeapFile.MMAP_PROPERTY);
+                boolean pax = false;
+                for (String a : line.substring(close + 1).trim().split("\\s+")) {
+                    if (a.toLowerCase().equals("mmap"))
+                        mapped = true;
+                    else if (a.toLowerCase().equals("pax"))
+                        pax = true;
+                    else if (a.length() > 0) {
+                        System.out.println("Unknown annotation " + a);
+                        System.exit(0);
+                    }
+                }
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf = pax ? new PaxFile(tabFile, t, mapped)
+                    : new HeapFile(tabFile, t, mapped);
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
@@ -196,6 +247,10 @@ public class Catalog {
         } catch (IndexOutOfBoundsException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
+        } catch (IllegalArgumentException e) {
+            //a string length that is not a positive number
+            System.out.println ("Invalid catalog entry : " + line);
+            System.exit(0);
         }
     }
 }
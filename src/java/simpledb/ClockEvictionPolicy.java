@@ -0,0 +1,70 @@
+package simpledb;
+
+import java.util.HashMap;
+
+/**
+ * CLOCK (second chance) replacement. Resident pages sit in a circular
+ * array of slots, each with a reference bit that is set on access. The
+ * hand sweeps the slots, clearing set bits, and evicts the first evictable
+ * page whose bit is already clear.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private final PageId[] slots;
+    private final boolean[] referenced;
+    private final HashMap<PageId, Integer> slotOf;
+    private int hand = 0;
+
+    /**
+     * @param capacity the maximum number of resident pages
+     */
+    public ClockEvictionPolicy(int capacity) {
+        slots = new PageId[capacity];
+        referenced = new boolean[capacity];
+        slotOf = new HashMap<PageId, Integer>(capacity * 2);
+    }
+
+    public void pageAdded(PageId pid) {
+        for (int i = 0; i < slots.length; i++) {
+            int slot = (hand + i) % slots.length;
+            if (slots[slot] == null) {
+                slots[slot] = pid;
+                referenced[slot] = true;
+                slotOf.put(pid, slot);
+                return;
+            }
+        }
+        throw new IllegalStateException("clock is full");
+    }
+
+    public void pageAccessed(PageId pid) {
+        Integer slot = slotOf.get(pid);
+        if (slot != null)
+            referenced[slot] = true;
+    }
+
+    public void pageRemoved(PageId pid) {
+        Integer slot = slotOf.remove(pid);
+        if (slot != null)
+            slots[slot] = null;
+    }
+
+    public PageId chooseVictim(Filter filter) {
+        // two full sweeps: the first may only be clearing reference bits
+        for (int i = 0; i < 2 * slots.length; i++) {
+            int slot = hand;
+            hand = (hand + 1) % slots.length;
+            PageId pid = slots[slot];
+            if (pid == null)
+                continue;
+            if (referenced[slot]) {
+                referenced[slot] = false;
+            } else if (filter.canEvict(pid)) {
+                slots[slot] = null;
+                slotOf.remove(pid);
+                return pid;
+            }
+        }
+        return null;
+    }
+}
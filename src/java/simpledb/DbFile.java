@@ -88,4 +88,11 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     public TupleDesc getTupleDesc();
+
+    /**
+     * Releases any open file handles held by this DbFile. The file may be
+     * read again afterwards, in which case the handles are reopened.
+     * Called by {@link Catalog#clear}.
+     */
+    public void close();
 }
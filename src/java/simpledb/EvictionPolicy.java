@@ -0,0 +1,40 @@
+package simpledb;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool should drop
+ * when it needs room for a new one. The BufferPool tells the policy about
+ * every page that enters, is accessed in, or leaves the pool, and asks it
+ * for a victim in evictPage().
+ * <p>
+ * Implementations are not thread safe; the BufferPool calls them while
+ * holding its own lock.
+ *
+ * @see BufferPool#evictPage
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Tells the pool which pages may currently be evicted (e.g. pages that
+     * are clean and not pinned).
+     */
+    public interface Filter {
+        public boolean canEvict(PageId pid);
+    }
+
+    /** Called when pid is read into the pool. */
+    public void pageAdded(PageId pid);
+
+    /** Called on every buffer pool hit on pid. */
+    public void pageAccessed(PageId pid);
+
+    /** Called when pid leaves the pool other than through chooseVictim. */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Chooses a page to evict among those accepted by filter, and stops
+     * tracking it.
+     *
+     * @return the page to evict, or null if filter rejects every page
+     */
+    public PageId chooseVictim(Filter filter);
+}
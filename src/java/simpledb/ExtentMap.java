@@ -0,0 +1,182 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * ExtentMap says where each page of a compressed HeapFile is stored. A
+ * compressed page takes only as many bytes as it compresses to, so page n
+ * no longer sits at n times the page size; its entry gives the offset of
+ * its bytes in the file, their length, and the capacity of the extent
+ * set aside for it. A page whose compressed form is no smaller is stored
+ * as is, with a length of a whole page.
+ * <p>
+ * A rewritten page goes back in its extent if it fits, and otherwise into
+ * a new extent at the end of the file; the old one is left unused. New
+ * extents are given room to spare so that a page that grows a little
+ * stays put.
+ * <p>
+ * The entries live in a side file next to the table, named after it with
+ * a ".ext" suffix, {@link #ENTRY_BYTES} per page, and an entry is written
+ * through whenever its page is moved. A file is compressed exactly when it
+ * has an extent map.
+ */
+class ExtentMap {
+
+    /** Suffix of the side file, added to the table file's name. */
+    static final String SUFFIX = ".ext";
+
+    /** Bytes of one entry: an 8-byte offset and 4-byte length and capacity. */
+    static final int ENTRY_BYTES = 16;
+
+    /** New extents are a multiple of this many bytes. */
+    static final int EXTENT_ALIGN = 256;
+
+    private final File file;
+    private long[] offsets;
+    private int[] lengths;
+    private int[] capacities;
+    private int numPages;
+    /** The end of the last extent: where the next one goes. */
+    private long end;
+    /** Open on the side file once the first entry is written. */
+    private RandomAccessFile out;
+
+    /** @return the side file of the table stored in tableFile */
+    static File fileFor(File tableFile) {
+        return new File(tableFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Loads the extent map of the table stored in tableFile, which is empty
+     * if the table has no side file.
+     */
+    ExtentMap(File tableFile) throws IOException {
+        this.file = fileFor(tableFile);
+        int known = file.exists() ? (int) (file.length() / ENTRY_BYTES) : 0;
+        offsets = new long[Math.max(known, 16)];
+        lengths = new int[offsets.length];
+        capacities = new int[offsets.length];
+        if (known == 0)
+            return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            for (int p = 0; p < known; p++) {
+                offsets[p] = in.readLong();
+                lengths[p] = in.readInt();
+                capacities[p] = in.readInt();
+                end = Math.max(end, offsets[p] + capacities[p]);
+            }
+        } finally {
+            in.close();
+        }
+        numPages = known;
+    }
+
+    /** @return the number of pages the map has entries for */
+    synchronized int numPages() {
+        return numPages;
+    }
+
+    /** @return the offset of page pgNo's bytes */
+    synchronized long getOffset(int pgNo) {
+        check(pgNo);
+        return offsets[pgNo];
+    }
+
+    /** @return the number of bytes page pgNo is stored in */
+    synchronized int getLength(int pgNo) {
+        check(pgNo);
+        return lengths[pgNo];
+    }
+
+    private void check(int pgNo) {
+        if (pgNo < 0 || pgNo >= numPages)
+            throw new IllegalArgumentException("Read past end of table");
+    }
+
+    /**
+     * Finds room for page pgNo, an existing page or the one after the
+     * last, stored in length bytes, and records it there in memory: its own
+     * extent if the page fits, or a new one at the end of the file. The
+     * caller writes the page's bytes and then {@link #writeEntry}, holding
+     * this map's monitor throughout, so a reader never finds an entry
+     * whose bytes aren't there yet.
+     *
+     * @return the offset to write the page's bytes at
+     */
+    synchronized long place(int pgNo, int length) {
+        if (pgNo < 0 || pgNo > numPages)
+            throw new IllegalArgumentException("page " + pgNo + " is past the end of the table");
+        if (pgNo < numPages && length <= capacities[pgNo]) {
+            lengths[pgNo] = length;
+            return offsets[pgNo];
+        }
+        if (pgNo == offsets.length) {
+            int n = offsets.length * 2;
+            long[] o = new long[n];
+            int[] l = new int[n];
+            int[] c = new int[n];
+            System.arraycopy(offsets, 0, o, 0, numPages);
+            System.arraycopy(lengths, 0, l, 0, numPages);
+            System.arraycopy(capacities, 0, c, 0, numPages);
+            offsets = o;
+            lengths = l;
+            capacities = c;
+        }
+        // an eighth more than needed, so that small growth stays in place
+        int capacity = Math.min(BufferPool.getPageSize(), length + length / 8);
+        capacity = (Math.max(capacity, length) + EXTENT_ALIGN - 1) / EXTENT_ALIGN * EXTENT_ALIGN;
+        offsets[pgNo] = end;
+        lengths[pgNo] = length;
+        capacities[pgNo] = capacity;
+        end += capacity;
+        if (pgNo == numPages)
+            numPages++;
+        return offsets[pgNo];
+    }
+
+    /** Writes the entry of page pgNo to the side file. */
+    synchronized void writeEntry(int pgNo) throws IOException {
+        if (out == null)
+            out = new RandomAccessFile(file, "rw");
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(ENTRY_BYTES);
+        DataOutputStream dos = new DataOutputStream(entry);
+        dos.writeLong(offsets[pgNo]);
+        dos.writeInt(lengths[pgNo]);
+        dos.writeInt(capacities[pgNo]);
+        out.seek((long) pgNo * ENTRY_BYTES);
+        out.write(entry.toByteArray());
+    }
+
+    /**
+     * Drops the pages from numPages on, which have been cut off the table.
+     * Their extents are not reused.
+     */
+    synchronized void truncate(int numPages) throws IOException {
+        if (numPages >= this.numPages)
+            return;
+        this.numPages = numPages;
+        if (out == null)
+            out = new RandomAccessFile(file, "rw");
+        out.setLength((long) numPages * ENTRY_BYTES);
+    }
+
+    /** Makes the entries written so far durable. */
+    synchronized void force() throws IOException {
+        if (out != null)
+            out.getFD().sync();
+    }
+
+    /** Closes the side file; the next write reopens it. */
+    synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // Ignore failures closing the file
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records roughly how full each page of a HeapFile is, so an
+ * insert can go straight to a page with room rather than reading pages
+ * until it finds one.
+ * <p>
+ * Each page has one byte: 0 if it is full, otherwise its free slots as a
+ * fraction of its capacity scaled to 1..255, rounded up so that a page with
+ * any free slot never reads as full. The bytes live in a side file next to
+ * the table, named after it with a ".fsm" suffix, and an entry is written
+ * through whenever its page is written, so a reopened table starts out with
+ * the map it had. In memory a bitmap of the pages with room, searched from
+ * a low-water mark below which no page has room, finds one in amortized
+ * constant time.
+ * <p>
+ * The map is a hint, not a promise: it also tracks changes that haven't
+ * been committed, and those are lost if their transaction aborts. Callers
+ * check the page they are sent to and {@link #update} the entry when it is
+ * wrong, and HeapFile refreshes the entry of every page it reads. A table
+ * with no side file, as HeapFileEncoder writes them, is taken to have room
+ * on its last page only.
+ */
+class FreeSpaceMap {
+
+    /** Suffix of the side file, added to the table file's name. */
+    static final String SUFFIX = ".fsm";
+
+    private final File file;
+    /** Each page's entry; grows as pages are added. */
+    private byte[] fullness;
+    /** Pages whose entry is not 0. */
+    private final BitSet room = new BitSet();
+    /** No page below this one has room. */
+    private int lowWater;
+    /** Open on the side file once the first entry is written. */
+    private RandomAccessFile out;
+
+    /**
+     * Loads the map of a table of numPages pages stored in tableFile.
+     */
+    FreeSpaceMap(File tableFile, int numPages) throws IOException {
+        this.file = new File(tableFile.getPath() + SUFFIX);
+        fullness = new byte[Math.max(numPages, 16)];
+        int known = 0;
+        if (file.exists()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            try {
+                known = (int) Math.min(file.length(), numPages);
+                in.readFully(fullness, 0, known);
+            } finally {
+                in.close();
+            }
+        } else if (numPages > 0) {
+            fullness[numPages - 1] = 1;
+        }
+        for (int p = 0; p < numPages; p++) {
+            if (p >= known && file.exists())
+                fullness[p] = 1; // pages added since; look at them once
+            if (fullness[p] != 0)
+                room.set(p);
+        }
+    }
+
+    /** @return the File the map is kept in */
+    File getFile() {
+        return file;
+    }
+
+    /** @return free slots scaled to an entry */
+    static byte scale(int free, int capacity) {
+        if (free <= 0)
+            return 0;
+        return (byte) ((free * 255 + capacity - 1) / capacity);
+    }
+
+    /**
+     * @return a page the map believes has room, or -1 if it knows of none
+     */
+    synchronized int findRoom() {
+        int p = room.nextSetBit(lowWater);
+        lowWater = p < 0 ? room.length() : p;
+        return p;
+    }
+
+    /**
+     * Records that page pgNo has free of capacity slots free, in memory
+     * only.
+     */
+    synchronized void update(int pgNo, int free, int capacity) {
+        byte b = scale(free, capacity);
+        if (pgNo >= fullness.length) {
+            byte[] grown = new byte[Math.max(pgNo + 1, fullness.length * 2)];
+            System.arraycopy(fullness, 0, grown, 0, fullness.length);
+            fullness = grown;
+        }
+        fullness[pgNo] = b;
+        if (b == 0) {
+            room.clear(pgNo);
+        } else {
+            room.set(pgNo);
+            lowWater = Math.min(lowWater, pgNo);
+        }
+    }
+
+    /**
+     * Records that page pgNo has free of capacity slots free, and writes
+     * the entry to the side file.
+     */
+    synchronized void write(int pgNo, int free, int capacity) throws IOException {
+        update(pgNo, free, capacity);
+        if (out == null)
+            out = new RandomAccessFile(file, "rw");
+        if (out.length() < pgNo) {
+            // pages no entry was ever written for: record what we know
+            long from = out.length();
+            out.seek(from);
+            out.write(fullness, (int) from, pgNo - (int) from);
+        }
+        out.seek(pgNo);
+        out.write(fullness[pgNo]);
+    }
+
+    /**
+     * Forgets the pages from numPages on, which have been cut off the
+     * table, in memory only.
+     */
+    synchronized void truncate(int numPages) {
+        if (numPages < fullness.length)
+            Arrays.fill(fullness, numPages, fullness.length, (byte) 0);
+        room.clear(numPages, Math.max(numPages, room.length()));
+    }
+
+    /** @return the entry for page pgNo, 0 for a full page */
+    synchronized int getEntry(int pgNo) {
+        return pgNo < fullness.length ? fullness[pgNo] & 0xff : 0;
+    }
+
+    /** Closes the side file; the next write reopens it. */
+    synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // Ignore failures closing the file
+            }
+            out = null;
+        }
+    }
+}
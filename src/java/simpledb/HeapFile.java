@@ -1,6 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -9,28 +13,202 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * Inserts find a page with room through the file's {@link FreeSpaceMap},
+ * loaded on the first insert, delete or page write, and add a page to the
+ * end of the file when no page has room. Loads can instead fill new pages
+ * directly with a {@link BulkAppender}. Either way, a transaction adding
+ * pages holds an exclusive lock on the end of the file until it completes.
+ * <p>
+ * A file may also be compressed: each page is stored compressed by a
+ * {@link PageCompressor}, wherever its {@link ExtentMap} says, rather
+ * than at its page number times the page size. Compression is transparent
+ * above readPageData and writePageData; the BufferPool caches pages
+ * decompressed. A file is compressed if it has an extent map, as
+ * {@link HeapFileEncoder#compress} writes them, and is then never read
+ * through a memory mapping.
+ * <p>
+ * A file loaded by HeapFileEncoder also has a {@link ZoneMap} of the
+ * range of each int field on each page, and a scan given a predicate
+ * skips the pages whose ranges rule it out. {@link #buildBloomFilters}
+ * adds {@link PageBloomFilters} of chosen fields, with which a scan for
+ * one value of such a field skips the pages that don't hold it.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    /**
+     * System property that makes every HeapFile use the memory-mapped read
+     * path unless it is constructed with an explicit mode, e.g.
+     * -Dsimpledb.HeapFile.mmap=true
+     */
+    public static final String MMAP_PROPERTY = "simpledb.HeapFile.mmap";
+
+    /** Upper bound on the size of one mapped segment. */
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
     private final File f;
     private final TupleDesc td;
     private final int tableid ;
+    private final boolean mapped;
+    private final boolean compressed;
+    private final boolean zoned;
+
+    /** Long-lived channel used for positional page reads; opened lazily. */
+    private FileChannel channel;
+
+    /** Channel pages are written through; opened by the first write. */
+    private FileChannel writeChannel;
+
+    /** Where inserts find room; null until first needed. */
+    private volatile FreeSpaceMap freeSpace;
+    /** The ranges of the int fields on each page; null until first used. */
+    private volatile ZoneMap zones;
+    /** True if the file has Bloom filters. */
+    private volatile boolean bloomed;
+    /** The Bloom filters of chosen fields on each page; null until first used. */
+    private volatile PageBloomFilters blooms;
+    /** Where a compressed file's pages are; null until first used. */
+    private volatile ExtentMap extents;
+    /** Compresses pages written by the current thread. */
+    private static final ThreadLocal<PageCompressor> compressor =
+        new ThreadLocal<PageCompressor>() {
+            protected PageCompressor initialValue() {
+                return new PageCompressor();
+            }
+        };
+    /** The dictionary of the encoded string columns; null until first used. */
+    private volatile StringDictionary dictionary;
+
+    /**
+     * The first page of a bulk load that hasn't committed, or -1. Pages
+     * from here on aren't part of the table yet.
+     */
+    private volatile int pendingFrom = -1;
+
+    /** The uncommitted bulk load, if any. Guarded by this. */
+    private BulkAppender appender;
+
+    /**
+     * Read-only mappings of the file, each segmentBytes() long except
+     * possibly the last. Replaced wholesale by remap(), so readers can use
+     * a snapshot of the array without locking.
+     */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
 	
     /**
-     * Constructs a heap file backed by the specified file.
+     * Constructs a heap file backed by the specified file. The file is
+     * memory-mapped if the {@link #MMAP_PROPERTY} system property is true.
      * 
      * @param f
      *            the file that stores the on-disk backing store for this heap
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, Boolean.getBoolean(MMAP_PROPERTY));
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param mapped
+     *            if true, pages are read from a memory mapping of the file
+     *            instead of with positional reads. Ignored if the file is
+     *            compressed.
+     */
+    public HeapFile(File f, TupleDesc td, boolean mapped) {
         // some code goes here
         this.f = f;
         this.tableid = f.getAbsoluteFile().hashCode();
         this.td = td;
+        this.compressed = ExtentMap.fileFor(f).exists();
+        this.mapped = mapped && !compressed;
+        this.zoned = ZoneMap.fileFor(f).exists() && ZoneMap.covers(td);
+        this.bloomed = PageBloomFilters.fileFor(f).exists();
+        if (BulkAppender.fileFor(f).exists()) {
+            // a bulk load that never committed, cut short by a crash
+            try {
+                int from = BulkAppender.pendingFrom(f);
+                if (from >= 0)
+                    truncatePages(from);
+                BulkAppender.fileFor(f).delete();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * @return true if pages of this file are read through a memory mapping.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * @return true if pages of this file are stored compressed.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return the file's zone map, loading it on first use, or null if the
+     *     file has none
+     */
+    ZoneMap getZoneMap() throws IOException {
+        if (!zoned)
+            return null;
+        ZoneMap map = zones;
+        if (map == null) {
+            synchronized (this) {
+                map = zones;
+                if (map == null)
+                    zones = map = new ZoneMap(f, td);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return the file's Bloom filters, loading them on first use, or null
+     *     if the file has none
+     */
+    PageBloomFilters getBloomFilters() throws IOException {
+        if (!bloomed)
+            return null;
+        PageBloomFilters filters = blooms;
+        if (filters == null) {
+            synchronized (this) {
+                filters = blooms;
+                if (filters == null)
+                    blooms = filters = new PageBloomFilters(f, td);
+            }
+        }
+        return filters;
+    }
+
+    /** @return the extent map of a compressed file, loading it on first use */
+    private ExtentMap getExtentMap() {
+        ExtentMap map = extents;
+        if (map == null) {
+            synchronized (this) {
+                map = extents;
+                if (map == null) {
+                    try {
+                        extents = map = new ExtentMap(f);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        }
+        return map;
     }
 
     /**
@@ -71,43 +249,400 @@ public class HeapFile implements DbFile {
     public Page readPage(PageId pid) {
         // some code goes here
     	HeapPageId id = (HeapPageId) pid;
-        BufferedInputStream bis = null;
-
         try {
-            bis = new BufferedInputStream(new FileInputStream(f));
-            byte pageBuf[] = new byte[BufferPool.PAGE_SIZE];
-            if (bis.skip(id.pageNumber() * BufferPool.PAGE_SIZE) != id
-                    .pageNumber() * BufferPool.PAGE_SIZE) {
-                throw new IllegalArgumentException(
-                        "Unable to seek to correct place in heapfile");
-            }
-            int retval = bis.read(pageBuf, 0, BufferPool.PAGE_SIZE);
-            if (retval == -1) {
-                throw new IllegalArgumentException("Read past end of table");
-            }
-            if (retval < BufferPool.PAGE_SIZE) {
-                throw new IllegalArgumentException("Unable to read "
-                        + BufferPool.PAGE_SIZE + " bytes from heapfile");
-            }
-            HeapPage p = new HeapPage(id, pageBuf);
+            byte pageBuf[] = new byte[BufferPool.getPageSize()];
+            readPageData(id.pageNumber(), pageBuf);
+            HeapPage p = newPage(id, pageBuf);
+            noteFreeSpace(p);
             return p;
         } catch (IOException e) {
             throw new RuntimeException(e);
-        } finally {
-            // Close the file on success or error
+        }
+    }
+
+    /**
+     * Reads page pid into frame, a buffer of at least BufferPool.getPageSize()
+     * bytes owned by the caller, and returns a HeapPage that decodes its
+     * tuples from frame in place. Used by an off-heap BufferPool to read
+     * straight into its arena.
+     */
+    HeapPage readPage(HeapPageId pid, ByteBuffer frame) throws IOException {
+        ByteBuffer buf = frame.duplicate();
+        buf.clear();
+        buf.limit(BufferPool.getPageSize());
+        readPageData(pid.pageNumber(), buf);
+        HeapPage p = newPage(pid, frame);
+        noteFreeSpace(p);
+        return p;
+    }
+
+    /** @return a page of this file's layout over data, read from disk */
+    HeapPage newPage(HeapPageId pid, byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /** @see #newPage(HeapPageId, byte[]) */
+    HeapPage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /** Refreshes p's free space map entry, if the map is loaded. */
+    private void noteFreeSpace(HeapPage p) {
+        FreeSpaceMap map = freeSpace;
+        if (map != null)
+            map.update(p.getId().pageNumber(), p.getNumEmptySlots(), p.getNumSlots());
+    }
+
+    /** @return the file's free space map, loading it on first use */
+    FreeSpaceMap getFreeSpaceMap() throws IOException {
+        FreeSpaceMap map = freeSpace;
+        if (map == null) {
+            synchronized (this) {
+                map = freeSpace;
+                if (map == null)
+                    freeSpace = map = new FreeSpaceMap(f, numPages());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return the file's string dictionary, loading it on first use, or
+     *     null if no column is dictionary encoded
+     */
+    StringDictionary getDictionary() throws IOException {
+        if (!td.hasDictionary())
+            return null;
+        StringDictionary dict = dictionary;
+        if (dict == null) {
+            synchronized (this) {
+                dict = dictionary;
+                if (dict == null)
+                    dictionary = dict = new StringDictionary(f, td);
+            }
+        }
+        return dict;
+    }
+
+    /**
+     * Returns the field tuples of this table store for value in field i,
+     * which is dictionary encoded: the one shared by every row with that
+     * value, so a predicate comparing the field to it for equality compares
+     * codes. If no row has stored the value, a plain StringField is
+     * returned.
+     *
+     * @throws IllegalArgumentException if field i is not dictionary encoded
+     */
+    public StringField intern(int i, String value) throws IOException {
+        if (!td.isDictionaryEncoded(i))
+            throw new IllegalArgumentException("field " + i + " is not dictionary encoded");
+        StringField f = getDictionary().lookup(i, value);
+        return f != null ? f : new StringField(value, td.getStringLen(i));
+    }
+
+    /** @return the number of tuple slots on each page of this file */
+    int slotsPerPage() {
+        return (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+    }
+
+    /**
+     * Reads the raw bytes of page pgNo into buf, either from the mapping or
+     * using a positional read on the shared channel. Positional reads do not
+     * touch the channel's file pointer, so concurrent callers need no extra
+     * synchronization.
+     *
+     * @throws IllegalArgumentException if the page lies past the end of the file
+     */
+    void readPageData(int pgNo, byte[] buf) throws IOException {
+        readPageData(pgNo, ByteBuffer.wrap(buf));
+    }
+
+    /** Reads the raw bytes of page pgNo into the remaining bytes of buf. */
+    void readPageData(int pgNo, ByteBuffer buf) throws IOException {
+        if (compressed) {
+            readCompressed(pgNo, buf);
+            return;
+        }
+        long offset = (long) pgNo * BufferPool.getPageSize();
+        if (mapped) {
+            readMapped(offset, buf);
+            return;
+        }
+        readAt(offset, buf);
+    }
+
+    /** Reads page pgNo of a compressed file and decompresses it into buf. */
+    private void readCompressed(int pgNo, ByteBuffer buf) throws IOException {
+        ExtentMap map = getExtentMap();
+        long offset;
+        byte[] stored;
+        synchronized (map) {
+            offset = map.getOffset(pgNo);
+            stored = new byte[map.getLength(pgNo)];
+        }
+        readAt(offset, ByteBuffer.wrap(stored));
+        if (stored.length == BufferPool.getPageSize()) {
+            buf.put(stored); // stored as is
+            return;
+        }
+        byte[] page = new byte[BufferPool.getPageSize()];
+        PageCompressor.decompress(stored, 0, stored.length, page);
+        buf.put(page);
+    }
+
+    /** Fills buf from offset with positional reads on the shared channel. */
+    private void readAt(long offset, ByteBuffer buf) throws IOException {
+        int start = buf.position();
+        try {
+            readFully(getChannel(), offset, buf);
+        } catch (ClosedChannelException e) {
+            // another thread was interrupted mid-read, which closes the
+            // channel for everyone; reopen and retry once
+            if (Thread.currentThread().isInterrupted())
+                throw e;
+            buf.position(start);
+            readFully(getChannel(), offset, buf);
+        }
+    }
+
+    private static void readFully(FileChannel ch, long offset, ByteBuffer buf)
+            throws IOException {
+        if (offset < 0 || offset >= ch.size()) {
+            throw new IllegalArgumentException("Read past end of table");
+        }
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, offset + buf.position() - start);
+            if (n == -1) {
+                throw new IllegalArgumentException("Unable to read "
+                        + (buf.limit() - start) + " bytes from heapfile");
+            }
+        }
+    }
+
+    private void readMapped(long offset, ByteBuffer buf) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Read past end of table");
+        }
+        int len = buf.remaining();
+        long segBytes = segmentBytes();
+        int seg = (int) (offset / segBytes);
+        int pos = (int) (offset % segBytes);
+        MappedByteBuffer[] segs = segments;
+        if (seg >= segs.length || pos + len > segs[seg].limit()) {
+            segs = remap(offset + len);
+        }
+        // duplicate so concurrent readers don't share a position
+        ByteBuffer view = segs[seg].duplicate();
+        view.position(pos);
+        view.limit(pos + len);
+        buf.put(view);
+    }
+
+    /**
+     * Extends the mapping to cover the file's current length. Whole segments
+     * that are already mapped are kept; a partial tail segment is remapped.
+     *
+     * @param needed the file length the caller needs mapped
+     * @throws IllegalArgumentException if the file is shorter than needed
+     */
+    private synchronized MappedByteBuffer[] remap(long needed) throws IOException {
+        long segBytes = segmentBytes();
+        MappedByteBuffer[] old = segments;
+        if (mappedLength(old) >= needed) {
+            return old; // another reader got here first
+        }
+        FileChannel ch = getChannel();
+        long size = ch.size();
+        if (needed > size) {
+            throw new IllegalArgumentException("Read past end of table");
+        }
+        int full = 0;
+        while (full < old.length && old[full].limit() == segBytes)
+            full++;
+        MappedByteBuffer[] segs = new MappedByteBuffer[(int) ((size + segBytes - 1) / segBytes)];
+        System.arraycopy(old, 0, segs, 0, full);
+        for (int i = full; i < segs.length; i++) {
+            long start = i * segBytes;
+            segs[i] = ch.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(segBytes, size - start));
+        }
+        segments = segs;
+        return segs;
+    }
+
+    private static long mappedLength(MappedByteBuffer[] segs) {
+        long len = 0;
+        for (MappedByteBuffer seg : segs)
+            len += seg.limit();
+        return len;
+    }
+
+    /** Segment length: the largest whole number of pages under the cap. */
+    private static long segmentBytes() {
+        return (MAX_SEGMENT_BYTES / BufferPool.getPageSize()) * BufferPool.getPageSize();
+    }
+
+    /**
+     * Returns the channel backing this file, opening it on first use.
+     */
+    synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(f, "r").getChannel();
+        }
+        return channel;
+    }
+
+    private synchronized FileChannel getWriteChannel() throws IOException {
+        if (writeChannel == null || !writeChannel.isOpen()) {
+            writeChannel = new RandomAccessFile(f, "rw").getChannel();
+        }
+        return writeChannel;
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized void close() {
+        // mappings stay valid after the channel closes; dropping them lets
+        // the collector unmap the file
+        segments = new MappedByteBuffer[0];
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                // Ignore failures closing the file
+            }
+            channel = null;
+        }
+        if (writeChannel != null) {
             try {
-                if (bis != null)
-                    bis.close();
+                writeChannel.close();
             } catch (IOException ioe) {
                 // Ignore failures closing the file
             }
+            writeChannel = null;
         }
+        FreeSpaceMap map = freeSpace;
+        if (map != null)
+            map.close();
+        StringDictionary dict = dictionary;
+        if (dict != null)
+            dict.close();
+        ExtentMap ext = extents;
+        if (ext != null)
+            ext.close();
+        ZoneMap zm = zones;
+        if (zm != null)
+            zm.close();
+        PageBloomFilters bf = blooms;
+        if (bf != null)
+            bf.close();
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
-        // not necessary for lab1
+        int pgNo = page.getId().pageNumber();
+        byte[] data = page.getPageData();
+        // the codes the page uses must not outlive their dictionary entries
+        StringDictionary dict = dictionary;
+        if (dict != null)
+            dict.force();
+        ZoneMap zm = getZoneMap();
+        PageBloomFilters bf = getBloomFilters();
+        if ((zm != null || bf != null) && page instanceof HeapPage) {
+            // the summaries must never be narrower than the page on disk,
+            // nor than the committed version it replaces if that's still
+            // to be rolled back to
+            HeapPage hp = (HeapPage) page;
+            HeapPage before = replaced(hp, data);
+            if (zm != null) {
+                zm.set(hp);
+                if (before != null)
+                    zm.include(before);
+                zm.writeEntry(pgNo);
+            }
+            if (bf != null) {
+                bf.set(hp);
+                if (before != null)
+                    bf.add(before);
+                bf.writeEntry(pgNo);
+            }
+        }
+        writePageData(pgNo, data);
+        if (page instanceof HeapPage) {
+            HeapPage hp = (HeapPage) page;
+            getFreeSpaceMap().write(pgNo, hp.getNumEmptySlots(), hp.getNumSlots());
+        }
+    }
+
+    /**
+     * @return the before image of page, whose bytes are data, if it differs
+     *     from the page: a flush of uncommitted changes that an abort may
+     *     yet roll back. A commit sets the before image first, so it has
+     *     none. Null otherwise.
+     */
+    private static HeapPage replaced(HeapPage page, byte[] data) {
+        HeapPage before = page.getBeforeImage();
+        return Arrays.equals(before.getPageData(), data) ? null : before;
+    }
+
+    /** Writes data, one page of bytes, as page pgNo of the file. */
+    private void writePageData(int pgNo, byte[] data) throws IOException {
+        if (compressed) {
+            writeCompressed(pgNo, data);
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long offset = (long) pgNo * BufferPool.getPageSize();
+        FileChannel ch = getWriteChannel();
+        while (buf.hasRemaining())
+            ch.write(buf, offset + buf.position());
+    }
+
+    /**
+     * Compresses data and writes it where the extent map places page pgNo,
+     * then the page's entry. A page that doesn't compress is stored as is.
+     */
+    private void writeCompressed(int pgNo, byte[] data) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        byte[] packed = new byte[pageSize - 1];
+        int len = compressor.get().compress(data, pageSize, packed);
+        if (len < 0) {
+            packed = data;
+            len = pageSize;
+        }
+        ExtentMap map = getExtentMap();
+        FileChannel ch = getWriteChannel();
+        synchronized (map) {
+            long offset = map.place(pgNo, len);
+            ByteBuffer buf = ByteBuffer.wrap(packed, 0, len);
+            while (buf.hasRemaining())
+                ch.write(buf, offset + buf.position());
+            map.writeEntry(pgNo);
+        }
+    }
+
+    /**
+     * @return a page the free space map says has room, after adding an
+     *     empty one to the end of the file if there is none
+     */
+    private int findRoom(TransactionId tid, FreeSpaceMap map)
+            throws IOException, TransactionAbortedException {
+        int pgNo = map.findRoom();
+        if (pgNo >= 0)
+            return pgNo;
+        Database.getBufferPool().lock(tid, endOfFile(), Permissions.READ_WRITE);
+        synchronized (map) {
+            // another inserter may have just added one
+            pgNo = map.findRoom();
+            if (pgNo >= 0)
+                return pgNo;
+            // past any bulk load of tid's own, which it joins
+            pgNo = physicalPages();
+            writePageData(pgNo, HeapPage.createEmptyPageData());
+            map.write(pgNo, slotsPerPage(), slotsPerPage());
+            return pgNo;
+        }
     }
 
     /**
@@ -115,23 +650,250 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // some code goes here
-    	return (int) (f.length() / BufferPool.PAGE_SIZE);
+        int n = physicalPages();
+        int from = pendingFrom;
+        return from >= 0 ? Math.min(n, from) : n;
+    }
+
+    /** @return the pages in the file, including uncommitted bulk loads */
+    private int physicalPages() {
+        if (compressed)
+            return getExtentMap().numPages();
+    	return (int) (f.length() / BufferPool.getPageSize());
+    }
+
+    /**
+     * Stands for the end of the file in the lock manager: a transaction
+     * that adds pages locks it exclusively.
+     */
+    private HeapPageId endOfFile() {
+        return new HeapPageId(tableid, -1);
+    }
+
+    /**
+     * Returns the appender that adds tuples to new pages at the end of this
+     * file for tid, creating it on the first call. Waits for any other
+     * transaction adding pages to complete.
+     *
+     * @see BulkAppender
+     */
+    public BulkAppender bulkAppend(final TransactionId tid)
+            throws DbException, TransactionAbortedException {
+        BufferPool bp = Database.getBufferPool();
+        if (bp.isSnapshot(tid))
+            throw new DbException("snapshot transaction " + tid.getId() + " is read-only");
+        bp.lock(tid, endOfFile(), Permissions.READ_WRITE);
+        StringDictionary dict;
+        try {
+            dict = getDictionary();
+        } catch (IOException e) {
+            throw new DbException("unable to load the dictionary of table "
+                    + tableid + ": " + e.getMessage());
+        }
+        synchronized (this) {
+            // with the lock held, any pending load is tid's own
+            if (appender == null) {
+                int from = physicalPages();
+                try {
+                    BulkAppender.begin(f, from);
+                } catch (IOException e) {
+                    throw new DbException("unable to start a bulk load of table "
+                            + tableid + ": " + e.getMessage());
+                }
+                appender = new BulkAppender(this, tid, dict);
+                pendingFrom = from;
+                bp.onCompletion(tid, new BufferPool.CompletionAction() {
+                    public void complete(TransactionId t, boolean commit) throws IOException {
+                        completeAppend(commit);
+                    }
+                });
+            }
+            return appender;
+        }
+    }
+
+    /**
+     * Writes numPages pages of data past the end of the file in one write,
+     * or one page at a time if the file is compressed.
+     *
+     * @return the page number of the first
+     */
+    int appendPages(byte[] data, int numPages) throws IOException {
+        // the codes the pages use must not outlive their dictionary entries
+        StringDictionary dict = dictionary;
+        if (dict != null)
+            dict.force();
+        synchronized (this) {
+            int first = physicalPages();
+            ZoneMap zm = getZoneMap();
+            PageBloomFilters bf = getBloomFilters();
+            if (zm != null || bf != null) {
+                int pageSize = BufferPool.getPageSize();
+                for (int i = 0; i < numPages; i++) {
+                    HeapPage page = newPage(new HeapPageId(tableid, first + i),
+                            Arrays.copyOfRange(data, i * pageSize, (i + 1) * pageSize));
+                    if (zm != null) {
+                        zm.set(page);
+                        zm.writeEntry(first + i);
+                    }
+                    if (bf != null) {
+                        bf.set(page);
+                        bf.writeEntry(first + i);
+                    }
+                }
+            }
+            if (compressed) {
+                int pageSize = BufferPool.getPageSize();
+                for (int i = 0; i < numPages; i++)
+                    writeCompressed(first + i,
+                            Arrays.copyOfRange(data, i * pageSize, (i + 1) * pageSize));
+                return first;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(data, 0, numPages * BufferPool.getPageSize());
+            long offset = (long) first * BufferPool.getPageSize();
+            FileChannel ch = getWriteChannel();
+            while (buf.hasRemaining())
+                ch.write(buf, offset + buf.position());
+            return first;
+        }
+    }
+
+    /**
+     * Makes the pending bulk load part of the table, or truncates it away.
+     */
+    private void completeAppend(boolean commit) throws IOException {
+        BulkAppender a;
+        synchronized (this) {
+            a = appender;
+        }
+        try {
+            if (commit) {
+                a.finish();
+                StringDictionary dict = dictionary;
+                if (dict != null)
+                    dict.force();
+                getWriteChannel().force(false);
+                if (compressed)
+                    getExtentMap().force();
+                ZoneMap zm = zones;
+                if (zm != null)
+                    zm.force();
+                PageBloomFilters bf = blooms;
+                if (bf != null)
+                    bf.force();
+                // the load commits here; a crash before leaves it to be truncated
+                if (!BulkAppender.fileFor(f).delete())
+                    throw new IOException("unable to commit the bulk load of " + f);
+                if (a.getLastPage() >= 0) {
+                    // the entries of the full pages before it are written as 0
+                    getFreeSpaceMap().write(a.getLastPage(), a.getLastFree(), slotsPerPage());
+                }
+                Database.getLogFile().force();
+            } else {
+                a.discard();
+                truncatePages(pendingFrom);
+                BulkAppender.fileFor(f).delete();
+            }
+        } finally {
+            synchronized (this) {
+                appender = null;
+                pendingFrom = -1;
+            }
+        }
+    }
+
+    /**
+     * Cuts the pages from page from on off the file, and their entries off
+     * its side files.
+     */
+    private void truncatePages(int from) throws IOException {
+        if (compressed) {
+            // the pages' extents are left behind, like relocated ones
+            getExtentMap().truncate(from);
+        } else {
+            synchronized (this) {
+                getWriteChannel().truncate((long) from * BufferPool.getPageSize());
+                // mappings past the new end would fault if touched
+                segments = new MappedByteBuffer[0];
+            }
+        }
+        FreeSpaceMap map = freeSpace;
+        if (map != null)
+            map.truncate(from);
+        ZoneMap zm = getZoneMap();
+        if (zm != null)
+            zm.truncate(from);
+        PageBloomFilters bf = getBloomFilters();
+        if (bf != null)
+            bf.truncate(from);
     }
 
     // see DbFile.java for javadocs
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-        return null;
-        // not necessary for lab1
+        if (!td.sameFields(t.getTupleDesc()))
+            throw new DbException("tuple does not match the TupleDesc of table " + tableid);
+        BufferPool bp = Database.getBufferPool();
+        FreeSpaceMap map = getFreeSpaceMap();
+        while (true) {
+            int pgNo = findRoom(tid, map);
+            HeapPageId pid = new HeapPageId(tableid, pgNo);
+            HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+            try {
+                if (page.getNumEmptySlots() == 0) {
+                    // the map was out of date; set it straight and look again
+                    map.update(pgNo, 0, page.getNumSlots());
+                    continue;
+                }
+                page = bp.writable(tid, page);
+                page.insertTuple(t);
+                map.update(pgNo, page.getNumEmptySlots(), page.getNumSlots());
+                ZoneMap zm = getZoneMap();
+                if (zm != null)
+                    zm.include(pgNo, t);
+                PageBloomFilters bf = getBloomFilters();
+                if (bf != null)
+                    bf.add(pgNo, t);
+            } finally {
+                bp.unpinPage(tid, pid);
+            }
+            ArrayList<Page> modified = new ArrayList<Page>();
+            modified.add(page);
+            return modified;
+        }
     }
 
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // some code goes here
-        return null;
-        // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != tableid)
+            throw new DbException("tuple is not in table " + tableid);
+        BufferPool bp = Database.getBufferPool();
+        PageId pid = rid.getPageId();
+        HeapPage page;
+        try {
+            page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        } catch (IOException e) {
+            throw new DbException("unable to read page " + pid.pageNumber()
+                    + " of table " + tableid + ": " + e.getMessage());
+        }
+        try {
+            page = bp.writable(tid, page);
+            page.deleteTuple(t);
+            getFreeSpaceMap().update(pid.pageNumber(), page.getNumEmptySlots(),
+                    page.getNumSlots());
+        } catch (IOException e) {
+            throw new DbException("unable to load the free space map of table "
+                    + tableid + ": " + e.getMessage());
+        } finally {
+            bp.unpinPage(tid, pid);
+        }
+        ArrayList<Page> modified = new ArrayList<Page>();
+        modified.add(page);
+        return modified;
     }
 
     // see DbFile.java for javadocs
@@ -140,69 +902,77 @@ public class HeapFile implements DbFile {
     	return new HeapFileIterator(this, tid);
     }
 
-}
-class HeapFileIterator implements DbFileIterator {
-
-	private Tuple next = null;
-    Iterator<Tuple> it = null;
-    int curpgno = 0;
-
-    TransactionId tid;
-    HeapFile hf;
-
-    public HeapFileIterator(HeapFile hf, TransactionId tid) {
-        this.hf = hf;
-        this.tid = tid;
+    /**
+     * Returns an iterator over all the tuples of this file that reuses one
+     * {@link TupleCursor} for every row, so a scan allocates nothing per
+     * tuple. The returned Tuple is only valid until the next call to next();
+     * hasNext() looks ahead without moving it, so an operator can test for
+     * another row while it still uses this one. Callers that keep rows must
+     * keep {@link Tuple#retain} of them.
+     */
+    public DbFileIterator cursorIterator(TransactionId tid) {
+        return new HeapFileIterator(this, tid, true);
     }
 
-    public void open() throws DbException, TransactionAbortedException {
-        curpgno = -1;
-    }
-    
-	public boolean hasNext() throws DbException, TransactionAbortedException {
-        if (next == null) next = readNext();
-        return next != null;
+    /**
+     * Returns an iterator over the tuples of this file that satisfy p. If
+     * the file has zone maps and p compares an int field, pages whose
+     * range of that field can't satisfy p aren't read at all, nor are
+     * pages whose Bloom filter says they lack the value an EQUALS p looks
+     * for; the iterator's {@link HeapFileIterator#getPagesSkipped} counts
+     * them.
+     *
+     * @param reuse if true, every row is returned through one
+     *     {@link TupleCursor}, as {@link #cursorIterator} does
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate p, boolean reuse) {
+        return new HeapFileIterator(this, tid, reuse, p);
     }
 
-    public Tuple next() throws DbException, TransactionAbortedException,
-            NoSuchElementException {
-        if (next == null) {
-            next = readNext();
-            if (next == null) throw new NoSuchElementException();
-        }
-
-        Tuple result = next;
-        next = null;
-        return result;
+    /** @see #iterator(TransactionId, Predicate, boolean) */
+    public DbFileIterator iterator(TransactionId tid, Predicate p) {
+        return iterator(tid, p, false);
     }
 
-    Tuple readNext() throws TransactionAbortedException, DbException {
-        if (it != null && !it.hasNext())
-            it = null;
-
-        while (it == null && curpgno < hf.numPages() - 1) {
-            curpgno++;
-            HeapPageId curpid = new HeapPageId(hf.getId(), curpgno);
-            HeapPage curp = (HeapPage) Database.getBufferPool().getPage(tid,
-                    curpid, Permissions.READ_ONLY);
-            it = curp.iterator();
-            if (!it.hasNext())
-                it = null;
+    /**
+     * Builds Bloom filters of the given fields on every page, replacing any
+     * the file has, so that a scan for one value of such a field skips the
+     * pages that don't hold it. Each page is read as part of tid, whose
+     * shared locks keep its page from changing until the filter is written;
+     * pages changed elsewhere meanwhile update their filters themselves.
+     *
+     * @param fields the fields to build filters on
+     * @param falsePositiveRate the chance that a full page's filter claims
+     *     a value the page doesn't hold, between 0 and 1
+     * @see PageBloomFilters
+     */
+    public void buildBloomFilters(TransactionId tid, int[] fields, double falsePositiveRate)
+            throws DbException, TransactionAbortedException {
+        BufferPool bp = Database.getBufferPool();
+        try {
+            PageBloomFilters filters;
+            synchronized (this) {
+                if (blooms != null)
+                    blooms.close();
+                // pages with no entry yet hold any value, so scans stay right
+                blooms = filters = PageBloomFilters.create(f, td, fields, falsePositiveRate);
+                bloomed = true;
+            }
+            for (int pgNo = 0; pgNo < numPages(); pgNo++) {
+                HeapPageId pid = new HeapPageId(tableid, pgNo);
+                HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+                try {
+                    filters.set(page);
+                    filters.writeEntry(pgNo);
+                } finally {
+                    bp.unpinPage(tid, pid);
+                }
+            }
+            filters.force();
+        } catch (IOException e) {
+            throw new DbException("unable to build the Bloom filters of table "
+                    + tableid + ": " + e.getMessage());
         }
-
-        if (it == null)
-            return null;
-        return it.next();
     }
 
-    public void rewind() throws DbException, TransactionAbortedException {
-        close();
-        open();
-    }
-
-    public void close() {
-    	next = null;
-        it = null;
-        curpgno = Integer.MAX_VALUE;
-    }
 }
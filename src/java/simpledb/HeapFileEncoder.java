@@ -1,7 +1,19 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -9,10 +21,23 @@ import java.util.ArrayList;
  * pages of binary data in the appropriate format for simpledb heap pages
  * Pages are padded out to a specified length, and written consecutive in a
  * data file.
+ * <p>
+ * A text file is cut into chunks of about {@link #CHUNK_BYTES} that end on
+ * line boundaries, and a pool of threads parses the chunks into rows of
+ * binary tuples side by side. The rows are then laid out on pages in input
+ * order, which is only a copy, and written out through a FileChannel
+ * {@link #WRITE_BYTES} at a time. Only a few chunks per thread are in
+ * memory at once, so inputs of any size can be converted.
  */
 
 public class HeapFileEncoder {
 
+  /** Nominal size of the pieces a text file is parsed in. */
+  static final int CHUNK_BYTES = 4 << 20;
+
+  /** Bytes of pages written to the output file at once. */
+  static final int WRITE_BYTES = 4 << 20;
+
   /** Convert the specified tuple list (with only integer fields) into a binary
    * page file. <br>
    *
@@ -26,29 +51,30 @@ public class HeapFileEncoder {
    * @param outFile The output file to write data to
    * @param npagebytes The number of bytes per page in the output file
    * @param numFields the number of fields in each input tuple
-   * @throws IOException if the temporary/output file can't be opened
+   * @throws IOException if the output file can't be opened
    */
   public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int npagebytes, int numFields) throws IOException {
-      File tempInput = File.createTempFile("tempTable", ".txt");
-      tempInput.deleteOnExit();
-      BufferedWriter bw = new BufferedWriter(new FileWriter(tempInput));
-      for (ArrayList<Integer> tuple : tuples) {
-          int writtenFields = 0;
-          for (Integer field : tuple) {
-              writtenFields++;
-              if (writtenFields > numFields) {
-                  throw new RuntimeException("Tuple has more than " + numFields + " fields: (" +
-                          Utility.listToString(tuple) + ")");
-              }
-              bw.write(String.valueOf(field));
-              if (writtenFields < numFields) {
-                  bw.write(',');
+      int nrecbytes = numFields * Type.INT_TYPE.getLen();
+      deleteSideFile(outFile, ZoneMap.SUFFIX);
+      deleteSideFile(outFile, PageBloomFilters.SUFFIX);
+      deleteSideFile(outFile, BulkAppender.SUFFIX);
+      PageWriter out = new PageWriter(outFile, npagebytes, nrecbytes, null);
+      try {
+          ByteBuffer row = ByteBuffer.allocate(nrecbytes);
+          for (ArrayList<Integer> tuple : tuples) {
+              if (tuple.size() != numFields) {
+                  throw new RuntimeException("Tuple has " + tuple.size() + " fields, not "
+                          + numFields + ": (" + Utility.listToString(tuple) + ")");
               }
+              row.clear();
+              for (Integer field : tuple)
+                  row.putInt(field);
+              out.add(row.array(), 0, 1);
           }
-          bw.write('\n');
+          out.finish();
+      } finally {
+          out.close();
       }
-      bw.close();
-      convert(tempInput, outFile, npagebytes, numFields);
   }
 
       public static void convert(File inFile, File outFile, int npagebytes,
@@ -67,13 +93,16 @@ public class HeapFileEncoder {
   }
 
    /** Convert the specified input text file into a binary
-    * page file. <br>
-    * Assume format of the input file is (note that only integer fields are
-    * supported):<br>
-    * int,...,int\n<br>
-    * int,...,int\n<br>
+    * page file, parsing on as many threads as there are processors. <br>
+    * Assume format of the input file is:<br>
+    * field,...,field\n<br>
+    * field,...,field\n<br>
     * ...<br>
-    * where each row represents a tuple.<br>
+    * where each row represents a tuple and each field is an integer or a
+    * string, as typeAr says. Blank lines and carriage returns ending a
+    * line are ignored; fields are trimmed, and strings are cut to
+    * Type.STRING_LEN characters; the TupleDesc form of convert declares
+    * other lengths.<br>
     * <p>
     * The format of the output file will be as specified in HeapPage and
     * HeapFile.
@@ -90,137 +119,552 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator,
+              Runtime.getRuntime().availableProcessors(), CHUNK_BYTES);
+  }
+
+  /**
+   * Converts inFile as the six-argument convert does, parsing chunks of
+   * about chunkBytes on the given number of threads.
+   */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator,
+                 int threads, int chunkBytes)
+      throws IOException {
+      convert(inFile, outFile, npagebytes,
+              new TupleDesc(Arrays.copyOf(typeAr, numFields)), fieldSeparator,
+              threads, chunkBytes);
+  }
+
+  /**
+   * Converts inFile as the six-argument convert does, into tuples of td,
+   * so strings are cut to the length td declares for their field.
+   */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 TupleDesc td, char fieldSeparator)
+      throws IOException {
+      convert(inFile, outFile, npagebytes, td, fieldSeparator,
+              Runtime.getRuntime().availableProcessors(), CHUNK_BYTES);
+  }
+
+  /**
+   * Converts inFile into tuples of td, parsing chunks of about chunkBytes
+   * on the given number of threads. If td has dictionary encoded fields,
+   * their dictionary is written next to outFile, replacing any there, and
+   * if it has int fields, so is the {@link ZoneMap} of their ranges.
+   */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 TupleDesc td, char fieldSeparator, int threads, int chunkBytes)
+      throws IOException {
+      int numFields = td.numFields();
+      Type[] types = new Type[numFields];
+      for (int i = 0; i < numFields; i++)
+          types[i] = td.getFieldType(i);
+      int[] lens = td.getStringLens();
+      boolean[] encoded = td.getDictionaryEncoded();
+      int nrecbytes = td.getSize();
+      StringDictionary dict = null;
+      if (td.hasDictionary()) {
+          deleteSideFile(outFile, StringDictionary.SUFFIX);
+          dict = new StringDictionary(outFile, td);
+      }
+      deleteSideFile(outFile, ZoneMap.SUFFIX);
+      deleteSideFile(outFile, PageBloomFilters.SUFFIX);
+      deleteSideFile(outFile, BulkAppender.SUFFIX);
+      ZoneMap zones = ZoneMap.covers(td) ? new ZoneMap(outFile, td) : null;
+
+      ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "HeapFileEncoder");
+              t.setDaemon(true);
+              return t;
+          }
+      });
+      FileChannel in = new FileInputStream(inFile).getChannel();
+      PageWriter out = null;
+      try {
+          out = new PageWriter(outFile, npagebytes, td, zones);
+          long size = in.size();
+          long start = 0;
+          ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<Future<Chunk>>();
+          while (start < size || !inFlight.isEmpty()) {
+              // keep every thread busy, and one more chunk queued for each
+              while (start < size && inFlight.size() < threads * 2) {
+                  long end = lineEnd(in, Math.min(start + chunkBytes, size));
+                  inFlight.add(pool.submit(new Chunk(in, start, end, types, lens, encoded,
+                          dict, nrecbytes, (byte) fieldSeparator)));
+                  start = end;
+              }
+              Chunk c = get(inFlight.remove());
+              out.add(c.rows, 0, c.count);
+          }
+          out.finish();
+          if (dict != null)
+              dict.force();
+          if (zones != null)
+              zones.force();
+      } finally {
+          pool.shutdownNow();
+          in.close();
+          if (out != null)
+              out.close();
+          if (dict != null)
+              dict.close();
+          if (zones != null)
+              zones.close();
+      }
+  }
+
+  /**
+   * Rewrites the heap file inFile, of npagebytes pages, as a compressed
+   * heap file in outFile: each page is compressed on its own and the
+   * extent map that says where it went is written next to outFile. The
+   * dictionary and free space map of inFile, if it has them, are copied
+   * alongside. HeapFile reads a file written this way as compressed.
+   *
+   * @see PageCompressor
+   * @see ExtentMap
+   * @throws IOException if a file can't be read or written, or inFile is
+   *   not a whole number of pages
+   */
+  public static void compress(File inFile, File outFile, int npagebytes)
+      throws IOException {
+      if (inFile.length() % npagebytes != 0)
+          throw new IOException(inFile + " is not a whole number of "
+                  + npagebytes + " byte pages");
+      File ext = ExtentMap.fileFor(outFile);
+      if (ext.exists() && !ext.delete())
+          throw new IOException("unable to replace " + ext);
+      // an empty table still needs its map, to be read as compressed
+      if (!ext.createNewFile())
+          throw new IOException("unable to create " + ext);
+      copySideFile(inFile, outFile, StringDictionary.SUFFIX);
+      copySideFile(inFile, outFile, FreeSpaceMap.SUFFIX);
+      copySideFile(inFile, outFile, ZoneMap.SUFFIX);
+      copySideFile(inFile, outFile, PageBloomFilters.SUFFIX);
+      deleteSideFile(outFile, BulkAppender.SUFFIX);
+
+      int numPages = (int) (inFile.length() / npagebytes);
+      PageCompressor compressor = new PageCompressor();
+      byte[] page = new byte[npagebytes];
+      byte[] packed = new byte[npagebytes - 1];
+      ExtentMap map = new ExtentMap(outFile);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+              new FileInputStream(inFile), WRITE_BYTES));
+      FileChannel out = new FileOutputStream(outFile).getChannel();
+      try {
+          for (int pgNo = 0; pgNo < numPages; pgNo++) {
+              in.readFully(page);
+              int len = compressor.compress(page, npagebytes, packed);
+              ByteBuffer b = len < 0 ? ByteBuffer.wrap(page)
+                      : ByteBuffer.wrap(packed, 0, len);
+              long offset = map.place(pgNo, b.remaining());
+              while (b.hasRemaining())
+                  out.write(b, offset + b.position());
+              map.writeEntry(pgNo);
+          }
+          out.force(false);
+          map.force();
+      } finally {
+          in.close();
+          out.close();
+          map.close();
+      }
+  }
+
+  /**
+   * Rewrites the heap file inFile, of npagebytes pages of tuples of td, in
+   * outFile with each page laid out by columns, as a {@link PaxFile} reads
+   * it. The dictionary and free space map of inFile, if it has them, are
+   * copied alongside. inFile must not be compressed; outFile can be
+   * compressed afterwards.
+   *
+   * @see PaxPage
+   * @throws IOException if a file can't be read or written, or inFile is
+   *   not a whole number of pages
+   */
+  public static void transpose(File inFile, File outFile, int npagebytes, TupleDesc td)
+      throws IOException {
+      if (inFile.length() % npagebytes != 0)
+          throw new IOException(inFile + " is not a whole number of "
+                  + npagebytes + " byte pages");
+      File ext = ExtentMap.fileFor(outFile);
+      if (ext.exists() && !ext.delete())
+          throw new IOException("unable to replace " + ext);
+      copySideFile(inFile, outFile, StringDictionary.SUFFIX);
+      copySideFile(inFile, outFile, FreeSpaceMap.SUFFIX);
+      copySideFile(inFile, outFile, ZoneMap.SUFFIX);
+      copySideFile(inFile, outFile, PageBloomFilters.SUFFIX);
+      deleteSideFile(outFile, BulkAppender.SUFFIX);
+
+      byte[] buf = new byte[Math.max(1, WRITE_BYTES / npagebytes) * npagebytes];
+      FileChannel in = new FileInputStream(inFile).getChannel();
+      FileChannel out = new FileOutputStream(outFile).getChannel();
+      try {
+          while (true) {
+              ByteBuffer b = ByteBuffer.wrap(buf);
+              while (b.hasRemaining() && in.read(b) >= 0)
+                  ;
+              int len = b.position();
+              if (len == 0)
+                  break;
+              for (int off = 0; off < len; off += npagebytes)
+                  PaxPage.transpose(td, buf, off, npagebytes);
+              b.flip();
+              while (b.hasRemaining())
+                  out.write(b);
+          }
+      } finally {
+          in.close();
+          out.close();
+      }
+  }
+
+  /** Deletes the side file of outFile with the given suffix, if it has one. */
+  private static void deleteSideFile(File outFile, String suffix) throws IOException {
+      File old = new File(outFile.getPath() + suffix);
+      if (old.exists() && !old.delete())
+          throw new IOException("unable to replace " + old);
+  }
+
+  /**
+   * Copies the side file of inFile with the given suffix to be outFile's,
+   * or deletes outFile's if inFile has none.
+   */
+  private static void copySideFile(File inFile, File outFile, String suffix)
+      throws IOException {
+      File from = new File(inFile.getPath() + suffix);
+      File to = new File(outFile.getPath() + suffix);
+      if (!from.exists()) {
+          deleteSideFile(outFile, suffix);
+          return;
+      }
+      FileChannel src = new FileInputStream(from).getChannel();
+      FileChannel dst = new FileOutputStream(to).getChannel();
+      try {
+          long pos = 0;
+          long size = src.size();
+          while (pos < size)
+              pos += src.transferTo(pos, size - pos, dst);
+      } finally {
+          src.close();
+          dst.close();
+      }
+  }
+
+  private static Chunk get(Future<Chunk> f) throws IOException {
+      try {
+          return f.get();
+      } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException)
+              throw (IOException) cause;
+          throw new RuntimeException(cause);
+      }
+  }
 
-      int nrecbytes = 0;
-      for (int i = 0; i < numFields ; i++) {
-          nrecbytes += typeAr[i].getLen();
-      }
-      int nrecords = (npagebytes * 8) /  (nrecbytes * 8 + 1);  //floor comes for free
-      
-    //  per record, we need one bit; there are nrecords per page, so we need
-    // nrecords bits, i.e., ((nrecords/32)+1) integers.
-    int nheaderbytes = (nrecords / 8);
-    if (nheaderbytes * 8 < nrecords)
-        nheaderbytes++;  //ceiling
-    int nheaderbits = nheaderbytes * 8;
-
-    BufferedReader br = new BufferedReader(new FileReader(inFile));
-    FileOutputStream os = new FileOutputStream(outFile);
-
-    // our numbers probably won't be much larger than 1024 digits
-    char buf[] = new char[1024];
-
-    int curpos = 0;
-    int recordcount = 0;
-    int npages = 0;
-    int fieldNo = 0;
-
-    ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-    DataOutputStream headerStream = new DataOutputStream(headerBAOS);
-    ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
-    DataOutputStream pageStream = new DataOutputStream(pageBAOS);
-
-    boolean done = false;
-    boolean first = true;
-    while (!done) {
-        int c = br.read();
-        
-        // Ignore Windows/Notepad special line endings
-        if (c == '\r')
-            continue;
-
-        if (c == '\n') {
-            if (first)
-                continue;
-            recordcount++;
-            first = true;
-        } else
-            first = false;
-        if (c == fieldSeparator || c == '\n' || c == '\r') {
-            String s = new String(buf, 0, curpos);
-            if (typeAr[fieldNo] == Type.INT_TYPE) {
-                try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
-                } catch (NumberFormatException e) {
-                    System.out.println ("BAD LINE : " + s);
-                }
-            }
-            else   if (typeAr[fieldNo] == Type.STRING_TYPE) {
-                s = s.trim();
-                int overflow = Type.STRING_LEN - s.length();
-                if (overflow < 0) {
-                    String news = s.substring(0,Type.STRING_LEN);
-                    s  = news;
-                }
-                pageStream.writeInt(s.length());
-                pageStream.writeBytes(s);
-                while (overflow-- > 0)
-                    pageStream.write((byte)0);
-            }
-            curpos = 0;
-            if (c == '\n')
-                fieldNo = 0;
-            else
-                fieldNo++;
-            
-        } else if (c == -1) {
-            done = true;
-            
-        } else {
-            buf[curpos++] = (char)c;
-            continue;
-        }
-        
-        // if we wrote a full page of records, or if we're done altogether,
-        // write out the header of the page.
-        //
-        // in the header, write a 1 for bits that correspond to records we've
-        // written and 0 for empty slots.
-        //
-        // when we're done, also flush the page to disk, but only if it has
-        // records on it.  however, if this file is empty, do flush an empty
-        // page to disk.
-        if (recordcount >= nrecords
-            || done && recordcount > 0
-            || done && npages == 0) {
-            int i = 0;
-            byte headerbyte = 0;
-            
-            for (i=0; i<nheaderbits; i++) {
-                if (i < recordcount)
-                    headerbyte |= (1 << (i % 8));
-                
-                if (((i+1) % 8) == 0) {
-                    headerStream.writeByte(headerbyte);
-                    headerbyte = 0;
-                }
-            }
-            
-            if (i % 8 > 0)
-                headerStream.writeByte(headerbyte);
-            
-            // pad the rest of the page with zeroes
-            
-            for (i=0; i<(npagebytes - (recordcount * nrecbytes + nheaderbytes)); i++)
-                pageStream.writeByte(0);
-            
-            // write header and body to file
-            headerStream.flush();
-            headerBAOS.writeTo(os);
-            pageStream.flush();
-            pageBAOS.writeTo(os);
-            
-            // reset header and body for next page
-            headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-            headerStream = new DataOutputStream(headerBAOS);
-            pageBAOS = new ByteArrayOutputStream(npagebytes);
-            pageStream = new DataOutputStream(pageBAOS);
-            
-            recordcount = 0;
-            npages++;
-        }
-    }
-    br.close();
-    os.close();
+  /**
+   * @return the offset just past the first newline at or after from, or
+   *     the end of the file if there is none
+   */
+  private static long lineEnd(FileChannel in, long from) throws IOException {
+      long size = in.size();
+      if (from >= size)
+          return size;
+      ByteBuffer probe = ByteBuffer.allocate(4096);
+      long pos = from - 1; // a chunk may end right after a newline
+      while (pos < size) {
+          probe.clear();
+          int n = in.read(probe, pos);
+          if (n <= 0)
+              break;
+          for (int i = 0; i < n; i++) {
+              if (probe.get(i) == '\n')
+                  return pos + i + 1;
+          }
+          pos += n;
+      }
+      return size;
+  }
+
+  /**
+   * Lines start to end of the input, which start and end on line
+   * boundaries, parsed into count rows of nrecbytes bytes each.
+   */
+  private static final class Chunk implements Callable<Chunk> {
+      private final FileChannel in;
+      private final long start, end;
+      private final Type[] types;
+      private final int[] lens;
+      private final boolean[] encoded;
+      private final StringDictionary dict;
+      /** Codes this chunk has looked up in each field, to keep off dict's monitor. */
+      private final ArrayList<HashMap<String, Integer>> codes =
+          new ArrayList<HashMap<String, Integer>>();
+      private final int nrecbytes;
+      private final byte separator;
+      private final Charset charset = Charset.defaultCharset();
+      byte[] rows;
+      int count;
+
+      Chunk(FileChannel in, long start, long end, Type[] types, int[] lens,
+              boolean[] encoded, StringDictionary dict, int nrecbytes, byte separator) {
+          this.in = in;
+          this.start = start;
+          this.end = end;
+          this.types = types;
+          this.lens = lens;
+          this.encoded = encoded;
+          this.dict = dict;
+          for (int i = 0; i < types.length; i++)
+              codes.add(encoded[i] ? new HashMap<String, Integer>() : null);
+          this.nrecbytes = nrecbytes;
+          this.separator = separator;
+      }
+
+      public Chunk call() throws IOException {
+          byte[] text = new byte[(int) (end - start)];
+          ByteBuffer buf = ByteBuffer.wrap(text);
+          while (buf.hasRemaining()) {
+              if (in.read(buf, start + buf.position()) < 0)
+                  throw new EOFException("input ended early");
+          }
+          // a line holds at least one byte per field plus its newline
+          rows = new byte[Math.max(1, text.length / (types.length + 1)) * nrecbytes];
+          ByteBuffer out = ByteBuffer.wrap(rows);
+          int line = 0;
+          while (line < text.length) {
+              int eol = line;
+              while (eol < text.length && text[eol] != '\n')
+                  eol++;
+              int next = eol + 1;
+              if (eol > line && text[eol - 1] == '\r')
+                  eol--;
+              if (eol > line) {
+                  if (out.remaining() < nrecbytes) {
+                      rows = Arrays.copyOf(rows, rows.length * 2);
+                      out = ByteBuffer.wrap(rows, out.position(), rows.length - out.position());
+                  }
+                  parseLine(text, line, eol, out);
+                  count++;
+              }
+              line = next;
+          }
+          return this;
+      }
+
+      /** Appends the tuple on text[from..to) to out. */
+      private void parseLine(byte[] text, int from, int to, ByteBuffer out)
+              throws IOException {
+          int field = 0;
+          int pos = from;
+          while (true) {
+              int stop = pos;
+              while (stop < to && text[stop] != separator)
+                  stop++;
+              if (field == types.length)
+                  throw malformed(text, from, to);
+              if (types[field] == Type.INT_TYPE) {
+                  out.putInt(parseInt(text, pos, stop, from, to));
+              } else {
+                  String s = new String(text, pos, stop - pos, charset).trim();
+                  int len = lens[field];
+                  if (s.length() > len)
+                      s = s.substring(0, len);
+                  if (encoded[field]) {
+                      out.putInt(code(field, s));
+                  } else {
+                      out.putInt(s.length());
+                      for (int i = 0; i < s.length(); i++)
+                          out.put((byte) s.charAt(i));
+                      out.position(out.position() + len - s.length());
+                  }
+              }
+              field++;
+              if (stop == to)
+                  break;
+              pos = stop + 1;
+          }
+          if (field != types.length)
+              throw malformed(text, from, to);
+      }
+
+      /** @return the code of s in field's dictionary */
+      private int code(int field, String s) throws IOException {
+          HashMap<String, Integer> known = codes.get(field);
+          Integer code = known.get(s);
+          if (code == null) {
+              code = dict.encode(field, s);
+              known.put(s, code);
+          }
+          return code;
+      }
+
+      /** Parses the integer in text[pos..stop), ignoring surrounding blanks. */
+      private int parseInt(byte[] text, int pos, int stop, int from, int to)
+              throws IOException {
+          while (pos < stop && (text[pos] & 0xff) <= ' ')
+              pos++;
+          while (stop > pos && (text[stop - 1] & 0xff) <= ' ')
+              stop--;
+          boolean negative = pos < stop && text[pos] == '-';
+          if (pos < stop && (text[pos] == '-' || text[pos] == '+'))
+              pos++;
+          if (pos == stop)
+              throw malformed(text, from, to);
+          // accumulate negatively so Integer.MIN_VALUE fits
+          long v = 0;
+          for (; pos < stop; pos++) {
+              int d = text[pos] - '0';
+              if (d < 0 || d > 9)
+                  throw malformed(text, from, to);
+              v = v * 10 - d;
+              if (v < Integer.MIN_VALUE)
+                  throw malformed(text, from, to);
+          }
+          if (!negative && v == Integer.MIN_VALUE)
+              throw malformed(text, from, to);
+          return (int) (negative ? v : -v);
+      }
+
+      private IOException malformed(byte[] text, int from, int to) {
+          return new IOException("BAD LINE : " + new String(text, from, to - from, charset));
+      }
+  }
+
+  /**
+   * Lays rows out on pages in the format HeapPage reads and writes the
+   * pages to a file. Every page but the last is full; an empty input
+   * still gets one empty page.
+   */
+  private static final class PageWriter {
+      private final FileChannel ch;
+      private final int npagebytes;
+      private final int nrecbytes;
+      private final int nrecords;
+      private final int nheaderbytes;
+      /** Pages waiting to be written; zero past the current page. */
+      private final byte[] buf;
+      /** Offset in buf of the page being filled. */
+      private int page;
+      /** Rows on it so far. */
+      private int slot;
+      private boolean wrotePage;
+      /** Number of the page being filled. */
+      private int pgNo;
+      /** Gets the ranges of the int fields of each page, if not null. */
+      private final ZoneMap zones;
+      /** The int fields of the rows and their offsets in a row. */
+      private final int[] intFields, intOffsets;
+
+      PageWriter(File outFile, int npagebytes, int nrecbytes, ZoneMap zones)
+          throws IOException {
+          this(outFile, npagebytes, nrecbytes, zones, new int[0], new int[0]);
+      }
+
+      /** Writes rows of td, recording their int fields' ranges in zones. */
+      PageWriter(File outFile, int npagebytes, TupleDesc td, ZoneMap zones)
+          throws IOException {
+          this(outFile, npagebytes, td.getSize(), zones, intFields(td), intOffsets(td));
+      }
+
+      private PageWriter(File outFile, int npagebytes, int nrecbytes, ZoneMap zones,
+              int[] intFields, int[] intOffsets) throws IOException {
+          this.npagebytes = npagebytes;
+          this.nrecbytes = nrecbytes;
+          this.nrecords = (npagebytes * 8) / (nrecbytes * 8 + 1); //floor comes for free
+          this.nheaderbytes = (nrecords + 7) / 8;
+          this.buf = new byte[Math.max(1, WRITE_BYTES / npagebytes) * npagebytes];
+          this.zones = zones;
+          this.intFields = intFields;
+          this.intOffsets = intOffsets;
+          this.ch = new FileOutputStream(outFile).getChannel();
+      }
+
+      private static int[] intFields(TupleDesc td) {
+          int n = 0;
+          for (int i = 0; i < td.numFields(); i++) {
+              if (td.getFieldType(i) == Type.INT_TYPE)
+                  n++;
+          }
+          int[] fields = new int[n];
+          n = 0;
+          for (int i = 0; i < td.numFields(); i++) {
+              if (td.getFieldType(i) == Type.INT_TYPE)
+                  fields[n++] = i;
+          }
+          return fields;
+      }
+
+      private static int[] intOffsets(TupleDesc td) {
+          int[] fields = intFields(td);
+          int[] offsets = new int[fields.length];
+          for (int c = 0; c < fields.length; c++)
+              offsets[c] = td.getFieldOffset(fields[c]);
+          return offsets;
+      }
+
+      /** Adds count rows of nrecbytes bytes each, from rows at off. */
+      void add(byte[] rows, int off, int count) throws IOException {
+          ByteBuffer values = zones != null ? ByteBuffer.wrap(rows) : null;
+          while (count > 0) {
+              int n = Math.min(count, nrecords - slot);
+              if (zones != null) {
+                  if (slot == 0)
+                      zones.clear(pgNo);
+                  for (int r = off; r < off + n * nrecbytes; r += nrecbytes) {
+                      for (int c = 0; c < intFields.length; c++)
+                          zones.include(pgNo, intFields[c], values.getInt(r + intOffsets[c]));
+                  }
+              }
+              System.arraycopy(rows, off, buf, page + nheaderbytes + slot * nrecbytes,
+                      n * nrecbytes);
+              for (int i = slot; i < slot + n; i++)
+                  buf[page + (i >> 3)] |= 1 << (i & 7);
+              slot += n;
+              off += n * nrecbytes;
+              count -= n;
+              if (slot == nrecords) {
+                  slot = 0;
+                  pgNo++;
+                  page += npagebytes;
+                  if (page == buf.length)
+                      flush();
+              }
+          }
+      }
+
+      /** Writes the pages in buf, including a partly filled one. */
+      private void flush() throws IOException {
+          int len = page + (slot > 0 ? npagebytes : 0);
+          ByteBuffer b = ByteBuffer.wrap(buf, 0, len);
+          while (b.hasRemaining())
+              ch.write(b);
+          if (len > 0)
+              wrotePage = true;
+          Arrays.fill(buf, 0, len, (byte) 0);
+          page = 0;
+          slot = 0;
+      }
+
+      /** Writes out the last page. */
+      void finish() throws IOException {
+          if (!wrotePage && page == 0 && slot == 0) {
+              page = npagebytes; // one empty page
+              if (zones != null)
+                  zones.clear(0);
+          }
+          int last = slot > 0 || pgNo == 0 ? pgNo : pgNo - 1;
+          flush();
+          if (zones != null)
+              zones.writeEntry(last);
+      }
+
+      void close() throws IOException {
+          ch.close();
+      }
   }
 }
@@ -0,0 +1,244 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Iterates over the tuples of a {@link HeapFile}, a page at a time, reading
+ * ahead of the scan and skipping the pages that its predicate rules out.
+ */
+class HeapFileIterator implements DbFileIterator {
+
+	private Tuple next = null;
+    Iterator<Tuple> it = null;
+    int curpgno = 0;
+
+    TransactionId tid;
+    HeapFile hf;
+    /** If non-null, moved over every row instead of returning page tuples. */
+    final TupleCursor cursor;
+    /**
+     * Moved ahead by hasNext() when the scan reuses tuples, so that cursor,
+     * which the caller holds, only moves on in next().
+     */
+    final TupleCursor probe;
+    /** The page cursor is on, kept pinned after the scan looked past it. */
+    HeapPageId held = null;
+    /** Frames this scan recycles, so it doesn't flush the rest of the pool. */
+    ScanRing ring = null;
+    /** The page the scan holds a buffer pool pin on, if any. */
+    HeapPageId pinned = null;
+
+    /** Read-ahead window the scan starts with, in pages. */
+    static final int MIN_WINDOW = 2;
+    /** Pages currently read ahead of curpgno. */
+    int window = MIN_WINDOW;
+    /** Highest page number read-ahead has been requested for. */
+    int prefetchedTo = -1;
+
+    /** The tuples returned must satisfy this, if it is non-null. */
+    final Predicate predicate;
+    /** Rules out pages for predicate; null if the scan can't skip pages. */
+    ZoneMap zones;
+    /** Rules out pages for an EQUALS predicate; null if there are none. */
+    PageBloomFilters blooms;
+    /** Pages this scan has skipped since it was opened. */
+    int skipped;
+
+    public HeapFileIterator(HeapFile hf, TransactionId tid) {
+        this(hf, tid, false);
+    }
+
+    /**
+     * @param reuse if true, every row is returned through one
+     *     {@link TupleCursor}
+     */
+    public HeapFileIterator(HeapFile hf, TransactionId tid, boolean reuse) {
+        this(hf, tid, reuse, null);
+    }
+
+    /**
+     * @param p if non-null, only the tuples that satisfy p are returned,
+     *     and pages the file's zone map or Bloom filters rule out for p
+     *     are skipped
+     */
+    public HeapFileIterator(HeapFile hf, TransactionId tid, boolean reuse, Predicate p) {
+        this.hf = hf;
+        this.tid = tid;
+        this.cursor = reuse ? new TupleCursor(hf.getTupleDesc()) : null;
+        this.probe = reuse ? new TupleCursor(hf.getTupleDesc()) : null;
+        this.predicate = p;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        curpgno = -1;
+        ring = Database.getBufferPool().newScanRing();
+        window = MIN_WINDOW;
+        prefetchedTo = -1;
+        skipped = 0;
+        zones = null;
+        blooms = null;
+        // a snapshot may read older versions of pages than the summaries
+        // describe, so it reads them all
+        if (predicate != null && !Database.getBufferPool().isSnapshot(tid)) {
+            try {
+                zones = hf.getZoneMap();
+                if (predicate.getOp() == Predicate.Op.EQUALS)
+                    blooms = hf.getBloomFilters();
+            } catch (IOException e) {
+                throw new DbException("unable to load the page summaries of table "
+                        + hf.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** @return the pages skipped since the scan was opened or rewound */
+    public int getPagesSkipped() {
+        return skipped;
+    }
+
+    /** @return true if the scan has to read page pgNo */
+    private boolean wanted(int pgNo) {
+        return (zones == null || zones.mightMatch(pgNo, predicate))
+            && (blooms == null || blooms.mightContain(pgNo, predicate));
+    }
+    
+	public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (next == null) next = readNext();
+        return next != null;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (next == null) {
+            next = readNext();
+            if (next == null) throw new NoSuchElementException();
+        }
+
+        Tuple result = next;
+        next = null;
+        if (cursor != null) {
+            cursor.moveTo(probe);
+            releaseHeld();
+            result = cursor;
+        }
+        return result;
+    }
+
+    Tuple readNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            Tuple t = readNextTuple();
+            if (t == null || predicate == null || predicate.filter(t))
+                return t;
+        }
+    }
+
+    /** @return the next tuple of the pages the scan reads, or null */
+    private Tuple readNextTuple() throws TransactionAbortedException, DbException {
+        if (it != null && !it.hasNext())
+            it = null;
+
+        while (it == null) {
+            leavePage();
+            // once per page, not per tuple: numPages() asks the file system
+            int numPages = hf.numPages();
+            if (curpgno >= numPages - 1)
+                break;
+            curpgno++;
+            if (!wanted(curpgno)) {
+                skipped++;
+                continue;
+            }
+            HeapPageId curpid = new HeapPageId(hf.getId(), curpgno);
+            readAhead(curpid, numPages);
+            HeapPage curp;
+            try {
+                curp = (HeapPage) Database.getBufferPool().getPage(tid,
+                        curpid, Permissions.READ_ONLY, ring);
+                pinned = curpid;
+            } catch (IOException e) {
+                throw new DbException("unable to read page " + curpgno
+                        + " of table " + hf.getId() + ": " + e.getMessage());
+            }
+            it = probe != null ? curp.iterator(probe) : curp.iterator();
+            if (!it.hasNext())
+                it = null;
+        }
+
+        if (it == null)
+            return null;
+        return it.next();
+    }
+
+    /**
+     * Adjusts the read-ahead window and requests the pages that have come
+     * into it. If the page about to be read was prefetched but is still in
+     * flight, the scan is outrunning the disk and the window doubles; if it
+     * is already there, the window shrinks by a page, so a slow consumer
+     * doesn't tie up frames holding pages it won't reach for a while.
+     */
+    void readAhead(HeapPageId curpid, int numPages) {
+        BufferPool bp = Database.getBufferPool();
+        int limit = bp.getPrefetchLimit(ring);
+        if (limit == 0)
+            return;
+        if (curpgno <= prefetchedTo) {
+            if (bp.isLoaded(curpid))
+                window = Math.max(MIN_WINDOW, window - 1);
+            else
+                window = Math.min(limit, window * 2);
+        }
+        window = Math.min(window, limit);
+        int last = Math.min(curpgno + window, numPages - 1);
+        for (int p = Math.max(prefetchedTo, curpgno) + 1; p <= last; p++) {
+            if (wanted(p))
+                bp.prefetchPage(new HeapPageId(hf.getId(), p), ring);
+        }
+        prefetchedTo = Math.max(prefetchedTo, last);
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    /**
+     * Unpins the page the scan has finished with. Tuples already returned
+     * from it stay valid. The cursor may still be on it, though, until
+     * next() moves it, so the first page a look-ahead leaves stays pinned
+     * until then.
+     */
+    private void leavePage() {
+        if (cursor != null && held == null) {
+            held = pinned;
+            pinned = null;
+        } else {
+            unpinCurrent();
+        }
+    }
+
+    private void unpinCurrent() {
+        if (pinned != null) {
+            Database.getBufferPool().unpinPage(tid, pinned);
+            pinned = null;
+        }
+    }
+
+    /** Unpins the page the cursor was on, once it has moved off it. */
+    private void releaseHeld() {
+        if (held != null) {
+            Database.getBufferPool().unpinPage(tid, held);
+            held = null;
+        }
+    }
+
+    public void close() {
+    	next = null;
+        it = null;
+        unpinCurrent();
+        releaseHeld();
+        Database.getBufferPool().releaseScanRing(ring);
+        ring = null;
+        curpgno = Integer.MAX_VALUE;
+    }
+}
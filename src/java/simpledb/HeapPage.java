@@ -1,7 +1,9 @@
 package simpledb;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -15,13 +17,34 @@ public class HeapPage implements Page {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte header[];
-    final Tuple tuples[];
+    /** The table's string dictionary, or null if it has no encoded column. */
+    final StringDictionary dict;
+    /**
+     * The header's slot bitmap, 64 slots to a word: slot i is bit i % 64 of
+     * word i / 64. Bits past numSlots are always clear.
+     */
+    final long slots[];
+    /** Bytes of header on disk, ceiling(numSlots / 8). */
+    final int headerSize;
+    /**
+     * The page as read from disk: a heap buffer, or a frame of an off-heap
+     * BufferPool's arena until {@link #detach} copies it out. The bytes are
+     * never modified while the page uses them. Since a frame's bytes change
+     * once it is reused, readers take data once, read it, and check that
+     * data is still the same buffer afterwards; if not, the frame may have
+     * been reused under them, and they read again from the heap copy.
+     */
+    volatile ByteBuffer data;
+    /** Tuples decoded from data so far; null for slots not yet asked for. */
+    final AtomicReferenceArray<Tuple> tuples;
     final int numSlots;
 
     byte[] oldData;
     private final Byte oldDataLock=new Byte((byte)0);
 
+    /** The transaction that dirtied this page, or null if it is clean. */
+    private volatile TransactionId dirtier;
+
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
@@ -34,32 +57,103 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * Tuples are not decoded here: the page keeps data and builds a slot's
+     * Tuple the first time {@link #getTuple} or the iterator asks for it, or
+     * just one field of it for {@link #getField}. The caller must not modify
+     * data afterwards; it also serves as the page's before-image.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+        synchronized(oldDataLock)
+        {
+        oldData = data;
+        }
+    }
+
+    /**
+     * Create a HeapPage over the page bytes at indexes 0 to
+     * BufferPool.getPageSize() of data, which must be big-endian. The
+     * buffer is used in place, not copied, so it must not change for as
+     * long as the page uses it; an off-heap BufferPool calls
+     * {@link #detach} before it reuses the frame.
+     */
+    HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.dict = td.hasDictionary()
+            ? ((HeapFile) Database.getCatalog().getDatabaseFile(id.getTableId())).getDictionary()
+            : null;
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.capacity() < BufferPool.getPageSize())
+            throw new IOException("page " + id.pageNumber() + " is only "
+                    + data.capacity() + " bytes");
+        this.data = data;
 
         // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        headerSize = getHeaderSize();
+        slots = new long[(numSlots + 63) / 64];
+        for (int b=0; b<headerSize; b++)
+            slots[b >> 3] |= (data.get(b) & 0xffL) << ((b & 7) * 8);
+        if (numSlots % 64 != 0)
+            slots[slots.length - 1] &= (1L << (numSlots % 64)) - 1;
+
+        tuples = new AtomicReferenceArray<Tuple>(numSlots);
+    }
+
+    /**
+     * A copy of other, for a writer to modify while readers that already
+     * have other go on reading it unchanged. The copy shares other's data,
+     * which neither modifies, and its decoded and inserted tuples, and
+     * takes other off any off-heap frame, which the copy now uses.
+     */
+    HeapPage(HeapPage other) {
+        this.pid = other.pid;
+        this.td = other.td;
+        this.dict = other.dict;
+        this.numSlots = other.numSlots;
+        this.headerSize = other.headerSize;
+        this.data = other.data;
+        this.slots = other.slots.clone();
+        this.tuples = new AtomicReferenceArray<Tuple>(numSlots);
+        for (int i = 0; i < numSlots; i++)
+            tuples.set(i, other.tuples.get(i));
+        this.oldData = other.oldData();
+        other.detach();
+    }
+
+    /** @see #HeapPage(HeapPage) */
+    HeapPage fork() {
+        return new HeapPage(this);
+    }
+
+    /** @return a copy of the page bytes data holds */
+    private byte[] copyData() {
+        byte[] copy = new byte[BufferPool.getPageSize()];
+        while (true) {
+            ByteBuffer d = data;
+            ByteBuffer src = d.duplicate();
+            src.clear();
+            src.get(copy);
+            if (d == data)
+                return copy;
         }
-        dis.close();
+    }
 
-        setBeforeImage();
+    /**
+     * Moves the page's bytes from a buffer pool's off-heap frame onto the
+     * heap, so that the frame can be reused while this page is still
+     * referenced. Does nothing for a page already on the heap.
+     * <p>
+     * The pool detaches a page before it frees the frame, so a reader that
+     * finds data unchanged after reading through it read this page's bytes.
+     */
+    void detach() {
+        if (data.isDirect())
+            data = ByteBuffer.wrap(copyData());
     }
 
     /** Retrieve the number of tuples on this page.
@@ -74,19 +168,17 @@ public class HeapPage implements Page {
      * @return the number of bytes in the header of a page in a HeapFile with each tuple occupying tupleSize bytes
      */
     private int getHeaderSize() {        
-        return (int) (Math.ceil(this.numSlots/8));
+        return (this.numSlots + 7) / 8;
     }
     
     /** Return a view of this page before it was modified
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            byte[] oldDataRef = null;
-            synchronized(oldDataLock)
-            {
-                oldDataRef = oldData;
-            }
-            return new HeapPage(pid,oldDataRef);
+            byte[] oldDataRef = oldData();
+            if (oldDataRef == null) // never modified: data is the before-image
+                oldDataRef = copyData();
+            return pageOf(oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -95,6 +187,19 @@ public class HeapPage implements Page {
         return null;
     }
     
+    /** @return the before-image bytes, or null if they are data's */
+    private byte[] oldData() {
+        synchronized(oldDataLock)
+        {
+            return oldData;
+        }
+    }
+
+    /** @return a page of the same layout as this one, with its id, over data */
+    HeapPage pageOf(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
@@ -110,37 +215,110 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Returns the tuple in slot i, decoding it from the page data the first
+     * time it is asked for. Later calls return the same Tuple.
+     *
+     * @return the tuple, or null if the slot is empty
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
+    public Tuple getTuple(int i) {
+        if (!isSlotUsed(i))
             return null;
+        Tuple t = tuples.get(i);
+        if (t != null)
+            return t;
+        t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, i));
+        for (int j=0; j<td.numFields(); j++)
+            t.setField(j, parseField(j, fieldOffset(i, j)));
+        // another thread may have decoded it too; everyone gets the first one
+        if (!tuples.compareAndSet(i, null, t))
+            t = tuples.get(i);
+        return t;
+    }
+
+    /**
+     * Returns field j of the tuple in slot i. Unless the tuple has already
+     * been built, only that one field is decoded, so a scan that tests one
+     * column can skip building tuples it is going to throw away.
+     *
+     * @return the field, or null if the slot is empty
+     */
+    public Field getField(int i, int j) {
+        if (!isSlotUsed(i))
+            return null;
+        Tuple t = tuples.get(i);
+        if (t != null)
+            return t.getField(j);
+        return parseField(j, fieldOffset(i, j));
+    }
+
+    /**
+     * Decodes field j stored at offset of data: a shared field from the
+     * dictionary if the field is encoded.
+     */
+    Field parseField(int j, int offset) {
+        while (true) {
+            ByteBuffer d = data;
+            try {
+                Field f = td.isDictionaryEncoded(j)
+                    ? dict.decode(j, d.getInt(offset))
+                    : td.getFieldType(j).parse(d, offset, td.getStringLen(j));
+                if (d == data)
+                    return f;
+            } catch (RuntimeException e) {
+                // bytes of the frame's next page need not decode
+                if (d == data)
+                    throw e;
+            }
         }
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+    /** @return the int stored at offset of data */
+    int readInt(int offset) {
+        while (true) {
+            ByteBuffer d = data;
+            int v = d.getInt(offset);
+            if (d == data)
+                return v;
+        }
+    }
+
+    /** @return the plain string field j stored at offset of data */
+    String readString(int j, int offset) {
+        while (true) {
+            ByteBuffer d = data;
+            try {
+                String v = Type.readString(d, offset, td.getStringLen(j));
+                if (d == data)
+                    return v;
+            } catch (RuntimeException e) {
+                if (d == data)
+                    throw e;
             }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
         }
+    }
 
-        return t;
+    /**
+     * Writes f as field j of a tuple of td to dos, in the format
+     * parseField reads; an encoded field is written as its code in dict,
+     * which gives a new value its code.
+     */
+    static void writeField(TupleDesc td, StringDictionary dict, int j, Field f,
+            DataOutputStream dos) throws IOException {
+        if (td.isDictionaryEncoded(j))
+            dos.writeInt(dict.encode(j, f));
+        else
+            td.getFieldType(j).serialize(f, dos, td.getStringLen(j));
+    }
+
+    /** @return the offset in data of the first byte of slot i */
+    private int slotOffset(int i) {
+        return headerSize + i * td.getSize();
+    }
+
+    /** @return the offset in data of field j of slot i */
+    int fieldOffset(int i, int j) {
+        return slotOffset(i) + td.getFieldOffset(j);
     }
 
     /**
@@ -155,14 +333,27 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
+        while (true) {
+            ByteBuffer d = data;
+            byte[] page = pageData(d);
+            if (d == data)
+                return page;
+        }
+    }
+
+    /**
+     * Generates the bytes of this page, copying tuples that were never
+     * decoded from raw, which getPageData checks is still data afterwards.
+     */
+    byte[] pageData(ByteBuffer raw) {
         int len = BufferPool.getPageSize();
         ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
         DataOutputStream dos = new DataOutputStream(baos);
 
         // create the header of the page
-        for (int i=0; i<header.length; i++) {
+        for (int i=0; i<headerSize; i++) {
             try {
-                dos.writeByte(header[i]);
+                dos.writeByte((int) (slots[i >> 3] >>> ((i & 7) * 8)));
             } catch (IOException e) {
                 // this really shouldn't happen
                 e.printStackTrace();
@@ -170,7 +361,9 @@ public class HeapPage implements Page {
         }
 
         // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+        raw = raw.duplicate();
+        byte[] row = new byte[td.getSize()];
+        for (int i=0; i<numSlots; i++) {
 
             // empty slot
             if (!isSlotUsed(i)) {
@@ -185,11 +378,22 @@ public class HeapPage implements Page {
                 continue;
             }
 
-            // non-empty slot
+            // non-empty slot that was never decoded: copy its bytes
+            Tuple t = tuples.get(i);
+            if (t == null) {
+                raw.position(slotOffset(i));
+                raw.get(row);
+                try {
+                    dos.write(row);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
             for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
+                Field f = t.getField(j);
                 try {
-                    f.serialize(dos);
+                    writeField(td, dict, j, f, dos);
                 
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -198,7 +402,7 @@ public class HeapPage implements Page {
         }
 
         // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
+        int zerolen = BufferPool.getPageSize() - (headerSize + td.getSize() * numSlots); //- numSlots * td.getSize();
         byte[] zeroes = new byte[zerolen];
         try {
             dos.write(zeroes, 0, zerolen);
@@ -238,7 +442,16 @@ public class HeapPage implements Page {
      */
     public void deleteTuple(Tuple t) throws DbException {
         // some code goes here
-        // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("tuple is not on page " + pid.pageNumber());
+        int i = rid.tupleno();
+        if (i < 0 || i >= numSlots || !isSlotUsed(i))
+            throw new DbException("slot " + i + " of page " + pid.pageNumber() + " is empty");
+        markSlotUsed(i, false);
+        tuples.set(i, null);
+        if (!(t instanceof TupleCursor))
+            t.setRecordId(null);
     }
 
     /**
@@ -250,7 +463,26 @@ public class HeapPage implements Page {
      */
     public void insertTuple(Tuple t) throws DbException {
         // some code goes here
-        // not necessary for lab1
+        if (!td.sameFields(t.getTupleDesc()))
+            throw new DbException("tuple does not match the table's TupleDesc");
+        int i = nextEmptySlot();
+        if (i < 0)
+            throw new DbException("page " + pid.pageNumber() + " is full");
+        t.setRecordId(new RecordId(pid, i));
+        tuples.set(i, t);
+        markSlotUsed(i, true);
+    }
+
+    /** @return the first empty slot, or -1 if the page is full */
+    private int nextEmptySlot() {
+        for (int w = 0; w < slots.length; w++) {
+            long free = ~slots[w];
+            if (free != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(free);
+                return i < numSlots ? i : -1;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -259,7 +491,7 @@ public class HeapPage implements Page {
      */
     public void markDirty(boolean dirty, TransactionId tid) {
         // some code goes here
-	// not necessary for lab1
+        dirtier = dirty ? tid : null;
     }
 
     /**
@@ -267,48 +499,41 @@ public class HeapPage implements Page {
      */
     public TransactionId isDirty() {
         // some code goes here
-	// Not necessary for lab1
-        return null;      
+        return dirtier;
+    }
+
+    /**
+     * Returns the number of tuple slots on this page, used or not.
+     */
+    public int getNumSlots() {
+        return numSlots;
     }
 
     /**
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        int mask = 1;
     	int count = 0;
-    	for(int j = 0; j<this.getHeaderSize(); j++) {
-    		for(int i = 0; i<8; i++) {
-    			count += ((this.header[j] >> i) & mask);
-    		}
-    		
-    	}
+    	for (int w = 0; w < slots.length; w++)
+    		count += Long.bitCount(slots[w]);
         return numSlots-count;
     }
 
-    private Object Integer(int numSlots2) {
-		// TODO Auto-generated method stub
-		return null;
-	}
-
 	/**
      * Returns true if associated slot on this page is filled.
      */
     public boolean isSlotUsed(int i) {
-        
-    	byte mask = 1;
-    	boolean used = ((this.header[i/8] >> (i % 8)) & mask)> 0;
-    	
-    	return used;
-    			    
+    	return (slots[i >> 6] & (1L << i)) != 0;
     }
 
     /**
      * Abstraction to fill or clear a slot on this page.
      */
     private void markSlotUsed(int i, boolean value) {
-        // some code goes here
-        // not necessary for lab1
+        if (value)
+            slots[i >> 6] |= 1L << i;
+        else
+            slots[i >> 6] &= ~(1L << i);
     }
 
     /**
@@ -319,26 +544,19 @@ public class HeapPage implements Page {
     	
     	Iterator<Tuple> iter = new Iterator<Tuple>() {
 
-    		private int currentIndex = 0;
+    		/** The next used slot, or -1 once there are no more. */
+    		private int nextIndex = nextUsedSlot(0);
 
     		public boolean hasNext() {
-    			int indexCopy = currentIndex;
-    			for (;indexCopy < tuples.length; indexCopy++) {
-    				if (isSlotUsed(indexCopy)) {
-    					return true;
-    				}
-    			}
-    			return false;
+    			return nextIndex >= 0;
     		}
 
     		public Tuple next() {
-    			while(hasNext()) {
-    				if (isSlotUsed(currentIndex)) {
-    					return tuples[this.currentIndex++];
-    				}
-    				++currentIndex;
-    			}
-    			throw new UnsupportedOperationException();
+    			if (nextIndex < 0)
+    				throw new NoSuchElementException();
+    			Tuple t = getTuple(nextIndex);
+    			nextIndex = nextUsedSlot(nextIndex + 1);
+    			return t;
     		}
 
     	};
@@ -346,5 +564,52 @@ public class HeapPage implements Page {
     	return iter;
     }
 
+
+    /**
+     * @return the first used slot at or after from, or -1 if there is none
+     */
+    public int nextUsedSlot(int from) {
+        if (from >= numSlots)
+            return -1;
+        int w = from >> 6;
+        long word = slots[w] & (-1L << from); // drop the slots before from
+        while (word == 0) {
+            if (++w == slots.length)
+                return -1;
+            word = slots[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns an iterator over the used slots of this page that yields
+     * cursor, moved to each slot in turn, rather than a Tuple per slot.
+     * Callers keeping a row must {@link Tuple#retain} it.
+     *
+     * @param cursor a cursor for this page's TupleDesc
+     */
+    public Iterator<Tuple> iterator(final TupleCursor cursor) {
+        return new Iterator<Tuple>() {
+
+            private int next = nextUsedSlot(0);
+
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            public Tuple next() {
+                if (next < 0)
+                    throw new NoSuchElementException();
+                cursor.moveTo(HeapPage.this, next);
+                next = nextUsedSlot(next + 1);
+                return cursor;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
 }
 
@@ -10,8 +10,8 @@ public class HeapPageId implements PageId {
      * @param tableId The table that is being referenced
      * @param pgNo The page number in that table.
      */
-    private int tabId;
-    private int pageNum;
+    private final int tabId;
+    private final int pageNum;
     public HeapPageId(int tableId, int pgNo) {
         tabId = tableId;
         pageNum = pgNo;
@@ -31,14 +31,38 @@ public class HeapPageId implements PageId {
     }
 
     /**
-     * @return a hash code for this page, represented by the concatenation of
-     *   the table number and the page number (needed if a PageId is used as a
-     *   key in a hash table in the BufferPool, for example.)
+     * @return the table number and the page number packed into a long,
+     *   table number in the high half, for maps keyed by primitive longs.
+     *   Two HeapPageIds are equal exactly when their keys are.
+     */
+    public long toKey() {
+        return key(tabId, pageNum);
+    }
+
+    /** @return the packed key of page pgNo of table tableId; see toKey */
+    public static long key(int tableId, int pgNo) {
+        return ((long) tableId << 32) | (pgNo & 0xffffffffL);
+    }
+
+    /**
+     * Scrambles a packed key into a hash code in which every bit depends on
+     * both the table and the page number: one multiply and two shifts, the
+     * tail of MurmurHash3's 64-bit finalizer.
+     */
+    public static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        return (int) (key ^ (key >>> 33));
+    }
+
+    /**
+     * @return a hash code for this page, mixed from the table number and
+     *   the page number (needed if a PageId is used as a key in a hash
+     *   table in the BufferPool, for example.)
      * @see BufferPool
      */
     public int hashCode() {
-        int lengthOfPgNm = (int) Math.floor(Math.log10(pageNum) + 1);
-        return (int) (pageNum + Math.pow(10, lengthOfPgNm) * tabId);
+        return hash(toKey());
     }
 
     /**
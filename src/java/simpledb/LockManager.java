@@ -0,0 +1,232 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LockManager grants the page-level shared and exclusive locks the
+ * BufferPool takes for each getPage, and holds them until the transaction
+ * completes (strict two-phase locking).
+ * <p>
+ * Each page has its own {@link PageLock}, which is its own monitor and wait
+ * queue, so transactions contending for different pages never touch a
+ * shared monitor, and re-requesting a lock already held takes no monitor at
+ * all. A transaction that has to wait records which lock it waits for; the
+ * wait-for graph is the union of those edges and the locks' holders. Before
+ * waiting, a transaction looks for a path in the graph leading back to
+ * itself, and if there is one it gives up with a
+ * {@link TransactionAbortedException} rather than close the cycle. Only
+ * those checks share a monitor, and they run only when someone is about to
+ * wait.
+ * <p>
+ * Shared requests are granted whenever no other transaction holds the page
+ * exclusively, so a steady stream of readers can hold off a writer; the
+ * workloads here are read-mostly, and that keeps readers from ever queueing
+ * behind each other.
+ */
+class LockManager {
+
+    /** The lock on one page. Guarded by its own monitor except as noted. */
+    static final class PageLock {
+        final PageId pid;
+        /**
+         * Every transaction holding the lock, shared or exclusive. A
+         * concurrent set, so the deadlock check can read it without this
+         * lock's monitor.
+         */
+        final Set<TransactionId> holders =
+            Collections.newSetFromMap(new ConcurrentHashMap<TransactionId, Boolean>());
+        /** The holder of the exclusive lock, or null. */
+        volatile TransactionId exclusive;
+        /** Transactions waiting in this lock's monitor. */
+        int waiters;
+        /** Set once the lock has left the table; requesters must look again. */
+        boolean retired;
+
+        PageLock(PageId pid) {
+            this.pid = pid;
+        }
+
+        boolean canGrant(TransactionId tid, boolean exclusiveRequest) {
+            TransactionId x = exclusive;
+            if (x != null)
+                return x.equals(tid);
+            if (!exclusiveRequest)
+                return true;
+            // an upgrade is granted once the requester is the only reader
+            return holders.isEmpty() || (holders.size() == 1 && holders.contains(tid));
+        }
+    }
+
+    private final ConcurrentHashMap<PageId, PageLock> locks =
+        new ConcurrentHashMap<PageId, PageLock>();
+
+    /** The pages each transaction holds a lock on. */
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> held =
+        new ConcurrentHashMap<TransactionId, Set<PageId>>();
+
+    /**
+     * Edges of the wait-for graph: the lock each waiting transaction waits
+     * for. Updated, and searched for cycles, under its own monitor.
+     */
+    private final ConcurrentHashMap<TransactionId, PageLock> waitingFor =
+        new ConcurrentHashMap<TransactionId, PageLock>();
+
+    /**
+     * Acquires a lock on pid for tid, shared for READ_ONLY and exclusive for
+     * READ_WRITE, waiting as long as another transaction holds a conflicting
+     * lock. A shared lock tid already holds is upgraded.
+     *
+     * @throws TransactionAbortedException if waiting would deadlock
+     */
+    void acquire(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException {
+        boolean exclusive = perm == Permissions.READ_WRITE;
+        while (true) {
+            PageLock lock = locks.get(pid);
+            if (lock != null && (exclusive ? tid.equals(lock.exclusive)
+                                           : lock.holders.contains(tid)))
+                return; // already held
+            if (lock == null) {
+                PageLock fresh = new PageLock(pid);
+                lock = locks.putIfAbsent(pid, fresh);
+                if (lock == null)
+                    lock = fresh;
+            }
+            synchronized (lock) {
+                if (lock.retired)
+                    continue;
+                if (!lock.canGrant(tid, exclusive))
+                    waitFor(tid, lock, exclusive);
+                lock.holders.add(tid);
+                if (exclusive)
+                    lock.exclusive = tid;
+            }
+            heldBy(tid).add(pid);
+            return;
+        }
+    }
+
+    /**
+     * Waits on lock's monitor, which the caller holds, until tid can be
+     * granted it.
+     */
+    private void waitFor(TransactionId tid, PageLock lock, boolean exclusive)
+            throws TransactionAbortedException {
+        synchronized (waitingFor) {
+            waitingFor.put(tid, lock);
+            if (closesCycle(tid)) {
+                waitingFor.remove(tid);
+                throw new TransactionAbortedException();
+            }
+        }
+        boolean interrupted = false;
+        lock.waiters++;
+        try {
+            while (!lock.canGrant(tid, exclusive)) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            lock.waiters--;
+            waitingFor.remove(tid);
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if a transaction that tid waits for is, through the
+     *     wait-for graph, waiting for tid. Caller holds waitingFor's monitor.
+     */
+    private boolean closesCycle(TransactionId tid) {
+        HashSet<TransactionId> seen = new HashSet<TransactionId>();
+        ArrayDeque<TransactionId> todo = new ArrayDeque<TransactionId>();
+        todo.push(tid);
+        while (!todo.isEmpty()) {
+            TransactionId t = todo.pop();
+            PageLock lock = waitingFor.get(t);
+            if (lock == null)
+                continue;
+            for (TransactionId h : lock.holders) {
+                if (h.equals(t))
+                    continue; // an upgrader doesn't wait for itself
+                if (h.equals(tid))
+                    return true;
+                if (seen.add(h))
+                    todo.push(h);
+            }
+        }
+        return false;
+    }
+
+    private Set<PageId> heldBy(TransactionId tid) {
+        Set<PageId> pages = held.get(tid);
+        if (pages == null) {
+            Set<PageId> fresh =
+                Collections.newSetFromMap(new ConcurrentHashMap<PageId, Boolean>());
+            pages = held.putIfAbsent(tid, fresh);
+            if (pages == null)
+                pages = fresh;
+        }
+        return pages;
+    }
+
+    /** @return the pages tid holds a lock on; a live view */
+    Set<PageId> lockedBy(TransactionId tid) {
+        Set<PageId> pages = held.get(tid);
+        return pages == null ? Collections.<PageId>emptySet() : pages;
+    }
+
+    /** Releases tid's lock on pid, if it has one. */
+    void release(TransactionId tid, PageId pid) {
+        Set<PageId> pages = held.get(tid);
+        if (pages != null)
+            pages.remove(pid);
+        unlock(tid, pid);
+    }
+
+    /** Releases every lock tid holds. */
+    void releaseAll(TransactionId tid) {
+        Set<PageId> pages = held.remove(tid);
+        if (pages == null)
+            return;
+        for (PageId pid : pages)
+            unlock(tid, pid);
+    }
+
+    private void unlock(TransactionId tid, PageId pid) {
+        PageLock lock = locks.get(pid);
+        if (lock == null)
+            return;
+        synchronized (lock) {
+            if (!lock.holders.remove(tid))
+                return;
+            if (tid.equals(lock.exclusive))
+                lock.exclusive = null;
+            if (lock.holders.isEmpty() && lock.waiters == 0) {
+                lock.retired = true;
+                locks.remove(pid, lock);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /** @return true if tid holds a lock, shared or exclusive, on pid */
+    boolean holdsLock(TransactionId tid, PageId pid) {
+        PageLock lock = locks.get(pid);
+        return lock != null && lock.holders.contains(tid);
+    }
+
+    /** @return true if tid holds the exclusive lock on pid */
+    boolean holdsExclusive(TransactionId tid, PageId pid) {
+        PageLock lock = locks.get(pid);
+        return lock != null && tid.equals(lock.exclusive);
+    }
+}
@@ -51,8 +51,8 @@ transaction id.
 <li> Each log record ends with a long integer file offset representing
 the position in the log file where the record began.
 
-<li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
-CHECKPOINT
+<li> There are six record types: ABORT, COMMIT, UPDATE, BEGIN,
+CHECKPOINT and APPEND
 
 <li> ABORT, COMMIT, and BEGIN records contain no additional data
 
@@ -67,6 +67,11 @@ of the record is an integer count of the number of transactions, as well
 as a long integer transaction id and a long integer first record offset
 for each active transaction.
 
+<li> APPEND records stand for a batch of pages a bulk load wrote past
+the end of a table's file instead of through the buffer pool.  They
+consist of the integer table id, first page number and number of pages;
+the pages become part of the table only if the transaction commits.
+
 </ul>
 
 */
@@ -82,6 +87,7 @@ public class LogFile {
     static final int UPDATE_RECORD = 3;
     static final int BEGIN_RECORD = 4;
     static final int CHECKPOINT_RECORD = 5;
+    static final int APPEND_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
     final static int INT_SIZE = 4;
@@ -218,6 +224,25 @@ public class LogFile {
         Debug.log("WRITE OFFSET = " + currentOffset);
     }
 
+    /** Write an APPEND record for numPages pages that tid wrote to the
+        end of table tableId, starting at page firstPage.  The record is
+        not forced; it reaches disk with the commit.
+
+        @see HeapFile#bulkAppend
+    */
+    public synchronized void logAppend(TransactionId tid, int tableId,
+                                       int firstPage, int numPages)
+        throws IOException {
+        preAppend();
+        raf.writeInt(APPEND_RECORD);
+        raf.writeLong(tid.getId());
+        raf.writeInt(tableId);
+        raf.writeInt(firstPage);
+        raf.writeInt(numPages);
+        raf.writeLong(currentOffset);
+        currentOffset = raf.getFilePointer();
+    }
+
     void writePageData(RandomAccessFile raf, Page p) throws IOException{
         PageId pid = p.getId();
         int pageInfo[] = pid.serialize();
@@ -429,6 +454,10 @@ public class LogFile {
                 case BEGIN_RECORD:
                     tidToFirstLogRecord.put(record_tid,newStart);
                     break;
+                case APPEND_RECORD:
+                    for (int i = 0; i < 3; i++)
+                        logNew.writeInt(raf.readInt());
+                    break;
                 }
 
                 //all xactions finish with a pointer
@@ -0,0 +1,39 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used replacement: evicts the evictable page whose last
+ * access is oldest.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    /** Resident pages in access order, least recently used first. */
+    private final LinkedHashMap<PageId, Boolean> order =
+        new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+    public void pageAdded(PageId pid) {
+        order.put(pid, Boolean.TRUE);
+    }
+
+    public void pageAccessed(PageId pid) {
+        order.get(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        order.remove(pid);
+    }
+
+    public PageId chooseVictim(Filter filter) {
+        Iterator<PageId> it = order.keySet().iterator();
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (filter.canEvict(pid)) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,291 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * PageBloomFilters keeps a Bloom filter of the values of chosen fields on
+ * each page of a HeapFile, so a scan with an EQUALS {@link Predicate} on
+ * one of them can skip the pages that certainly don't hold its operand
+ * (see {@link #mightContain}). It makes point lookups on a column with no
+ * index cheap where a B+-tree would cost too much to keep up, as on a
+ * wide log table, at the price of a few bits per slot per field.
+ * <p>
+ * Each filter is sized for a full page and the chosen false positive
+ * rate: with n slots and rate p it has m = -n ln p / (ln 2)^2 bits, and
+ * sets k = (m / n) ln 2 of them per value, picked by double hashing of
+ * {@link Field#hashCode}. A filter may claim values its page doesn't hold,
+ * never the reverse. Committing a page records the exact filters of its
+ * tuples; flushing changes not yet committed keeps the values of the
+ * committed version as well, as a rollback may bring it back. An insert
+ * adds its tuple's values in memory at once; deletes leave them until the
+ * page is written. A page with no entry holds any value. The filters
+ * describe only the latest version of a page, so a snapshot transaction,
+ * which may read older ones, doesn't prune.
+ * <p>
+ * The filters live in a side file next to the table, named after it with
+ * a ".bloom" suffix: a header giving the fields, the bits per filter and
+ * the number of hashes, then each page's filters, one per field. A table
+ * has them once {@link HeapFile#buildBloomFilters} has built them.
+ */
+class PageBloomFilters {
+
+    /** Suffix of the side file, added to the table file's name. */
+    static final String SUFFIX = ".bloom";
+
+    private final File file;
+    /** The fields with filters, in order. */
+    private final int[] fields;
+    /** The filter of each field, or -1 if it has none. */
+    private final int[] filterOf;
+    /** Bits in each filter, a multiple of 64. */
+    private final int bits;
+    /** Bits set per value. */
+    private final int hashes;
+    /** Longs in one filter. */
+    private final int words;
+    /** Bytes of the header before the first page's filters. */
+    private final int headerBytes;
+    /** Filter f of page p starts at (p * fields.length + f) * words. */
+    private long[] filters;
+    /** Pages that have an entry. */
+    private int numPages;
+    /** Pages whose entries are in the side file. */
+    private int written;
+    /** Open on the side file once the first entry is written. */
+    private RandomAccessFile out;
+
+    /** @return the side file of the table stored in tableFile */
+    static File fileFor(File tableFile) {
+        return new File(tableFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Creates empty filters on the given fields of the table stored in
+     * tableFile, replacing any it has, sized so that each one claims a
+     * value its page doesn't hold with probability falsePositiveRate when
+     * the page is full.
+     *
+     * @throws IllegalArgumentException if falsePositiveRate is not between
+     *     0 and 1, or there are no fields
+     */
+    static PageBloomFilters create(File tableFile, TupleDesc td, int[] fields,
+            double falsePositiveRate) throws IOException {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new IllegalArgumentException("false positive rate " + falsePositiveRate
+                    + " is not between 0 and 1");
+        if (fields.length == 0)
+            throw new IllegalArgumentException("no fields to filter");
+        int slots = (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+        double ln2 = Math.log(2);
+        double m = -slots * Math.log(falsePositiveRate) / (ln2 * ln2);
+        int bits = (int) Math.ceil(m / 64) * 64;
+        int hashes = Math.max(1, (int) Math.round(bits * ln2 / slots));
+
+        File f = fileFor(tableFile);
+        if (f.exists() && !f.delete())
+            throw new IOException("unable to replace " + f);
+        DataOutputStream dos = new DataOutputStream(new FileOutputStream(f));
+        try {
+            dos.writeInt(fields.length);
+            for (int field : fields) {
+                if (field < 0 || field >= td.numFields())
+                    throw new IllegalArgumentException("no field " + field);
+                dos.writeInt(field);
+            }
+            dos.writeInt(bits);
+            dos.writeInt(hashes);
+        } finally {
+            dos.close();
+        }
+        return new PageBloomFilters(tableFile, td);
+    }
+
+    /** Loads the filters of the table stored in tableFile. */
+    PageBloomFilters(File tableFile, TupleDesc td) throws IOException {
+        this.file = fileFor(tableFile);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            fields = new int[in.readInt()];
+            for (int f = 0; f < fields.length; f++)
+                fields[f] = in.readInt();
+            bits = in.readInt();
+            hashes = in.readInt();
+            words = bits / 64;
+            headerBytes = (fields.length + 3) * 4;
+            filterOf = new int[td.numFields()];
+            Arrays.fill(filterOf, -1);
+            for (int f = 0; f < fields.length; f++)
+                filterOf[fields[f]] = f;
+            int known = (int) ((file.length() - headerBytes) / entryBytes());
+            filters = new long[Math.max(known, 16) * fields.length * words];
+            for (int i = 0; i < known * fields.length * words; i++)
+                filters[i] = in.readLong();
+            numPages = written = known;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** @return the bytes of one page's entry */
+    private int entryBytes() {
+        return fields.length * words * 8;
+    }
+
+    /** @return the bits in each filter */
+    int getBits() {
+        return bits;
+    }
+
+    /** @return the bits set per value */
+    int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Makes sure page pgNo has an entry; pages given one here count as
+     * holding any value.
+     */
+    private void grow(int pgNo) {
+        if (pgNo < numPages)
+            return;
+        int n = fields.length * words;
+        if ((pgNo + 1) * n > filters.length)
+            filters = Arrays.copyOf(filters, Math.max((pgNo + 1) * n, filters.length * 2));
+        Arrays.fill(filters, numPages * n, (pgNo + 1) * n, -1L);
+        numPages = pgNo + 1;
+    }
+
+    /** Records that page pgNo holds no tuples, in memory only. */
+    synchronized void clear(int pgNo) {
+        grow(pgNo);
+        int n = fields.length * words;
+        Arrays.fill(filters, pgNo * n, (pgNo + 1) * n, 0L);
+    }
+
+    /**
+     * Adds value to the filter of field on page pgNo, in memory only. Does
+     * nothing if field has no filter.
+     */
+    synchronized void add(int pgNo, int field, Field value) {
+        int f = filterOf[field];
+        if (f < 0)
+            return;
+        grow(pgNo);
+        int base = (pgNo * fields.length + f) * words;
+        long h = mix(value.hashCode());
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & 0x7fffffff) % bits;
+            filters[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /** Adds the values of t to the filters of page pgNo, in memory only. */
+    synchronized void add(int pgNo, Tuple t) {
+        for (int field : fields)
+            add(pgNo, field, t.getField(field));
+    }
+
+    /** Records the exact filters of the tuples on page, in memory only. */
+    synchronized void set(HeapPage page) {
+        clear(page.getId().pageNumber());
+        add(page);
+    }
+
+    /** Adds the values of the tuples on page to its filters, in memory only. */
+    synchronized void add(HeapPage page) {
+        int pgNo = page.getId().pageNumber();
+        for (int i = page.nextUsedSlot(0); i >= 0; i = page.nextUsedSlot(i + 1)) {
+            for (int field : fields)
+                add(pgNo, field, page.getField(i, field));
+        }
+    }
+
+    /**
+     * @return false if p is an EQUALS on a field with a filter and page
+     *     pgNo certainly holds no tuple that satisfies it, true otherwise
+     */
+    synchronized boolean mightContain(int pgNo, Predicate p) {
+        if (p.getOp() != Predicate.Op.EQUALS)
+            return true;
+        int f = filterOf[p.getField()];
+        if (f < 0 || pgNo >= numPages)
+            return true;
+        int base = (pgNo * fields.length + f) * words;
+        long h = mix(p.getOperand().hashCode());
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & 0x7fffffff) % bits;
+            if ((filters[base + (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Spreads a hash code over 64 bits, so that two halves of it serve as
+     * independent hashes even for ints, whose hash code is themselves.
+     */
+    private static long mix(int hashCode) {
+        long x = hashCode * 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Writes the entry of page pgNo to the side file, and those of any
+     * pages before it that haven't been written.
+     */
+    synchronized void writeEntry(int pgNo) throws IOException {
+        grow(pgNo);
+        if (out == null)
+            out = new RandomAccessFile(file, "rw");
+        int from = Math.min(pgNo, written);
+        int n = fields.length * words;
+        ByteArrayOutputStream entries = new ByteArrayOutputStream((pgNo + 1 - from) * entryBytes());
+        DataOutputStream dos = new DataOutputStream(entries);
+        for (int i = from * n; i < (pgNo + 1) * n; i++)
+            dos.writeLong(filters[i]);
+        out.seek(headerBytes + (long) from * entryBytes());
+        out.write(entries.toByteArray());
+        written = Math.max(written, pgNo + 1);
+    }
+
+    /**
+     * Drops the entries from numPages on, for pages cut off the table.
+     */
+    synchronized void truncate(int numPages) throws IOException {
+        if (numPages >= this.numPages)
+            return;
+        this.numPages = numPages;
+        if (written > numPages) {
+            written = numPages;
+            if (out == null)
+                out = new RandomAccessFile(file, "rw");
+            out.setLength(headerBytes + (long) numPages * entryBytes());
+        }
+    }
+
+    /** Makes the entries written so far durable. */
+    synchronized void force() throws IOException {
+        if (out != null)
+            out.getFD().sync();
+    }
+
+    /** Closes the side file; the next write reopens it. */
+    synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // Ignore failures closing the file
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * PageCompressor compresses single pages for compressed HeapFiles in the
+ * LZ4 block format: a series of sequences, each a token byte whose high
+ * and low four bits give a literal and a match length (15 meaning that
+ * bytes of 255 and a last smaller one follow, to be added), the literals,
+ * and a two-byte little-endian offset back to the match, which is at
+ * least four bytes long. The last sequence is literals only, and the last
+ * five bytes of the input are always literals.
+ * <p>
+ * Matches are found with a hash table of the four-byte words seen so far,
+ * one candidate per slot, and the search steps faster through input that
+ * isn't matching, so incompressible pages cost little. Pages of a
+ * fact table, with their small integers, repeated strings and zero
+ * padding, typically shrink three to ten times.
+ * <p>
+ * A PageCompressor keeps its hash table between calls, so it is not
+ * thread-safe; use one per thread or lock around it.
+ */
+class PageCompressor {
+
+    private static final int MIN_MATCH = 4;
+    /** Bytes at the end of the input that are always literals. */
+    private static final int LAST_LITERALS = 5;
+    /** No match starts within this many bytes of the end. */
+    private static final int MATCH_LIMIT = 12;
+    private static final int HASH_BITS = 12;
+    /** How far back a match can be, the most a two-byte offset holds. */
+    private static final int MAX_OFFSET = 65535;
+
+    private final int[] table = new int[1 << HASH_BITS];
+
+    /**
+     * Compresses src[0..len) into dst.
+     *
+     * @return the compressed length, or -1 if it would not fit in dst
+     */
+    int compress(byte[] src, int len, byte[] dst) {
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int ip = 0;
+        int op = 0;
+        int limit = len - MATCH_LIMIT;
+        int matchEnd = len - LAST_LITERALS;
+        while (ip < limit) {
+            int word = readInt(src, ip);
+            int h = (word * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != word) {
+                // skip ahead faster the longer nothing has matched
+                ip += 1 + ((ip - anchor) >>> 6);
+                continue;
+            }
+            int mlen = MIN_MATCH;
+            while (ip + mlen < matchEnd && src[ref + mlen] == src[ip + mlen])
+                mlen++;
+            while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+                mlen++;
+            }
+            op = writeSequence(src, anchor, ip - anchor, ip - ref, mlen, dst, op);
+            if (op < 0)
+                return -1;
+            ip += mlen;
+            anchor = ip;
+        }
+        return writeSequence(src, anchor, len - anchor, 0, 0, dst, op);
+    }
+
+    /**
+     * Writes the literals src[from..from+litLen) followed by a match of
+     * mlen bytes offset back, or by nothing if mlen is 0, to dst at op.
+     *
+     * @return the position in dst after the sequence, or -1 if it does
+     *     not fit
+     */
+    private static int writeSequence(byte[] src, int from, int litLen, int offset,
+            int mlen, byte[] dst, int op) {
+        int extra = mlen == 0 ? 0 : mlen - MIN_MATCH;
+        int need = 1 + litLen + litLen / 255 + 1 + (mlen == 0 ? 0 : 2 + extra / 255 + 1);
+        if (op + need > dst.length)
+            return -1;
+        int token = op++;
+        dst[token] = (byte) (Math.min(litLen, 15) << 4 | (mlen == 0 ? 0 : Math.min(extra, 15)));
+        if (litLen >= 15)
+            op = writeLength(litLen - 15, dst, op);
+        System.arraycopy(src, from, dst, op, litLen);
+        op += litLen;
+        if (mlen == 0)
+            return op;
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        if (extra >= 15)
+            op = writeLength(extra - 15, dst, op);
+        return op;
+    }
+
+    private static int writeLength(int n, byte[] dst, int op) {
+        while (n >= 255) {
+            dst[op++] = (byte) 255;
+            n -= 255;
+        }
+        dst[op++] = (byte) n;
+        return op;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16
+            | (b[i + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Decompresses src[off..off+len), which compress wrote, into exactly
+     * dst.length bytes of dst.
+     *
+     * @throws IOException if src is not a valid compressed page of that
+     *     length
+     */
+    static void decompress(byte[] src, int off, int len, byte[] dst) throws IOException {
+        int ip = off;
+        int end = off + len;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xff;
+                int lit = token >>> 4;
+                if (lit == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        lit += b;
+                    } while (b == 255);
+                }
+                if (ip + lit > end)
+                    throw corrupt();
+                System.arraycopy(src, ip, dst, op, lit);
+                ip += lit;
+                op += lit;
+                if (ip == end)
+                    break;
+                int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int mlen = token & 15;
+                if (mlen == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        mlen += b;
+                    } while (b == 255);
+                }
+                mlen += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < 0)
+                    throw corrupt();
+                if (offset >= mlen) {
+                    System.arraycopy(dst, ref, dst, op, mlen);
+                } else {
+                    // overlapping: the match repeats its last offset bytes
+                    for (int i = 0; i < mlen; i++)
+                        dst[op + i] = dst[ref + i];
+                }
+                op += mlen;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw corrupt();
+        }
+        if (op != dst.length)
+            throw corrupt();
+    }
+
+    private static IOException corrupt() {
+        return new IOException("corrupt compressed page");
+    }
+}
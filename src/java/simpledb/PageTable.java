@@ -0,0 +1,109 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * PageTable maps pages, by their packed (tableId, pageNo) key (see
+ * {@link HeapPageId#toKey}), to the index of the BufferPool frame that
+ * holds them. It is an open-addressing hash table with linear probing over
+ * two parallel primitive arrays, sized once for the pool's frames, so
+ * neither lookups nor updates box a key or allocate an entry.
+ * <p>
+ * {@link #get} takes no lock. {@link #put} and {@link #remove} must be
+ * serialized by the caller; the BufferPool calls them under its lock. A
+ * remove shifts later entries of its probe run back a slot, so a lookup
+ * racing it may miss a page that is present, or return the index of some
+ * other page. Callers therefore check the key of the frame they get, and
+ * treat a miss as a hint to look again under the lock.
+ */
+class PageTable {
+
+    private static final int EMPTY = -1;
+
+    private final int mask;
+    private final AtomicLongArray keys;
+    private final AtomicIntegerArray frames;
+    private int size;
+
+    /**
+     * @param maxEntries the most entries the table will ever hold; it is
+     *     sized so that at least half its slots stay empty
+     */
+    PageTable(int maxEntries) {
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) * 2;
+        mask = capacity - 1;
+        keys = new AtomicLongArray(capacity);
+        frames = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            frames.set(i, EMPTY);
+    }
+
+    private int home(long key) {
+        return HeapPageId.hash(key) & mask;
+    }
+
+    /** @return the frame index stored for key, or -1 if there is none */
+    int get(long key) {
+        for (int i = home(key); ; i = (i + 1) & mask) {
+            int f = frames.get(i);
+            if (f == EMPTY)
+                return EMPTY;
+            if (keys.get(i) == key)
+                return f;
+        }
+    }
+
+    /** Maps key, which must not be in the table, to frame. */
+    void put(long key, int frame) {
+        if (size * 2 > mask)
+            throw new IllegalStateException("page table is full");
+        int i = home(key);
+        while (frames.get(i) != EMPTY)
+            i = (i + 1) & mask;
+        keys.set(i, key);
+        frames.set(i, frame); // publishes the key written above
+        size++;
+    }
+
+    /**
+     * Removes key, moving later entries of its probe run back into the gap
+     * so that lookups never need tombstones.
+     *
+     * @return the frame index that was stored for key, or -1
+     */
+    int remove(long key) {
+        int i = home(key);
+        while (true) {
+            int f = frames.get(i);
+            if (f == EMPTY)
+                return EMPTY;
+            if (keys.get(i) == key)
+                break;
+            i = (i + 1) & mask;
+        }
+        int removed = frames.get(i);
+        size--;
+        while (true) {
+            int j = i;
+            int h;
+            do {
+                j = (j + 1) & mask;
+                if (frames.get(j) == EMPTY) {
+                    frames.set(i, EMPTY);
+                    return removed;
+                }
+                h = home(keys.get(j));
+                // the entry at j may stay unless its home is outside (i, j]
+            } while (i <= j ? (i < h && h <= j) : (i < h || h <= j));
+            keys.set(i, keys.get(j));
+            frames.set(i, frames.get(j));
+            i = j;
+        }
+    }
+
+    /** @return the number of entries */
+    int size() {
+        return size;
+    }
+}
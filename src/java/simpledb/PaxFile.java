@@ -0,0 +1,54 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxFile is a HeapFile whose pages store each field's values together,
+ * as {@link PaxPage}s, rather than tuple by tuple. Everything else works
+ * as it does for a HeapFile: slots, RecordIds, the free space map, bulk
+ * loads, locking, dictionaries and compression, so a PaxFile can be added
+ * to the Catalog and scanned by SeqScan in place of one. It pays off for
+ * wide tables that queries read a few fields of at a time; for tables
+ * read whole it only costs the rearranging of pages as they are written.
+ * <p>
+ * {@link HeapFileEncoder#transpose} rewrites a heap file as a PaxFile; a
+ * schema file loaded by {@link Catalog#loadSchema} marks a table stored
+ * this way with the table annotation "pax".
+ */
+public class PaxFile extends HeapFile {
+
+    /**
+     * Constructs a PAX file backed by the specified file.
+     *
+     * @see HeapFile#HeapFile(File, TupleDesc)
+     */
+    public PaxFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    /**
+     * Constructs a PAX file backed by the specified file.
+     *
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+     */
+    public PaxFile(File f, TupleDesc td, boolean mapped) {
+        super(f, td, mapped);
+    }
+
+    HeapPage newPage(HeapPageId pid, byte[] data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    HeapPage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    /** Lays out the pages of a bulk load, filled by rows, by columns. */
+    int appendPages(byte[] data, int numPages) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        for (int i = 0; i < numPages; i++)
+            PaxPage.transpose(getTupleDesc(), data, i * pageSize, pageSize);
+        return super.appendPages(data, numPages);
+    }
+}
@@ -0,0 +1,170 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxPage is a page of a {@link PaxFile}: the same slots, header and
+ * tuples as a {@link HeapPage}, laid out column by column instead of row
+ * by row (PAX, "partition attributes across"). After the header come the
+ * values of field 0 for every slot, then those of field 1, and so on, so
+ * field j of slot i is at
+ * <p>
+ *     headerSize + numSlots * td.getFieldOffset(j) + i * td.getFieldSize(j)
+ * <p>
+ * A scan that reads a few fields of each tuple, through
+ * {@link HeapPage#getField} or a {@link TupleCursor}, touches only those
+ * columns' bytes, which are contiguous, rather than a slice of every row.
+ * Empty slots are zero in every column, as they are in a HeapPage.
+ */
+public class PaxPage extends HeapPage {
+
+    /** Offset in data of the first value of each field's column. */
+    private final int[] columns;
+    /** Bytes of each field's values. */
+    private final int[] widths;
+
+    /**
+     * Create a PaxPage from a page of data read from disk.
+     *
+     * @see HeapPage#HeapPage(HeapPageId, byte[])
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, data);
+        this.columns = columnOffsets(td, headerSize, numSlots);
+        this.widths = fieldSizes(td);
+    }
+
+    /** @see HeapPage#HeapPage(HeapPageId, ByteBuffer) */
+    PaxPage(HeapPageId id, ByteBuffer data) throws IOException {
+        super(id, data);
+        this.columns = columnOffsets(td, headerSize, numSlots);
+        this.widths = fieldSizes(td);
+    }
+
+    /** @see HeapPage#HeapPage(HeapPage) */
+    private PaxPage(PaxPage other) {
+        super(other);
+        this.columns = other.columns;
+        this.widths = other.widths;
+    }
+
+    /** @return where each field's column starts on a page of numSlots slots */
+    private static int[] columnOffsets(TupleDesc td, int headerSize, int numSlots) {
+        int[] cols = new int[td.numFields()];
+        for (int j = 0; j < cols.length; j++)
+            cols[j] = headerSize + numSlots * td.getFieldOffset(j);
+        return cols;
+    }
+
+    private static int[] fieldSizes(TupleDesc td) {
+        int[] sizes = new int[td.numFields()];
+        for (int j = 0; j < sizes.length; j++)
+            sizes[j] = td.getFieldSize(j);
+        return sizes;
+    }
+
+    PaxPage fork() {
+        return new PaxPage(this);
+    }
+
+    HeapPage pageOf(byte[] data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    int fieldOffset(int i, int j) {
+        return columns[j] + i * widths[j];
+    }
+
+    /**
+     * Copies field j, an INT_TYPE, of every slot into dst, with 0 for the
+     * empty slots. The stored values are read in one bulk copy of the
+     * column, and only tuples changed since the page was read are looked
+     * at one by one.
+     *
+     * @return the number of slots, and of values copied
+     * @throws IllegalArgumentException if field j is not an INT_TYPE
+     */
+    public int getInts(int j, int[] dst) {
+        if (td.getFieldType(j) != Type.INT_TYPE)
+            throw new IllegalArgumentException("field " + j + " is not an int");
+        while (true) {
+            ByteBuffer d = data;
+            ByteBuffer col = d.duplicate();
+            col.position(columns[j]);
+            col.asIntBuffer().get(dst, 0, numSlots);
+            if (d == data)
+                break;
+        }
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                dst[i] = 0;
+                continue;
+            }
+            Tuple t = tuples.get(i);
+            if (t != null)
+                dst[i] = ((IntField) t.getField(j)).getValue();
+        }
+        return numSlots;
+    }
+
+    /**
+     * Generates the bytes of this page, one column after another.
+     *
+     * @see HeapPage#getPageData
+     */
+    byte[] pageData(ByteBuffer raw) {
+        byte[] page = new byte[BufferPool.getPageSize()];
+        for (int b = 0; b < headerSize; b++)
+            page[b] = (byte) (slots[b >> 3] >>> ((b & 7) * 8));
+
+        raw = raw.duplicate();
+        for (int j = 0; j < td.numFields(); j++) {
+            int len = widths[j];
+            ByteArrayOutputStream column = new ByteArrayOutputStream(numSlots * len);
+            DataOutputStream dos = new DataOutputStream(column);
+            byte[] value = new byte[len];
+            byte[] empty = new byte[len];
+            try {
+                for (int i = 0; i < numSlots; i++) {
+                    Tuple t = tuples.get(i);
+                    if (!isSlotUsed(i)) {
+                        dos.write(empty);
+                    } else if (t == null) {
+                        // never decoded: copy its bytes
+                        raw.position(fieldOffset(i, j));
+                        raw.get(value);
+                        dos.write(value);
+                    } else {
+                        writeField(td, dict, j, t.getField(j), dos);
+                    }
+                }
+            } catch (IOException e) {
+                // this really shouldn't happen
+                e.printStackTrace();
+            }
+            System.arraycopy(column.toByteArray(), 0, page, columns[j], numSlots * len);
+        }
+        return page;
+    }
+
+    /**
+     * Rearranges the page of pageSize bytes at off in buf, laid out by rows
+     * as a HeapPage of tuples of td, into the layout of a PaxPage.
+     */
+    static void transpose(TupleDesc td, byte[] buf, int off, int pageSize) {
+        int size = td.getSize();
+        int numSlots = (pageSize * 8) / (size * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        byte[] rows = new byte[numSlots * size];
+        System.arraycopy(buf, off + headerSize, rows, 0, rows.length);
+        int[] cols = columnOffsets(td, headerSize, numSlots);
+        for (int j = 0; j < cols.length; j++) {
+            int len = td.getFieldSize(j);
+            int from = td.getFieldOffset(j);
+            int to = off + cols[j];
+            for (int i = 0; i < numSlots; i++, from += size, to += len)
+                System.arraycopy(rows, from, buf, to, len);
+        }
+    }
+}
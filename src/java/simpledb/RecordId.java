@@ -20,8 +20,8 @@ public class RecordId implements Serializable {
      *            the tuple number within the page.
      */
     
-    private PageId pageId;
-    private int tupleNum;
+    private final PageId pageId;
+    private final int tupleNum;
     
     public RecordId(PageId pid, int tupleno) {
         this.pageId = pid;
@@ -50,9 +50,10 @@ public class RecordId implements Serializable {
      */
     @Override
     public boolean equals(Object o) {
+        if (!(o instanceof RecordId))
+            return false;
         RecordId oRecord = (RecordId) o;
-        return (this.pageId.equals(oRecord.pageId) && this.tupleNum == oRecord.tupleno());
-        
+        return (this.tupleNum == oRecord.tupleno() && this.pageId.equals(oRecord.pageId));
     }
 
     /**
@@ -63,9 +64,10 @@ public class RecordId implements Serializable {
      */
     @Override
     public int hashCode() {
-    	
-    	int lengthOfTupleNm = (int) Math.floor(Math.log10(this.tupleNum) + 1);
-        return (int) (this.pageId.hashCode() * Math.pow(10, lengthOfTupleNm) + this.tupleNum);
+        // the page's hash is already mixed; fold the tuple number in and
+        // spread it over the low bits as well
+        int h = this.pageId.hashCode() * 0x9e3779b9 + this.tupleNum;
+        return h ^ (h >>> 16);
     }
 
 }
@@ -0,0 +1,38 @@
+package simpledb;
+
+import java.util.LinkedList;
+
+/**
+ * ScanRing is a small, private set of buffer pool frames used by one
+ * sequential scan. Pages a scan reads go into its ring rather than to the
+ * pool's eviction policy. While the pool has free frames the ring simply
+ * grows; once the pool is full, a scan whose ring has reached its capacity
+ * reuses the ring's oldest frame, so a single large scan cannot push the
+ * working set of other queries out of the pool. A page from the ring that
+ * some other caller asks for is promoted into the main pool.
+ * <p>
+ * Rings are created with {@link BufferPool#newScanRing} and are only
+ * touched by the BufferPool, under its lock.
+ *
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, ScanRing)
+ */
+public class ScanRing {
+
+    private final int capacity;
+
+    /** Pages owned by this ring, oldest first. */
+    final LinkedList<PageId> pages = new LinkedList<PageId>();
+
+    ScanRing(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** @return the number of frames this ring keeps before it recycles. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    boolean isFull() {
+        return pages.size() >= capacity;
+    }
+}
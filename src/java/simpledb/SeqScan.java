@@ -17,6 +17,8 @@ public class SeqScan implements DbIterator {
     private transient DbFileIterator it;
     private String tablename;
     private String alias;
+    private boolean reuseTuples = false;
+    private Predicate predicate;
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -40,6 +42,43 @@ public class SeqScan implements DbIterator {
         reset(tableid,tableAlias);
     }
 
+    /**
+     * Creates a sequential scan that, if reuseTuples is set and the table is
+     * a HeapFile, returns every row through one {@link TupleCursor} (see
+     * {@link HeapFile#cursorIterator}). Operators above such a scan must
+     * {@link Tuple#retain} any tuple they keep past the next call to next().
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias,
+            boolean reuseTuples) {
+        this.tid = tid;
+        this.reuseTuples = reuseTuples;
+        reset(tableid,tableAlias);
+    }
+
+    /**
+     * Creates a sequential scan that returns only the tuples that satisfy
+     * predicate, a predicate on the table's own fields. If the table is a
+     * HeapFile with zone maps or Bloom filters, the pages they rule out are
+     * never read; see {@link #getPagesSkipped}.
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias,
+            boolean reuseTuples, Predicate predicate) {
+        this.tid = tid;
+        this.reuseTuples = reuseTuples;
+        this.predicate = predicate;
+        reset(tableid,tableAlias);
+    }
+
+    /**
+     * @return the pages the scan has skipped since it was opened, or 0 if
+     *     it reads every page
+     */
+    public int getPagesSkipped() {
+        if (it instanceof HeapFileIterator)
+            return ((HeapFileIterator) it).getPagesSkipped();
+        return 0;
+    }
+
     /**
      * @return
      *       return the table name of the table the operator scans. This should
@@ -75,7 +114,13 @@ public class SeqScan implements DbIterator {
         this.isOpen=false;
         this.alias = tableAlias;
         this.tablename = Database.getCatalog().getTableName(tableid);
-        this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (file instanceof HeapFile && (reuseTuples || predicate != null))
+            this.it = ((HeapFile) file).iterator(tid, predicate, reuseTuples);
+        else if (predicate != null)
+            this.it = new FilteredIterator(file.iterator(tid), predicate);
+        else
+            this.it = file.iterator(tid);
         myTd = Database.getCatalog().getTupleDesc(tableid);
         String[] newNames = new String[myTd.numFields()];
         Type[] newTypes = new Type[myTd.numFields()];
@@ -86,7 +131,8 @@ public class SeqScan implements DbIterator {
             newNames[i] = tableAlias + "." + name;
             newTypes[i] = t;
         }
-        myTd = new TupleDesc(newTypes, newNames);
+        myTd = new TupleDesc(newTypes, newNames, myTd.getStringLens(),
+                             myTd.getDictionaryEncoded());
     }
 
     public SeqScan(TransactionId tid, int tableid) {
@@ -146,4 +192,48 @@ public class SeqScan implements DbIterator {
         close();
         open();
     }
+
+    /** Returns the tuples of another iterator that satisfy a predicate. */
+    private static class FilteredIterator implements DbFileIterator {
+        private final DbFileIterator child;
+        private final Predicate predicate;
+        private Tuple next = null;
+
+        FilteredIterator(DbFileIterator child, Predicate predicate) {
+            this.child = child;
+            this.predicate = predicate;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (next == null && child.hasNext()) {
+                Tuple t = child.next();
+                if (predicate.filter(t))
+                    next = t;
+            }
+            return next != null;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException,
+                NoSuchElementException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Tuple t = next;
+            next = null;
+            return t;
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            next = null;
+            child.rewind();
+        }
+
+        public void close() {
+            next = null;
+            child.close();
+        }
+    }
 }
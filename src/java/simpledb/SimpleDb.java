@@ -1,5 +1,6 @@
 package simpledb;
 import java.io.*;
+import java.util.Arrays;
 
 public class SimpleDb {
     public static void main (String args[])
@@ -15,6 +16,8 @@ public class SimpleDb {
             File targetDatFile=new File(args[1].replaceAll(".txt", ".dat"));
             int numOfAttributes=Integer.parseInt(args[2]);
             Type[] ts = new Type[numOfAttributes];
+            int[] lens = new int[numOfAttributes];
+            Arrays.fill(lens, Type.STRING_LEN);
             char fieldSeparator=',';
 
             if (args.length == 3) 
@@ -30,6 +33,11 @@ public class SimpleDb {
                 }
                 int index=0;
                 for (String s: typeStringAr) {
+                        //strings may declare their maximum length, e.g. "string(16)"
+                        if (s.toLowerCase().startsWith("string(") && s.endsWith(")")) {
+                            lens[index] = Integer.parseInt(s.substring(7, s.length() - 1));
+                            s = "string";
+                        }
                         if (s.toLowerCase().equals("int"))
                             ts[index++]=Type.INT_TYPE;
                         else if (s.toLowerCase().equals("string"))
@@ -44,7 +52,8 @@ public class SimpleDb {
             }
 
             HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
-                        BufferPool.getPageSize(),numOfAttributes,ts,fieldSeparator);
+                        BufferPool.getPageSize(),new TupleDesc(ts,new String[numOfAttributes],lens),
+                        fieldSeparator);
 
         } catch (IOException e) {
                 throw new RuntimeException(e);
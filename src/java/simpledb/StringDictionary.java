@@ -0,0 +1,196 @@
+package simpledb;
+
+import java.io.*;
+import java.util.HashMap;
+
+/**
+ * StringDictionary maps the values of a HeapFile's dictionary encoded
+ * STRING_TYPE columns to small integer codes, which the file's pages store
+ * in place of the strings (see {@link TupleDesc#isDictionaryEncoded}).
+ * <p>
+ * Each column has its own codes, handed out from 0 in the order values
+ * are first stored. A code is never reused or taken back, even if the
+ * transaction that stored its value aborts, so a page always decodes to
+ * the values it was written with. Every value has one shared StringField,
+ * which decoding returns instead of building a new one per row; two fields
+ * of the same column compare equal by their codes.
+ * <p>
+ * The entries live in a side file next to the table, named after it with
+ * a ".dict" suffix, as records of a column index, a length and that many
+ * bytes. A new entry is written through as soon as it is made, and
+ * {@link #force} makes them durable before a page that uses them is
+ * written. A record cut short by a crash is ignored when the file is
+ * loaded; no page can refer to it.
+ */
+class StringDictionary {
+
+    /** Suffix of the side file, added to the table file's name. */
+    static final String SUFFIX = ".dict";
+
+    /** The values of one column. */
+    static final class Column {
+        final int stringLen;
+        /**
+         * The shared field of each code; written under the dictionary's
+         * monitor and republished by a volatile write after each new entry,
+         * so readers need no lock.
+         */
+        private volatile StringField[] values = new StringField[16];
+        private int count;
+        private final HashMap<String, StringField> byValue =
+            new HashMap<String, StringField>();
+
+        Column(int stringLen) {
+            this.stringLen = stringLen;
+        }
+
+        /** Adds value as the next code. Caller holds the dictionary's monitor. */
+        private StringField add(String value) {
+            StringField[] vs = values;
+            if (count == vs.length) {
+                StringField[] grown = new StringField[vs.length * 2];
+                System.arraycopy(vs, 0, grown, 0, count);
+                vs = grown;
+            }
+            StringField f = new StringField(value, stringLen, this, count);
+            vs[count++] = f;
+            byValue.put(value, f);
+            values = vs; // publishes the new entry
+            return f;
+        }
+    }
+
+    private final File file;
+    /** The column of each dictionary encoded field, null for the others. */
+    private final Column[] columns;
+    /** Open on the side file once the first entry is written. */
+    private RandomAccessFile out;
+    /** Whether entries have been written since the last force. */
+    private boolean unforced;
+
+    /**
+     * Loads the dictionary of the table stored in tableFile, whose tuples
+     * are described by td.
+     */
+    StringDictionary(File tableFile, TupleDesc td) throws IOException {
+        this.file = new File(tableFile.getPath() + SUFFIX);
+        columns = new Column[td.numFields()];
+        for (int i = 0; i < columns.length; i++) {
+            if (td.isDictionaryEncoded(i))
+                columns[i] = new Column(td.getStringLen(i));
+        }
+        if (!file.exists())
+            return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            while (true) {
+                int column, len;
+                byte[] bs;
+                try {
+                    column = in.readInt();
+                    len = in.readInt();
+                    bs = new byte[len];
+                    in.readFully(bs);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (column < 0 || column >= columns.length || columns[column] == null)
+                    throw new IOException(file + " has an entry for column " + column
+                            + ", which is not dictionary encoded");
+                columns[column].add(new String(bs));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /** @return the File the dictionary is kept in */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the shared field of code in column i
+     * @throws IllegalArgumentException if the column has no such code
+     */
+    StringField decode(int i, int code) {
+        StringField[] vs = columns[i].values;
+        StringField f = code >= 0 && code < vs.length ? vs[code] : null;
+        if (f == null)
+            throw new IllegalArgumentException("no code " + code + " in column " + i
+                    + " of " + file);
+        return f;
+    }
+
+    /**
+     * @return the code of f's value, cut to the column's length, in column
+     *     i, giving it the next code if it has none yet
+     * @throws IOException if a new entry can't be written
+     */
+    int encode(int i, Field f) throws IOException {
+        Column c = columns[i];
+        StringField s = (StringField) f;
+        if (s.column == c)
+            return s.code;
+        return encode(i, s.getValue());
+    }
+
+    /** @see #encode(int, Field) */
+    synchronized int encode(int i, String value) throws IOException {
+        Column c = columns[i];
+        if (value.length() > c.stringLen)
+            value = value.substring(0, c.stringLen);
+        StringField f = c.byValue.get(value);
+        if (f != null)
+            return f.code;
+        if (out == null) {
+            out = new RandomAccessFile(file, "rw");
+            out.seek(out.length());
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream(8 + value.length());
+        DataOutputStream dos = new DataOutputStream(record);
+        dos.writeInt(i);
+        dos.writeInt(value.length());
+        dos.writeBytes(value);
+        out.write(record.toByteArray());
+        unforced = true;
+        return c.add(value).code;
+    }
+
+    /**
+     * @return the shared field for value in column i, or null if no tuple
+     *     has stored it
+     */
+    synchronized StringField lookup(int i, String value) {
+        Column c = columns[i];
+        if (value.length() > c.stringLen)
+            value = value.substring(0, c.stringLen);
+        return c.byValue.get(value);
+    }
+
+    /** @return the number of codes column i has handed out */
+    synchronized int size(int i) {
+        return columns[i].count;
+    }
+
+    /** Makes the entries written so far durable. */
+    synchronized void force() throws IOException {
+        if (unforced && out != null) {
+            out.getFD().sync();
+            unforced = false;
+        }
+    }
+
+    /** Closes the side file; the next new entry reopens it. */
+    synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // Ignore failures closing the file
+            }
+            out = null;
+        }
+    }
+}
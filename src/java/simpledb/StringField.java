@@ -4,6 +4,10 @@ import java.io.*;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
+ * <p>
+ * Fields read from a dictionary encoded column are shared, one per value,
+ * and know their code; two of them from the same column are compared by
+ * code rather than character by character.
  */
 public class StringField implements Field {
 
@@ -12,6 +16,11 @@ public class StringField implements Field {
 	private final String value;
 	private final int maxSize;
 
+	/** The dictionary column this field was interned in, or null. */
+	final transient StringDictionary.Column column;
+	/** The field's code in column. */
+	final transient int code;
+
 	public String getValue() {
 		return value;
 	}
@@ -25,7 +34,16 @@ public class StringField implements Field {
 	 *            The maximum size of this string
 	 */
 	public StringField(String s, int maxSize) {
+		this(s, maxSize, null, -1);
+	}
+
+	/**
+	 * Constructor for the shared field of code in a dictionary column.
+	 */
+	StringField(String s, int maxSize, StringDictionary.Column column, int code) {
 		this.maxSize = maxSize;
+		this.column = column;
+		this.code = code;
 
 		if (s.length() > maxSize)
 			value = s.substring(0, maxSize);
@@ -42,7 +60,10 @@ public class StringField implements Field {
 	}
 
 	public boolean equals(Object field) {
-		return ((StringField) field).value.equals(value);
+		StringField other = (StringField) field;
+		if (column != null && column == other.column)
+			return code == other.code;
+		return other.value.equals(value);
 	}
 
 	/**
@@ -54,6 +75,15 @@ public class StringField implements Field {
 	 *            Where the string is written
 	 */
 	public void serialize(DataOutputStream dos) throws IOException {
+		serialize(dos, maxSize);
+	}
+
+	/**
+	 * Write this string to dos as serialize(DataOutputStream) does, but in a
+	 * column that holds strings of up to maxSize bytes: always writes
+	 * maxSize + 4 bytes, cutting the string short if it is longer.
+	 */
+	public void serialize(DataOutputStream dos, int maxSize) throws IOException {
 		String s = value;
 		int overflow = maxSize - s.length();
 		if (overflow < 0) {
@@ -77,6 +107,13 @@ public class StringField implements Field {
 	public boolean compare(Predicate.Op op, Field val) {
 
 		StringField iVal = (StringField) val;
+		if (column != null && column == iVal.column) {
+			// one field per value, so equal codes are equal strings
+			if (op == Predicate.Op.EQUALS)
+				return code == iVal.code;
+			if (op == Predicate.Op.NOT_EQUALS)
+				return code != iVal.code;
+		}
 		int cmpVal = value.compareTo(iVal.value);
 
 		switch (op) {
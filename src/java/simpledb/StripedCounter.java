@@ -0,0 +1,51 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A statistics counter that spreads increments over several cache-line
+ * padded cells, picked by thread, so that threads on different cores don't
+ * contend on one memory location. Reads sum the cells and are not atomic
+ * with respect to concurrent increments.
+ */
+class StripedCounter {
+
+    /** Longs per cell, so each cell sits on its own 128-byte line. */
+    private static final int PAD = 16;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StripedCounter() {
+        int stripes = Integer.highestOneBit(
+                Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) * 2;
+        cells = new AtomicLongArray(stripes * PAD);
+        mask = stripes - 1;
+    }
+
+    /** @return the stripe the calling thread should use, in [0, stripes) */
+    static int stripe(int mask) {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) * 0x9E3779B9 >>> 16 & mask;
+    }
+
+    void increment() {
+        cells.incrementAndGet(stripe(mask) * PAD);
+    }
+
+    void add(long delta) {
+        cells.addAndGet(stripe(mask) * PAD, delta);
+    }
+
+    long get() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PAD)
+            sum += cells.get(i);
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < cells.length(); i += PAD)
+            cells.set(i, 0);
+    }
+}
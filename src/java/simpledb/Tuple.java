@@ -125,6 +125,18 @@ public class Tuple implements Serializable {
     	return iter;
     }
     
+    /**
+     * Returns a Tuple with this one's contents that stays valid after the
+     * iterator that produced this one moves on. Callers that hold on to a
+     * tuple beyond the next call to next() must keep the result of this
+     * method rather than the tuple itself, since some iterators reuse a
+     * single {@link TupleCursor} for every row. An ordinary Tuple returns
+     * itself.
+     */
+    public Tuple retain() {
+        return this;
+    }
+
     /**
      * Reset the TupleDesc of this tuple
      * Does not need to worry about the fields inside the Tuple
@@ -0,0 +1,130 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * TupleCursor is a read-only Tuple that views one slot of a HeapPage at a
+ * time. Field values are read straight out of the page's bytes when asked
+ * for; {@link #getInt} and {@link #getStringValue} don't allocate a Field at
+ * all. A scan moves a single cursor from slot to slot, so it builds no
+ * per-row objects.
+ * <p>
+ * Because the cursor changes under its holder as the scan advances, anyone
+ * who keeps a tuple past the next call to next() -- an operator that
+ * buffers rows, say -- must keep the result of {@link Tuple#retain}
+ * instead, which for a cursor is the decoded Tuple of the current slot.
+ * Calling hasNext() on the scan doesn't move the cursor.
+ * <p>
+ * Cursors are created by {@link HeapFile#cursorIterator} and
+ * {@link HeapPage#iterator(TupleCursor)}.
+ */
+public class TupleCursor extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient HeapPage page;
+    private int slot = -1;
+
+    public TupleCursor(TupleDesc td) {
+        super(td);
+    }
+
+    /** Points this cursor at slot of page, which must be in use. */
+    void moveTo(HeapPage page, int slot) {
+        this.page = page;
+        this.slot = slot;
+    }
+
+    /** Points this cursor at the slot other is on. */
+    void moveTo(TupleCursor other) {
+        moveTo(other.page, other.slot);
+    }
+
+    /** @return the slot of the current page this cursor is on */
+    public int getSlot() {
+        return slot;
+    }
+
+    /** @return the offset in the page data of field i of the current slot */
+    private int offset(int i) {
+        return page.fieldOffset(slot, i);
+    }
+
+    /**
+     * @return the value of the ith field, which must be an INT_TYPE
+     */
+    public int getInt(int i) {
+        Tuple t = page.tuples.get(slot);
+        if (t != null)
+            return ((IntField) t.getField(i)).getValue();
+        return page.readInt(offset(i));
+    }
+
+    /**
+     * @return the value of the ith field, which must be a STRING_TYPE
+     */
+    public String getStringValue(int i) {
+        Tuple t = page.tuples.get(slot);
+        if (t != null)
+            return ((StringField) t.getField(i)).getValue();
+        if (page.td.isDictionaryEncoded(i))
+            return ((StringField) page.parseField(i, offset(i))).getValue();
+        return page.readString(i, offset(i));
+    }
+
+    /**
+     * @return the ith field of the current slot, decoded on each call
+     */
+    public Field getField(int i) {
+        Tuple t = page.tuples.get(slot);
+        if (t != null)
+            return t.getField(i);
+        return page.parseField(i, offset(i));
+    }
+
+    public RecordId getRecordId() {
+        return new RecordId(page.getId(), slot);
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; retain() the cursor
+     *     to get a Tuple that can be changed
+     */
+    public void setField(int i, Field f) {
+        throw new UnsupportedOperationException("TupleCursor is read-only");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    public void setRecordId(RecordId rid) {
+        throw new UnsupportedOperationException("TupleCursor is read-only");
+    }
+
+    /**
+     * @return the decoded Tuple in the cursor's current slot, which stays
+     *     the same when the cursor moves on
+     */
+    public Tuple retain() {
+        return page.getTuple(slot);
+    }
+
+    public Iterator<Field> fields() {
+        return new Iterator<Field>() {
+
+            private int currentIndex = 0;
+
+            public boolean hasNext() {
+                return currentIndex < getTupleDesc().numFields();
+            }
+
+            public Field next() {
+                return getField(currentIndex++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -8,10 +8,25 @@ import java.util.*;
 
 /**
  * TupleDesc describes the schema of a tuple.
+ * <p>
+ * Each STRING_TYPE field has a declared maximum length, Type.STRING_LEN
+ * unless the TupleDesc is built with others, and takes that many bytes plus
+ * four in a tuple; a table of short strings can declare them short and fit
+ * many more tuples on a page. Files written before lengths could be
+ * declared use the default and read as before.
+ * <p>
+ * A STRING_TYPE field may also be dictionary encoded: a tuple then stores a
+ * four-byte code for its value, which the table's {@link StringDictionary}
+ * maps back to the string. Encoding changes the size and offsets of a
+ * TupleDesc, so it is part of what the TupleDesc equals; {@link #sameFields}
+ * compares only the values the fields hold, as a tuple's fit for a table
+ * does.
+ * <p>
+ * A TupleDesc is immutable. Its size, the byte offset of each field within
+ * a tuple, the map from field names to indexes and its hash code are all
+ * computed once, by the constructor.
  */
 public class TupleDesc implements Serializable {
-	
-	int STRING_LENGTH = 10;
 
 
     /**
@@ -31,13 +46,43 @@ public class TupleDesc implements Serializable {
          * */
         public final String fieldName;
 
+        /**
+         * The most bytes a STRING_TYPE field holds
+         * */
+        public final int stringLen;
+
+        /**
+         * Whether a STRING_TYPE field is stored as a dictionary code
+         * */
+        public final boolean dictionary;
+
         public TDItem(Type t, String n) {
+            this(t, n, Type.STRING_LEN);
+        }
+
+        public TDItem(Type t, String n, int stringLen) {
+            this(t, n, stringLen, false);
+        }
+
+        public TDItem(Type t, String n, int stringLen, boolean dictionary) {
             this.fieldName = n;
             this.fieldType = t;
+            this.stringLen = stringLen;
+            this.dictionary = dictionary;
+        }
+
+        /** @return the bytes a field takes in a tuple */
+        int getLen() {
+            return dictionary ? Type.INT_TYPE.getLen() : fieldType.getLen(stringLen);
         }
 
         public String toString() {
-            return fieldName + "(" + fieldType + ")";
+            String type = fieldType.toString();
+            if (fieldType == Type.STRING_TYPE && stringLen != Type.STRING_LEN)
+                type += "(" + stringLen + ")";
+            if (dictionary)
+                type += " dict";
+            return fieldName + "(" + type + ")";
         }
     }
     
@@ -73,7 +118,21 @@ public class TupleDesc implements Serializable {
      * Array of TDItems
      * */
     
-    private TDItem[] fields;
+    private final TDItem[] fields;
+
+    /** Bytes in a tuple of this schema. */
+    private final int size;
+
+    /** Byte offset of each field from the start of a tuple. */
+    private final int[] offsets;
+
+    /** Index of the first field with each name; unnamed fields are absent. */
+    private final HashMap<String, Integer> nameToIndex;
+
+    private final int hash;
+
+    /** Whether any field is dictionary encoded. */
+    private final boolean hasDictionary;
     
     /**
      * Create a new TupleDesc with typeAr.length fields with fields of the
@@ -87,13 +146,73 @@ public class TupleDesc implements Serializable {
      *            be null.
      */
     public TupleDesc(Type[] typeAr, String[] fieldAr) {
+    	this(typeAr, fieldAr, null);
+    }
+
+    /**
+     * Create a new TupleDesc as TupleDesc(Type[], String[]) does, with the
+     * given maximum length for each STRING_TYPE field.
+     *
+     * @param stringLens
+     *            array giving the maximum length in bytes of each field that
+     *            is a STRING_TYPE; entries for other fields are ignored. If
+     *            null, every string field has length Type.STRING_LEN.
+     * @throws IllegalArgumentException
+     *             if a string field's length is not positive
+     */
+    public TupleDesc(Type[] typeAr, String[] fieldAr, int[] stringLens) {
+    	this(typeAr, fieldAr, stringLens, null);
+    }
+
+    /**
+     * Create a new TupleDesc as TupleDesc(Type[], String[], int[]) does,
+     * with the STRING_TYPE fields for which dictionary is true dictionary
+     * encoded.
+     *
+     * @param dictionary
+     *            array saying which fields are stored as dictionary codes;
+     *            entries for fields other than STRING_TYPEs are ignored. If
+     *            null, no field is.
+     */
+    public TupleDesc(Type[] typeAr, String[] fieldAr, int[] stringLens,
+            boolean[] dictionary) {
       	// For each type in typeAR and each string in fieldAr
     	fields = new TDItem[typeAr.length];
     	
+    	boolean anyDictionary = false;
     	for (int i = 0; i < typeAr.length; i++) {
-    		fields[i] = new TDItem(typeAr[i], fieldAr[i]);
+    		int len = stringLens == null ? Type.STRING_LEN : stringLens[i];
+    		boolean dict = dictionary != null && dictionary[i];
+    		if (typeAr[i] != Type.STRING_TYPE) {
+    			len = Type.STRING_LEN;
+    			dict = false;
+    		} else if (len <= 0) {
+    			throw new IllegalArgumentException("string field " + i
+    					+ " has length " + len);
+    		}
+    		fields[i] = new TDItem(typeAr[i], fieldAr[i], len, dict);
+    		anyDictionary |= dict;
     	}
-    	
+    	hasDictionary = anyDictionary;
+
+    	offsets = new int[fields.length];
+    	nameToIndex = new HashMap<String, Integer>(fields.length * 2);
+    	int pos = 0;
+    	int h = 1;
+    	for (int i = 0; i < fields.length; i++) {
+    		offsets[i] = pos;
+    		pos += fields[i].getLen();
+    		h = 31 * h + fields[i].fieldType.ordinal();
+    		if (fields[i].stringLen != Type.STRING_LEN)
+    			h = 31 * h + fields[i].stringLen;
+    		if (fields[i].dictionary)
+    			h = 31 * h + 1;
+    		String name = fields[i].fieldName;
+    		if (name != null && !nameToIndex.containsKey(name))
+    			nameToIndex.put(name, i);
+    	}
+    	size = pos;
+    	hash = h;
     }
 
     /**
@@ -107,12 +226,7 @@ public class TupleDesc implements Serializable {
     
     
     public TupleDesc(Type[] typeAr) {
-    	// Creates an array of TDItems of the appropriate length and fills it
-    	fields = new TDItem[typeAr.length];
-    	
-    	for (int i = 0; i < typeAr.length; i++) {
-    		fields[i] = new TDItem(typeAr[i], null);
-    	}
+    	this(typeAr, new String[typeAr.length]);
     }
 
     /**
@@ -153,6 +267,53 @@ public class TupleDesc implements Serializable {
         return fields[i].fieldType;
     }
 
+    /**
+     * @param i
+     *            the index of a field. It must be a valid index.
+     * @return the most bytes the ith field holds if it is a STRING_TYPE,
+     *         and Type.STRING_LEN otherwise
+     */
+    public int getStringLen(int i) {
+        return fields[i].stringLen;
+    }
+
+    /**
+     * @param i
+     *            the index of a field. It must be a valid index.
+     * @return true if the ith field is a STRING_TYPE stored as a dictionary
+     *         code
+     */
+    public boolean isDictionaryEncoded(int i) {
+        return fields[i].dictionary;
+    }
+
+    /** @return true if any field is dictionary encoded */
+    public boolean hasDictionary() {
+        return hasDictionary;
+    }
+
+    /**
+     * @return which fields are dictionary encoded, as the TupleDesc(Type[],
+     *         String[], int[], boolean[]) constructor takes them
+     */
+    public boolean[] getDictionaryEncoded() {
+        boolean[] dict = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            dict[i] = fields[i].dictionary;
+        return dict;
+    }
+
+    /**
+     * @return the maximum length of each field, as the TupleDesc(Type[],
+     *         String[], int[]) constructor takes them
+     */
+    public int[] getStringLens() {
+        int[] lens = new int[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            lens[i] = fields[i].stringLen;
+        return lens;
+    }
+
     /**
      * Find the index of the field with a given name.
      * 
@@ -163,23 +324,11 @@ public class TupleDesc implements Serializable {
      *             if no field with a matching name is found.
      */
     public int fieldNameToIndex(String name) throws NoSuchElementException {
-        if (name == null) {
+        Integer i = name == null ? null : nameToIndex.get(name);
+        if (i == null) {
         	throw new NoSuchElementException();
         }
-    	Iterator<TDItem> iter = this.iterator();
-    	int i = 0;
-    	while(iter.hasNext()){
-    		TDItem temp = iter.next();
-    		if(temp.fieldName == null) {
-    			throw new NoSuchElementException();
-    		}
-    		if(temp.fieldName.equals(name)){
-    			return i;
-    		}
-    		i++;
-    	}
-    	throw new NoSuchElementException();
-    	
+        return i;
     }
 
     /**
@@ -187,14 +336,29 @@ public class TupleDesc implements Serializable {
      *         Note that tuples from a given TupleDesc are of a fixed size.
      */
     public int getSize() {
-        int size = 0;
-        Iterator<TDItem> iter = this.iterator();
-        while (iter.hasNext()) {
-        	size += iter.next().fieldType.getLen();
-        }
         return size;
     }
 
+    /**
+     * @param i
+     *            the index of a field. It must be a valid index.
+     * @return the offset in bytes of the ith field from the start of a tuple
+     *         corresponding to this TupleDesc.
+     */
+    public int getFieldOffset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * @param i
+     *            the index of a field. It must be a valid index.
+     * @return the size in bytes of the ith field in a tuple corresponding
+     *         to this TupleDesc.
+     */
+    public int getFieldSize(int i) {
+        return fields[i].getLen();
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -210,6 +374,8 @@ public class TupleDesc implements Serializable {
     	int l = td1.numFields()+td2.numFields();
     	Type[] typeAr = new Type[l];
     	String[] stringAr = new String[l];
+    	int[] lenAr = new int[l];
+    	boolean[] dictAr = new boolean[l];
     	int count = 0;
     	Iterator<TDItem> iter1 = td1.iterator();
     	Iterator<TDItem> iter2 = td2.iterator();
@@ -218,22 +384,28 @@ public class TupleDesc implements Serializable {
     		TDItem tempItem = iter1.next();
     		typeAr[count] = tempItem.fieldType;
     		stringAr[count] = tempItem.fieldName;
+    		lenAr[count] = tempItem.stringLen;
+    		dictAr[count] = tempItem.dictionary;
     		count++;
     	}
     	while(iter2.hasNext()){
     		TDItem tempItem = iter2.next();
     		typeAr[count] = tempItem.fieldType;
     		stringAr[count] = tempItem.fieldName;
+    		lenAr[count] = tempItem.stringLen;
+    		dictAr[count] = tempItem.dictionary;
     		count++;
     	}
     	
-        return new TupleDesc(typeAr, stringAr);
+        return new TupleDesc(typeAr, stringAr, lenAr, dictAr);
     }
 
     /**
      * Compares the specified object with this TupleDesc for equality. Two
      * TupleDescs are considered equal if they are the same size and if the n-th
-     * type in this TupleDesc is equal to the n-th type in td.
+     * type in this TupleDesc is equal to the n-th type in td, with the same
+     * maximum length and encoding if it is a STRING_TYPE. Equal TupleDescs
+     * lay tuples out alike: the same size, offsets and slots per page.
      * 
      * @param o
      *            the Object to be compared for equality with this TupleDesc.
@@ -243,23 +415,51 @@ public class TupleDesc implements Serializable {
     	if (!(o instanceof TupleDesc) || o == null) {
     		return false;
     	}
-        if (this.numFields() != ((TupleDesc)o).numFields() || this.getSize() != ((TupleDesc)o).getSize()) {
+        TupleDesc other = (TupleDesc) o;
+        if (other == this) {
+        	return true;
+        }
+        if (this.hash != other.hash || !sameFields(other)) {
         	return false;
         }
-        Iterator<TDItem> iter1 = this.iterator();
-        Iterator<TDItem> iter2 = ((TupleDesc)o).iterator();
-        while(iter1.hasNext()) {
-        	if (!iter1.next().fieldType.equals(iter2.next().fieldType)) {
+        for (int i = 0; i < fields.length; i++) {
+        	if (fields[i].dictionary != other.fields[i].dictionary) {
         		return false;
         	}
         }
         return true;
     }
 
+    /**
+     * Compares the fields of td with these, ignoring how they are stored: a
+     * tuple of td can be stored in a table of this TupleDesc if they have
+     * the same number of fields, the n-th fields have the same type, and
+     * STRING_TYPE fields the same maximum length. Dictionary encoding does
+     * not matter, as it changes how a value is stored, not which it is.
+     *
+     * @return true if tuples of td hold the same values as tuples of this
+     */
+    public boolean sameFields(TupleDesc td) {
+        if (td == this)
+            return true;
+        if (td == null || this.numFields() != td.numFields())
+            return false;
+        for (int i = 0; i < fields.length; i++) {
+        	if (fields[i].fieldType != td.fields[i].fieldType
+        	        || fields[i].stringLen != td.fields[i].stringLen) {
+        		return false;
+        	}
+        }
+        return true;
+    }
+
+    /**
+     * @return a hash of the field types, string lengths and encodings,
+     *         consistent with equals; field names are ignored, as they are
+     *         by equals.
+     */
     public int hashCode() {
-        // If you want to use TupleDesc as keys for HashMap, implement this so
-        // that equal objects have equals hashCode() results
-        throw new UnsupportedOperationException("unimplemented");
+        return hash;
     }
 
     /**
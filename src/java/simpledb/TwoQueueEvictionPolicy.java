@@ -0,0 +1,83 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * 2Q replacement (Johnson and Shasha). Pages seen once enter a FIFO
+ * (A1in); when they are evicted from it their ids are remembered in a
+ * ghost FIFO (A1out). A page that is read again while remembered there has
+ * proven itself and goes to an LRU queue (Am). Pages that are touched only
+ * once, such as those of a large scan, therefore never push hot pages out
+ * of Am.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+
+    private final int maxIn;
+    private final int maxOut;
+
+    private final LinkedHashSet<PageId> a1in = new LinkedHashSet<PageId>();
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<PageId>();
+    private final LinkedHashMap<PageId, Boolean> am =
+        new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+    /**
+     * @param capacity the maximum number of resident pages; A1in is sized at
+     *        a quarter of it and A1out remembers half as many ids
+     */
+    public TwoQueueEvictionPolicy(int capacity) {
+        this.maxIn = Math.max(1, capacity / 4);
+        this.maxOut = Math.max(1, capacity / 2);
+    }
+
+    public void pageAdded(PageId pid) {
+        if (a1out.remove(pid)) {
+            am.put(pid, Boolean.TRUE);
+        } else {
+            a1in.add(pid);
+        }
+    }
+
+    public void pageAccessed(PageId pid) {
+        // hits in A1in are treated as correlated references and ignored
+        am.get(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        a1in.remove(pid);
+        am.remove(pid);
+    }
+
+    public PageId chooseVictim(Filter filter) {
+        boolean fromIn = a1in.size() > maxIn || am.isEmpty();
+        PageId victim = take(fromIn ? a1in.iterator() : am.keySet().iterator(), filter);
+        if (victim == null) {
+            fromIn = !fromIn;
+            victim = take(fromIn ? a1in.iterator() : am.keySet().iterator(), filter);
+        }
+        if (victim != null && fromIn)
+            remember(victim);
+        return victim;
+    }
+
+    private void remember(PageId pid) {
+        a1out.add(pid);
+        if (a1out.size() > maxOut) {
+            Iterator<PageId> it = a1out.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static PageId take(Iterator<PageId> it, Filter filter) {
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (filter.canEvict(pid)) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+}
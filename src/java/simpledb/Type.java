@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,22 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public int getLen(int stringLen) {
+            return 4;
+        }
+
+        @Override
+        public Field parse(ByteBuffer data, int offset, int stringLen) {
+            return new IntField(data.getInt(offset));
+        }
+
+        @Override
+        public void serialize(Field f, DataOutputStream dos, int stringLen)
+                throws IOException {
+            f.serialize(dos);
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +59,22 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public int getLen(int stringLen) {
+            return stringLen+4;
+        }
+
+        @Override
+        public Field parse(ByteBuffer data, int offset, int stringLen) {
+            return new StringField(readString(data, offset, stringLen), stringLen);
+        }
+
+        @Override
+        public void serialize(Field f, DataOutputStream dos, int stringLen)
+                throws IOException {
+            ((StringField) f).serialize(dos, stringLen);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -51,6 +84,13 @@ public enum Type implements Serializable {
    */
     public abstract int getLen();
 
+  /**
+   * @return the number of bytes required to store a field of this type in a
+   *   column declared to hold strings of up to stringLen bytes; stringLen is
+   *   ignored by types other than STRING_TYPE.
+   */
+    public abstract int getLen(int stringLen);
+
   /**
    * @return a Field object of the same type as this object that has contents
    *   read from the specified DataInputStream.
@@ -60,4 +100,50 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object whose contents
+   *   are the getLen() bytes of data starting at offset, in the format
+   *   parse(DataInputStream) reads. data may be a heap or a direct buffer;
+   *   its position and limit are ignored, and it must be big-endian.
+   */
+    public Field parse(ByteBuffer data, int offset) {
+        return parse(data, offset, STRING_LEN);
+    }
+
+  /**
+   * @return a Field read as by parse(ByteBuffer, int) from a column declared
+   *   to hold strings of up to stringLen bytes, which take getLen(stringLen)
+   *   bytes.
+   */
+    public abstract Field parse(ByteBuffer data, int offset, int stringLen);
+
+  /**
+   * Writes f, which must be of this type, to dos in getLen(stringLen) bytes,
+   * in the format parse(ByteBuffer, int, int) reads.
+   */
+    public abstract void serialize(Field f, DataOutputStream dos, int stringLen)
+        throws IOException;
+
+    /**
+     * Reads the value of a STRING_TYPE field of a column of the default
+     * width stored at offset.
+     */
+    static String readString(ByteBuffer data, int offset) {
+        return readString(data, offset, STRING_LEN);
+    }
+
+    /**
+     * Reads the value of a STRING_TYPE field stored at offset: a big-endian
+     * length (clamped to 0..stringLen) followed by that many bytes.
+     */
+    static String readString(ByteBuffer data, int offset, int stringLen) {
+        int len = Math.max(0, Math.min(stringLen, data.getInt(offset)));
+        if (data.hasArray())
+            return new String(data.array(), data.arrayOffset() + offset + 4, len);
+        byte[] bs = new byte[len];
+        for (int i = 0; i < len; i++)
+            bs[i] = data.get(offset + 4 + i);
+        return new String(bs);
+    }
+
 }
@@ -0,0 +1,250 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * ZoneMap keeps the smallest and largest value of each INT_TYPE field on
+ * each page of a HeapFile, so a scan with a {@link Predicate} on such a
+ * field can skip the pages whose range it can't match (see
+ * {@link #mightMatch}). On a table loaded in the order of a field, a
+ * timestamp say, a range on that field touches only the pages that hold
+ * it. SimpleDb fields are never null, so there are no null counts to keep.
+ * <p>
+ * An entry is a range that every value on the page falls in; it may be
+ * wider than the values, never narrower. Committing a page records its
+ * exact ranges; flushing changes not yet committed keeps the ranges of the
+ * committed version as well, as a rollback may bring it back. An insert
+ * widens its page's ranges in memory at once, so its own transaction finds
+ * the tuple before the page is written. Deletes leave the ranges as they
+ * were until then, and a page that has no entry counts as holding any
+ * value. The ranges describe only the latest version of a page, so a
+ * snapshot transaction, which may read older ones, doesn't prune.
+ * <p>
+ * The entries live in a side file next to the table, named after it with
+ * a ".zone" suffix, two ints per INT_TYPE field per page. A table has zone
+ * maps if it has the side file, which {@link HeapFileEncoder} writes when
+ * it loads one; HeapFile keeps it up to date from then on, writing a
+ * page's entry through just before the page.
+ */
+class ZoneMap {
+
+    /** Suffix of the side file, added to the table file's name. */
+    static final String SUFFIX = ".zone";
+
+    private final File file;
+    /** The INT_TYPE fields, in order: the columns of the map. */
+    private final int[] fields;
+    /** The column of each field, or -1 if the map doesn't cover it. */
+    private final int[] columnOf;
+    /** The range of column c on page p is at p * fields.length + c. */
+    private int[] mins, maxs;
+    /** Pages that have an entry. */
+    private int numPages;
+    /** Pages whose entries are in the side file. */
+    private int written;
+    /** Open on the side file once the first entry is written. */
+    private RandomAccessFile out;
+
+    /** @return the side file of the table stored in tableFile */
+    static File fileFor(File tableFile) {
+        return new File(tableFile.getPath() + SUFFIX);
+    }
+
+    /** @return true if td has a field a zone map covers */
+    static boolean covers(TupleDesc td) {
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Loads the zone map of the table stored in tableFile, whose tuples are
+     * described by td; it is empty if the table has no side file.
+     */
+    ZoneMap(File tableFile, TupleDesc td) throws IOException {
+        this.file = fileFor(tableFile);
+        columnOf = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < columnOf.length; i++)
+            columnOf[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        fields = new int[n];
+        for (int i = 0; i < columnOf.length; i++) {
+            if (columnOf[i] >= 0)
+                fields[columnOf[i]] = i;
+        }
+        int known = file.exists() && n > 0 ? (int) (file.length() / entryBytes()) : 0;
+        mins = new int[Math.max(known, 16) * n];
+        maxs = new int[mins.length];
+        if (known == 0)
+            return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            for (int i = 0; i < known * n; i++) {
+                mins[i] = in.readInt();
+                maxs[i] = in.readInt();
+            }
+        } finally {
+            in.close();
+        }
+        numPages = written = known;
+    }
+
+    /** @return the bytes of one page's entry */
+    private int entryBytes() {
+        return fields.length * 8;
+    }
+
+    /**
+     * Makes sure page pgNo has an entry; pages given one here count as
+     * holding any value.
+     */
+    private void grow(int pgNo) {
+        if (pgNo < numPages)
+            return;
+        int n = fields.length;
+        if ((pgNo + 1) * n > mins.length) {
+            int size = Math.max((pgNo + 1) * n, mins.length * 2);
+            mins = Arrays.copyOf(mins, size);
+            maxs = Arrays.copyOf(maxs, size);
+        }
+        Arrays.fill(mins, numPages * n, (pgNo + 1) * n, Integer.MIN_VALUE);
+        Arrays.fill(maxs, numPages * n, (pgNo + 1) * n, Integer.MAX_VALUE);
+        numPages = pgNo + 1;
+    }
+
+    /** Records that page pgNo holds no tuples, in memory only. */
+    synchronized void clear(int pgNo) {
+        grow(pgNo);
+        int n = fields.length;
+        // an empty range: min above max
+        Arrays.fill(mins, pgNo * n, (pgNo + 1) * n, Integer.MAX_VALUE);
+        Arrays.fill(maxs, pgNo * n, (pgNo + 1) * n, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Widens the range of field on page pgNo to take in value, in memory
+     * only. Does nothing if field is not an INT_TYPE.
+     */
+    synchronized void include(int pgNo, int field, int value) {
+        int c = columnOf[field];
+        if (c < 0)
+            return;
+        grow(pgNo);
+        int e = pgNo * fields.length + c;
+        if (value < mins[e])
+            mins[e] = value;
+        if (value > maxs[e])
+            maxs[e] = value;
+    }
+
+    /** Widens the ranges of page pgNo to take in t, in memory only. */
+    synchronized void include(int pgNo, Tuple t) {
+        for (int field : fields)
+            include(pgNo, field, ((IntField) t.getField(field)).getValue());
+    }
+
+    /** Records the exact ranges of the tuples on page, in memory only. */
+    synchronized void set(HeapPage page) {
+        clear(page.getId().pageNumber());
+        include(page);
+    }
+
+    /** Widens the ranges of page to take in its tuples, in memory only. */
+    synchronized void include(HeapPage page) {
+        int pgNo = page.getId().pageNumber();
+        for (int i = page.nextUsedSlot(0); i >= 0; i = page.nextUsedSlot(i + 1)) {
+            for (int field : fields)
+                include(pgNo, field, ((IntField) page.getField(i, field)).getValue());
+        }
+    }
+
+    /**
+     * @return false if no tuple on page pgNo can satisfy p, true if some
+     *     might
+     */
+    synchronized boolean mightMatch(int pgNo, Predicate p) {
+        int c = columnOf[p.getField()];
+        if (c < 0 || pgNo >= numPages)
+            return true;
+        int e = pgNo * fields.length + c;
+        int min = mins[e];
+        int max = maxs[e];
+        if (min > max)
+            return false; // no tuples
+        int v = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+        case LIKE:
+            return min <= v && v <= max;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the entry of page pgNo to the side file, and those of any
+     * pages before it that haven't been written.
+     */
+    synchronized void writeEntry(int pgNo) throws IOException {
+        grow(pgNo);
+        if (out == null)
+            out = new RandomAccessFile(file, "rw");
+        int from = Math.min(pgNo, written);
+        int n = fields.length;
+        ByteArrayOutputStream entries = new ByteArrayOutputStream((pgNo + 1 - from) * entryBytes());
+        DataOutputStream dos = new DataOutputStream(entries);
+        for (int i = from * n; i < (pgNo + 1) * n; i++) {
+            dos.writeInt(mins[i]);
+            dos.writeInt(maxs[i]);
+        }
+        out.seek((long) from * entryBytes());
+        out.write(entries.toByteArray());
+        written = Math.max(written, pgNo + 1);
+    }
+
+    /**
+     * Drops the entries from numPages on, for pages cut off the table.
+     */
+    synchronized void truncate(int numPages) throws IOException {
+        if (numPages >= this.numPages)
+            return;
+        this.numPages = numPages;
+        if (written > numPages) {
+            written = numPages;
+            if (out == null)
+                out = new RandomAccessFile(file, "rw");
+            out.setLength((long) numPages * entryBytes());
+        }
+    }
+
+    /** Makes the entries written so far durable. */
+    synchronized void force() throws IOException {
+        if (out != null)
+            out.getFD().sync();
+    }
+
+    /** Closes the side file; the next write reopens it. */
+    synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // Ignore failures closing the file
+            }
+            out = null;
+        }
+    }
+}
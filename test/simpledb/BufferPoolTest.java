@@ -0,0 +1,326 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolTest extends SimpleDbTestBase {
+
+    /** Counts readPage calls and makes each one slow. */
+    static class SlowHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+
+        SlowHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    private static final int PAGES = 20;
+    private SlowHeapFile table;
+
+    @Before public void createTable() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000,
+                null, new ArrayList<ArrayList<Integer>>());
+        table = new SlowHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    /** Runs body on n threads that start together; rethrows the first failure. */
+    private static void runConcurrently(int n, final Runnable body) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Throwable[] error = new Throwable[1];
+        Thread[] threads = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        body.run();
+                    } catch (Throwable t) {
+                        synchronized (error) {
+                            error[0] = t;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+        if (error[0] != null)
+            throw new RuntimeException(error[0]);
+    }
+
+    /**
+     * Concurrent misses on the same page wait for a single read.
+     */
+    @Test public void singleFlightLoad() throws Exception {
+        final BufferPool bp = Database.resetBufferPool(10);
+        final HeapPageId pid = new HeapPageId(table.getId(), 3);
+        final Page[] seen = new Page[8];
+        final AtomicInteger slot = new AtomicInteger();
+        runConcurrently(seen.length, new Runnable() {
+            public void run() {
+                try {
+                    seen[slot.getAndIncrement()] =
+                        bp.getPage(new TransactionId(), pid, Permissions.READ_ONLY);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertEquals(1, table.reads.get());
+        for (Page p : seen)
+            assertSame(seen[0], p);
+        assertEquals(1, bp.getMissCount());
+        assertEquals(seen.length - 1, bp.getHitCount());
+    }
+
+    /**
+     * Many threads reading random pages through a pool smaller than the
+     * table never see an error, and every miss is one read.
+     */
+    @Test public void concurrentEviction() throws Exception {
+        final BufferPool bp = Database.resetBufferPool(5);
+        runConcurrently(8, new Runnable() {
+            public void run() {
+                Random r = new Random();
+                TransactionId tid = new TransactionId();
+                try {
+                    for (int i = 0; i < 50; i++) {
+                        HeapPageId pid = new HeapPageId(table.getId(), r.nextInt(PAGES));
+                        HeapPage p = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+                        assertEquals(pid, p.getId());
+                        bp.unpinPage(tid, pid);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertEquals(8 * 50, bp.getHitCount() + bp.getMissCount());
+        assertEquals(table.reads.get(), bp.getMissCount());
+        // misses wait for a free frame rather than overcommit the pool
+        assertTrue(bp.getMissCount() - bp.getEvictionCount() <= 5);
+    }
+
+    /**
+     * A sequential scan reads ahead: every page is still read exactly once,
+     * and each prefetched page is later used by the scan.
+     */
+    @Test public void scanPrefetches() throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(992 * PAGES, count);
+        assertEquals(PAGES, table.reads.get());
+        assertTrue(bp.getPrefetchCount() > 0);
+        assertEquals(bp.getPrefetchCount(), bp.getPrefetchHitCount());
+        assertEquals(PAGES, bp.getMissCount() + bp.getPrefetchCount());
+        assertEquals(0, bp.getWastedPrefetchCount());
+    }
+
+    /**
+     * Pages prefetched for a scan that stopped early count as wasted when
+     * they leave the pool unused.
+     */
+    @Test public void wastedPrefetch() throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        DbFileIterator it = table.iterator(new TransactionId());
+        it.open();
+        it.next();
+        it.close();
+        assertTrue(bp.getPrefetchCount() > 0);
+        for (int i = 0; i < PAGES; i++)
+            bp.discardPage(new HeapPageId(table.getId(), i));
+        assertEquals(bp.getPrefetchCount(), bp.getWastedPrefetchCount());
+    }
+
+    /**
+     * An off-heap pool returns the same tuples as an on-heap one, and a page
+     * it handed out stays intact after its frame is reused for another page.
+     */
+    @Test public void offHeapFrames() throws Exception {
+        // a plain HeapFile: subclasses overriding readPage are read on-heap
+        HeapFile plain = SystemTestUtil.createRandomHeapFile(1, 992 * 8, null, null);
+        BufferPool bp = new BufferPool(4, new LruEvictionPolicy(), true);
+        assertTrue(bp.isOffHeap());
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(plain.getId(), 0);
+        HeapPage kept = (HeapPage) bp.getPage(tid, first, Permissions.READ_ONLY);
+        assertTrue(kept.data.isDirect());
+        bp.unpinPage(tid, first);
+        byte[] expected = plain.readPage(first).getPageData();
+        for (int i = 1; i < 8; i++) {
+            HeapPageId pid = new HeapPageId(plain.getId(), i);
+            HeapPage p = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+            assertArrayEquals(plain.readPage(pid).getPageData(), p.getPageData());
+            bp.unpinPage(tid, pid);
+        }
+        assertTrue(bp.getEvictionCount() > 0);
+        assertFalse(kept.data.isDirect());
+        assertArrayEquals(expected, kept.getPageData());
+        assertArrayEquals(expected, kept.getBeforeImage().getPageData());
+    }
+
+    /**
+     * Fields read from a page handed out by an off-heap pool are its own,
+     * however its frame is reused while they are read.
+     */
+    @Test public void offHeapReadsDuringReuse() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int p = 0; p < 8; p++) {
+            for (int i = 0; i < 992; i++) {
+                ArrayList<Integer> tuple = new ArrayList<Integer>();
+                tuple.add(p * 100000 + i);
+                tuples.add(tuple);
+            }
+        }
+        File f = TestUtil.createTempFile("reuse", ".dat");
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 1);
+        final HeapFile plain = Utility.openHeapFile(1, f);
+        final BufferPool bp = new BufferPool(2, new LruEvictionPolicy(), true);
+        final AtomicInteger roles = new AtomicInteger();
+        final long end = System.nanoTime() + 500000000L;
+        runConcurrently(4, new Runnable() {
+            public void run() {
+                try {
+                    TransactionId tid = new TransactionId();
+                    Random r = new Random();
+                    boolean churn = roles.getAndIncrement() == 0;
+                    while (System.nanoTime() < end) {
+                        int pg = churn ? 1 + r.nextInt(7) : r.nextInt(8);
+                        HeapPageId pid = new HeapPageId(plain.getId(), pg);
+                        HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+                        bp.unpinPage(tid, pid);
+                        if (churn)
+                            continue;
+                        // read on after the unpin, while other threads reuse the frame
+                        for (int i = 0; i < 992; i++)
+                            assertEquals(pg * 100000 + i,
+                                    ((IntField) page.getField(i, 0)).getValue());
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertTrue(bp.getEvictionCount() > 0);
+    }
+
+    /**
+     * A pinned page is not evicted, a miss that finds every frame pinned by
+     * its own transaction fails, and unpinning makes the page evictable.
+     */
+    @Test public void pinnedPagesStay() throws Exception {
+        BufferPool bp = Database.resetBufferPool(2);
+        TransactionId tid = new TransactionId();
+        HeapPageId p0 = new HeapPageId(table.getId(), 0);
+        HeapPageId p1 = new HeapPageId(table.getId(), 1);
+        HeapPageId p2 = new HeapPageId(table.getId(), 2);
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        bp.getPage(tid, p0, Permissions.READ_ONLY);
+        bp.getPage(tid, p1, Permissions.READ_ONLY);
+        assertEquals(2, bp.getPinCount(p0));
+        try {
+            bp.getPage(tid, p2, Permissions.READ_ONLY);
+            fail("expected DbException with every frame pinned");
+        } catch (DbException expected) {
+        }
+        bp.unpinPage(tid, p1);
+        bp.getPage(tid, p2, Permissions.READ_ONLY);
+        assertTrue(bp.isLoaded(p0));
+        assertFalse(bp.isLoaded(p1));
+        bp.unpinPage(tid, p0);
+        assertEquals(1, bp.getPinCount(p0));
+    }
+
+    /**
+     * A miss waits for another transaction to unpin a frame rather than
+     * failing.
+     */
+    @Test public void missWaitsForUnpin() throws Exception {
+        final BufferPool bp = Database.resetBufferPool(1);
+        final TransactionId holder = new TransactionId();
+        final HeapPageId p0 = new HeapPageId(table.getId(), 0);
+        bp.getPage(holder, p0, Permissions.READ_ONLY);
+        Thread unpinner = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                bp.unpinPage(holder, p0);
+            }
+        };
+        unpinner.start();
+        bp.getPage(new TransactionId(), new HeapPageId(table.getId(), 1), Permissions.READ_ONLY);
+        unpinner.join();
+        assertFalse(bp.isLoaded(p0));
+    }
+
+    /**
+     * A scan unpins each page as it moves past it, and transactionComplete
+     * releases and counts pins a transaction leaked.
+     */
+    @Test public void scanUnpinsAndLeaksAreReleased() throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            it.next();
+        for (int i = 0; i < PAGES; i++)
+            assertEquals(0, bp.getPinCount(new HeapPageId(table.getId(), i)));
+        it.close();
+
+        HeapPageId p0 = new HeapPageId(table.getId(), 0);
+        it.open();
+        it.next();
+        assertEquals(1, bp.getPinCount(p0));
+        bp.transactionComplete(tid);
+        assertEquals(0, bp.getPinCount(p0));
+        assertEquals(1, bp.getLeakedPinCount());
+        it.close(); // the pin is already gone; unpinning again is harmless
+        assertEquals(0, bp.getPinCount(p0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolTest.class);
+    }
+}
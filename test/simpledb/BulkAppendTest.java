@@ -0,0 +1,132 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BulkAppendTest extends SimpleDbTestBase {
+
+    private static final int TIMEOUT = 100;
+
+    private HeapFile hf;
+    private TransactionId tid;
+    private int slots;
+
+    /**
+     * One full page and a second holding 10 rows, of two int columns.
+     */
+    @Before public void setUp() throws Exception {
+        slots = TestUtil.slotsPerPage(2);
+        hf = SystemTestUtil.createRandomHeapFile(2, slots + 10, null, null);
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        TestUtil.deleteSideFiles(hf.getFile());
+    }
+
+    private int append(int rows) throws Exception {
+        BulkAppender a = hf.bulkAppend(tid);
+        for (int i = 0; i < rows; i++)
+            a.append(Utility.getHeapTuple(i, 2));
+        return (rows + slots - 1) / slots;
+    }
+
+    /**
+     * Appended pages are written to the file at once but aren't part of
+     * the table until the commit, and one log record covers each batch.
+     */
+    @Test public void visibleAtCommit() throws Exception {
+        int records = Database.getLogFile().getTotalRecords();
+        int rows = slots * BulkAppender.BATCH_PAGES + 7;
+        int pages = append(rows);
+        assertEquals(2 + BulkAppender.BATCH_PAGES, hf.getFile().length() / BufferPool.getPageSize());
+        assertEquals(2, hf.numPages());
+        assertEquals(slots + 10, TestUtil.readTuples(hf).size());
+        assertTrue(BulkAppender.fileFor(hf.getFile()).exists());
+
+        Database.getBufferPool().transactionComplete(tid);
+        assertFalse(BulkAppender.fileFor(hf.getFile()).exists());
+        assertEquals(2 + pages, hf.numPages());
+        assertEquals(slots + 10 + rows, TestUtil.readTuples(hf).size());
+        assertEquals(records + 2, Database.getLogFile().getTotalRecords());
+        assertEquals(0, hf.getFreeSpaceMap().getEntry(2));
+        assertTrue(hf.getFreeSpaceMap().getEntry(1 + pages) > 0);
+    }
+
+    /**
+     * An abort takes the appended pages back off the file.
+     */
+    @Test public void abortTruncates() throws Exception {
+        append(slots * BulkAppender.BATCH_PAGES * 2);
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(2 * BufferPool.getPageSize(), hf.getFile().length());
+        assertEquals(slots + 10, TestUtil.readTuples(hf).size());
+    }
+
+    /**
+     * A load cut short by a crash is truncated away when the table is next
+     * opened.
+     */
+    @Test public void crashTruncates() throws Exception {
+        append(slots * BulkAppender.BATCH_PAGES * 2);
+        assertEquals(2 + BulkAppender.BATCH_PAGES * 2,
+                hf.getFile().length() / BufferPool.getPageSize());
+
+        HeapFile reopened = Utility.openHeapFile(2, hf.getFile());
+        assertEquals(2 * BufferPool.getPageSize(), hf.getFile().length());
+        assertFalse(BulkAppender.fileFor(hf.getFile()).exists());
+        assertEquals(2, reopened.numPages());
+        assertEquals(slots + 10, TestUtil.readTuples(reopened).size());
+        Database.getBufferPool().transactionComplete(tid, false);
+        reopened.close();
+    }
+
+    /**
+     * Inserts into pages with room go ahead during a load; one that needs
+     * a new page waits for the load to complete.
+     */
+    @Test public void insertsWaitForNewPages() throws Exception {
+        append(slots * 3);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId other = new TransactionId();
+        for (int i = 0; i < slots - 10; i++)
+            bp.insertTuple(other, hf.getId(), Utility.getHeapTuple(i, 2));
+        final TransactionId third = new TransactionId();
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    Database.getBufferPool().insertTuple(third, hf.getId(),
+                            Utility.getHeapTuple(1, 2));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        t.start();
+        t.join(TIMEOUT);
+        assertTrue(t.isAlive());
+
+        bp.transactionComplete(tid);
+        bp.transactionComplete(other);
+        t.join(TIMEOUT * 10);
+        assertFalse(t.isAlive());
+        bp.transactionComplete(third);
+        assertEquals(slots * 5 + 1, TestUtil.readTuples(hf).size());
+        assertEquals(6, hf.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkAppendTest.class);
+    }
+}
@@ -0,0 +1,149 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 3;
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private File raw, out;
+    private HeapFile hf;
+    private int slots;
+
+    /**
+     * Ten pages of three int columns, two of them constant as in a
+     * denormalized table, compressed from a raw heap file.
+     */
+    @Before public void setUp() throws Exception {
+        slots = TestUtil.slotsPerPage(COLUMNS);
+        tuples = new ArrayList<ArrayList<Integer>>();
+        HashMap<Integer, Integer> constants = new HashMap<Integer, Integer>();
+        constants.put(1, 7);
+        constants.put(2, 2012);
+        raw = SystemTestUtil.createRandomHeapFileUnopened(COLUMNS, slots * 10, 100,
+                constants, tuples);
+        out = TestUtil.createTempFile("compressed", ".dat");
+        HeapFileEncoder.compress(raw, out, BufferPool.getPageSize());
+        hf = Utility.openHeapFile(COLUMNS, out);
+    }
+
+    @After public void tearDown() throws Exception {
+        hf.close();
+        TestUtil.deleteSideFiles(out);
+    }
+
+    private void roundTrip(byte[] page) throws IOException {
+        PageCompressor c = new PageCompressor();
+        byte[] packed = new byte[page.length - 1];
+        int len = c.compress(page, page.length, packed);
+        if (len < 0)
+            return; // stored as is
+        byte[] back = new byte[page.length];
+        PageCompressor.decompress(packed, 0, len, back);
+        assertArrayEquals(page, back);
+    }
+
+    /**
+     * Pages of zeros, of a repeated pattern and of random bytes come back
+     * as they went in; random bytes don't compress.
+     */
+    @Test public void compressorRoundTrip() throws Exception {
+        byte[] page = new byte[BufferPool.getPageSize()];
+        roundTrip(page);
+        for (int i = 0; i < page.length; i++)
+            page[i] = (byte) (i % 7 == 0 ? i : 3);
+        roundTrip(page);
+        new Random(22).nextBytes(page);
+        roundTrip(page);
+        assertEquals(-1, new PageCompressor().compress(page, page.length,
+                new byte[page.length - 1]));
+    }
+
+    /**
+     * Bytes that aren't a compressed page of the expected length are
+     * reported, not decoded into garbage.
+     */
+    @Test(expected = IOException.class) public void corruptInput() throws Exception {
+        byte[] page = new byte[BufferPool.getPageSize()];
+        byte[] packed = new byte[page.length - 1];
+        int len = new PageCompressor().compress(page, page.length, packed);
+        PageCompressor.decompress(packed, 0, len - 1, page);
+    }
+
+    /**
+     * The compressed file reads the same tuples in fewer bytes.
+     */
+    @Test public void scansLikeRaw() throws Exception {
+        assertTrue(hf.isCompressed());
+        assertFalse(hf.isMapped());
+        assertEquals(10, hf.numPages());
+        assertTrue(out.length() * 2 < raw.length());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Inserted and deleted tuples are written back compressed and are
+     * there when the table is opened again.
+     */
+    @Test public void writesSurviveReopen() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        bp.deleteTuple(tid, first);
+        tuples.remove(SystemTestUtil.tupleToList(first));
+        for (int i = 0; i < slots + 1; i++) {
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, COLUMNS));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i, i)));
+        }
+        bp.transactionComplete(tid);
+        bp.flushAllPages();
+
+        hf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf = Utility.openHeapFile(COLUMNS, out);
+        assertTrue(hf.isCompressed());
+        assertEquals(11, hf.numPages());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * An aborted bulk load drops its pages from the extent map.
+     */
+    @Test public void abortDropsPages() throws Exception {
+        TransactionId tid = new TransactionId();
+        BulkAppender a = hf.bulkAppend(tid);
+        for (int i = 0; i < slots * BulkAppender.BATCH_PAGES * 2; i++)
+            a.append(Utility.getHeapTuple(i, COLUMNS));
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(10, hf.numPages());
+        assertEquals(10 * ExtentMap.ENTRY_BYTES, ExtentMap.fileFor(out).length());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,161 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final EvictionPolicy.Filter ANY = new EvictionPolicy.Filter() {
+        public boolean canEvict(PageId pid) {
+            return true;
+        }
+    };
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(1, pgNo);
+    }
+
+    /**
+     * Unit test for LruEvictionPolicy: the least recently accessed page goes first.
+     */
+    @Test public void lru() {
+        EvictionPolicy p = new LruEvictionPolicy();
+        for (int i = 0; i < 3; i++)
+            p.pageAdded(pid(i));
+        p.pageAccessed(pid(0));
+        assertEquals(pid(1), p.chooseVictim(ANY));
+        assertEquals(pid(2), p.chooseVictim(ANY));
+        assertEquals(pid(0), p.chooseVictim(ANY));
+        assertNull(p.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for ClockEvictionPolicy: a referenced page gets a second chance.
+     */
+    @Test public void clock() {
+        EvictionPolicy p = new ClockEvictionPolicy(3);
+        for (int i = 0; i < 3; i++)
+            p.pageAdded(pid(i));
+        // first sweep clears all bits, so page 0 goes first
+        assertEquals(pid(0), p.chooseVictim(ANY));
+        p.pageAdded(pid(3));
+        p.pageAccessed(pid(1));
+        assertEquals(pid(2), p.chooseVictim(ANY));
+    }
+
+    /**
+     * Unit test for TwoQueueEvictionPolicy: pages seen once are evicted
+     * before pages that have been read twice.
+     */
+    @Test public void twoQueue() {
+        EvictionPolicy p = new TwoQueueEvictionPolicy(8);
+        p.pageAdded(pid(0));
+        assertEquals(pid(0), p.chooseVictim(ANY));
+        // re-read while remembered in A1out: promoted to Am
+        p.pageAdded(pid(0));
+        for (int i = 1; i < 8; i++)
+            p.pageAdded(pid(i));
+        // A1in holds 7 pages against a target of 2, so it is drained first
+        for (int i = 1; i < 6; i++)
+            assertEquals(pid(i), p.chooseVictim(ANY));
+        assertEquals(pid(0), p.chooseVictim(ANY));
+    }
+
+    /**
+     * Every policy must skip pages the filter rejects.
+     */
+    @Test public void filter() {
+        EvictionPolicy.Filter onlyOdd = new EvictionPolicy.Filter() {
+            public boolean canEvict(PageId pid) {
+                return pid.pageNumber() % 2 == 1;
+            }
+        };
+        String[] names = { "lru", "clock", "2q" };
+        for (String name : names) {
+            EvictionPolicy p = BufferPool.createPolicy(name, 4);
+            for (int i = 0; i < 4; i++)
+                p.pageAdded(pid(i));
+            HashSet<PageId> victims = new HashSet<PageId>();
+            victims.add(p.chooseVictim(onlyOdd));
+            victims.add(p.chooseVictim(onlyOdd));
+            assertTrue(name, victims.contains(pid(1)) && victims.contains(pid(3)));
+            assertNull(name, p.chooseVictim(onlyOdd));
+        }
+    }
+
+    /**
+     * A scan of a table larger than the pool must succeed, evicting as it goes.
+     */
+    @Test public void scanLargerThanPool() throws Exception {
+        final int PAGES = 30;
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+        HeapFile table = Utility.openHeapFile(1, f);
+
+        String[] names = { "lru", "clock", "2q" };
+        for (String name : names) {
+            BufferPool bp = new BufferPool(10, BufferPool.createPolicy(name, 10));
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < PAGES; i++) {
+                HeapPageId pid = new HeapPageId(table.getId(), i);
+                bp.getPage(tid, pid, Permissions.READ_ONLY);
+                bp.unpinPage(tid, pid);
+            }
+            bp.getPage(tid, new HeapPageId(table.getId(), PAGES - 1), Permissions.READ_ONLY);
+            assertEquals(name, PAGES, bp.getMissCount());
+            assertEquals(name, 1, bp.getHitCount());
+            assertEquals(name, PAGES - 10, bp.getEvictionCount());
+        }
+
+        Database.resetBufferPool(10);
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /**
+     * A scan through a ScanRing recycles its own frames and leaves pages
+     * read by ordinary requests resident.
+     */
+    @Test public void scanRingProtectsWorkingSet() throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(1, 992 * 4, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(1, 992 * 30, null, null);
+        BufferPool bp = new BufferPool(10);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 4; i++) {
+            HeapPageId pid = new HeapPageId(hot.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+
+        ScanRing ring = bp.newScanRing();
+        assertNotNull(ring);
+        for (int i = 0; i < 30; i++) {
+            HeapPageId pid = new HeapPageId(big.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY, ring);
+            bp.unpinPage(tid, pid);
+        }
+        bp.releaseScanRing(ring);
+
+        bp.resetStats();
+        for (int i = 0; i < 4; i++)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        assertEquals(0, bp.getMissCount());
+        assertEquals(4, bp.getHitCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,156 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HeapFileEncoderTest extends SimpleDbTestBase {
+
+    private File in, out;
+
+    @Before public void setUp() throws Exception {
+        in = TestUtil.createTempFile("encoder", ".txt");
+        out = TestUtil.createTempFile("encoder", ".dat");
+    }
+
+    @After public void tearDown() throws Exception {
+        TestUtil.deleteSideFiles(out);
+    }
+
+    private void write(String text) throws IOException {
+        FileWriter w = new FileWriter(in);
+        w.write(text);
+        w.close();
+    }
+
+    private ArrayList<Tuple> read(int numFields, Type[] types) throws Exception {
+        return read(new TupleDesc(types, new String[numFields]));
+    }
+
+    private ArrayList<Tuple> read(TupleDesc td) throws Exception {
+        HeapFile hf = new HeapFile(out, td);
+        Database.getCatalog().addTable(hf, "encoded");
+        return TestUtil.readTuples(hf);
+    }
+
+    /**
+     * Text cut into many small chunks on several threads encodes to the
+     * same file as the tuple list it was written from, pages full but the
+     * last.
+     */
+    @Test public void chunksMatchTupleList() throws Exception {
+        Random r = new Random(19);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            t.add(r.nextInt());
+            t.add(i == 0 ? Integer.MIN_VALUE : r.nextInt(1000));
+            tuples.add(t);
+            text.append(t.get(0)).append(", ").append(t.get(1)).append(i % 7 == 0 ? "\r\n" : "\n");
+            if (i % 500 == 0)
+                text.append('\n');
+        }
+        write(text.toString());
+        HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), 2,
+                new Type[] { Type.INT_TYPE, Type.INT_TYPE }, ',', 3, 100);
+        byte[] parallel = TestUtil.readFileBytes(out.getPath());
+
+        HeapFileEncoder.convert(tuples, out, BufferPool.getPageSize(), 2);
+        byte[] list = TestUtil.readFileBytes(out.getPath());
+        assertEquals(BufferPool.getPageSize() * 6, list.length);
+        assertTrue(Arrays.equals(list, parallel));
+    }
+
+    /**
+     * Strings are trimmed and cut to Type.STRING_LEN; a last line without
+     * a newline still counts.
+     */
+    @Test public void strings() throws Exception {
+        StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < Type.STRING_LEN + 10; i++)
+            longString.append('x');
+        write("1| hello \n2|" + longString + "\n3|");
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), 2, types, '|', 2, 8);
+        ArrayList<Tuple> rows = read(2, types);
+        assertEquals(3, rows.size());
+        assertEquals("hello", ((StringField) rows.get(0).getField(1)).getValue());
+        assertEquals(Type.STRING_LEN, ((StringField) rows.get(1).getField(1)).getValue().length());
+        assertEquals("", ((StringField) rows.get(2).getField(1)).getValue());
+        assertEquals(3, ((IntField) rows.get(2).getField(0)).getValue());
+    }
+
+    /**
+     * Strings declared short are cut to their length and take only that
+     * much room, so pages hold more tuples; they read back unchanged.
+     */
+    @Test public void declaredStringLength() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            text.append(i).append(",code").append(i).append(i == 0 ? "-longer-than-eight" : "").append('\n');
+        write(text.toString());
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        TupleDesc td = new TupleDesc(types, new String[2], new int[] { 0, 8 });
+        HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), td, ',', 2, 100);
+        int slots = TestUtil.slotsPerPage(td);
+        assertEquals(4 + 12, td.getSize());
+        assertEquals((1000 + slots - 1) / slots * BufferPool.getPageSize(), out.length());
+
+        ArrayList<Tuple> rows = read(td);
+        assertEquals(1000, rows.size());
+        assertEquals("code0-lo", ((StringField) rows.get(0).getField(1)).getValue());
+        assertEquals("code999", ((StringField) rows.get(999).getField(1)).getValue());
+
+        // a tuple written back through a page keeps the narrow layout
+        byte[] first = Arrays.copyOf(TestUtil.readFileBytes(out.getPath()),
+                BufferPool.getPageSize());
+        HeapPage page = new HeapPage((HeapPageId) rows.get(0).getRecordId().getPageId(), first);
+        page.getTuple(0);
+        assertTrue(Arrays.equals(first, page.getPageData()));
+    }
+
+    /**
+     * An empty input makes one empty page.
+     */
+    @Test public void empty() throws Exception {
+        write("");
+        HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), 1);
+        assertEquals(BufferPool.getPageSize(), out.length());
+    }
+
+    /**
+     * Lines that don't parse are refused rather than skipped.
+     */
+    @Test public void malformed() throws Exception {
+        String[] bad = { "1,2\n3,x\n", "1,2\n3\n", "1,2,3\n", "1,99999999999\n" };
+        for (String text : bad) {
+            write(text);
+            try {
+                HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), 2);
+                fail("expected IOException for " + text);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+    }
+}
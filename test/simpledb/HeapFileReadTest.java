@@ -3,6 +3,7 @@ package simpledb;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.FileOutputStream;
 import java.util.*;
 import org.junit.After;
 import org.junit.Before;
@@ -85,6 +86,32 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() on the memory-mapped read path,
+     * including a page appended after the file was first mapped.
+     */
+    @Test
+    public void readPageMapped() throws Exception {
+        HeapFile mapped = new HeapFile(hf.getFile(), td, true);
+        Database.getCatalog().addTable(mapped, "mapped");
+        HeapPageId pid = new HeapPageId(mapped.getId(), 0);
+        HeapPage page = (HeapPage) mapped.readPage(pid);
+        assertArrayEquals(((HeapPage) hf.readPage(pid)).getPageData(), page.getPageData());
+
+        FileOutputStream fos = new FileOutputStream(hf.getFile(), true);
+        fos.write(page.getPageData());
+        fos.close();
+        assertEquals(2, mapped.numPages());
+        HeapPage appended = (HeapPage) mapped.readPage(new HeapPageId(mapped.getId(), 1));
+        assertEquals(484, appended.getNumEmptySlots());
+
+        try {
+            mapped.readPage(new HeapPageId(mapped.getId(), 2));
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
@@ -130,6 +157,33 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Unit test for HeapFile.cursorIterator(): hasNext() looks ahead without
+     * moving the cursor the last next() returned, even across pages.
+     */
+    @Test
+    public void cursorLookAhead() throws Exception {
+        HeapFile threePageFile = SystemTestUtil.createRandomHeapFile(2, 1200,
+                null, null);
+        DbFileIterator plain = threePageFile.iterator(tid);
+        DbFileIterator it = threePageFile.cursorIterator(tid);
+        plain.open();
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple expected = plain.next();
+            TupleCursor c = (TupleCursor) it.next();
+            it.hasNext();
+            assertEquals(expected.getRecordId(), c.getRecordId());
+            for (int j = 0; j < 2; j++)
+                assertEquals(((IntField) expected.getField(j)).getValue(), c.getInt(j));
+            count++;
+        }
+        assertEquals(1200, count);
+        plain.close();
+        it.close();
+    }
+
     /**
      * JUnit suite target
      */
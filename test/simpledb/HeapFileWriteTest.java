@@ -0,0 +1,133 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HeapFileWriteTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private TransactionId tid;
+    private int slots;
+
+    /**
+     * Two full pages of two int columns.
+     */
+    @Before public void setUp() throws Exception {
+        slots = TestUtil.slotsPerPage(2);
+        hf = SystemTestUtil.createRandomHeapFile(2, slots * 2, null, null);
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        TestUtil.deleteSideFiles(hf.getFile());
+    }
+
+    /**
+     * HeapPage.insertTuple fills the free slots in order and refuses a
+     * tuple once the page is full; deleteTuple frees the slot again.
+     */
+    @Test public void pageInsertDelete() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < slots; i++) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            page.insertTuple(t);
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        assertEquals(0, page.getNumEmptySlots());
+        try {
+            page.insertTuple(Utility.getHeapTuple(0, 2));
+            fail("expected DbException");
+        } catch (DbException expected) {
+        }
+
+        Tuple victim = page.getTuple(7);
+        page.deleteTuple(victim);
+        assertNull(victim.getRecordId());
+        assertFalse(page.isSlotUsed(7));
+        Tuple t = Utility.getHeapTuple(42, 2);
+        page.insertTuple(t);
+        assertEquals(7, t.getRecordId().tupleno());
+
+        HeapPage reread = new HeapPage(pid, page.getPageData());
+        assertEquals(42, ((IntField) reread.getTuple(7).getField(0)).getValue());
+    }
+
+    /**
+     * An insert into a table with no room adds a page, and the rows are
+     * on disk once the transaction commits.
+     */
+    @Test public void insertAppendsPage() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        Tuple t = Utility.getHeapTuple(5, 2);
+        bp.insertTuple(tid, hf.getId(), t);
+        assertEquals(3, hf.numPages());
+        assertEquals(2, t.getRecordId().getPageId().pageNumber());
+        for (int i = 1; i < slots + 1; i++)
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+        assertEquals(4, hf.numPages());
+        assertEquals(slots * 3 + 1, TestUtil.readTuples(hf, tid).size());
+        bp.transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(slots * 3 + 1, TestUtil.readTuples(hf, new TransactionId()).size());
+    }
+
+    /**
+     * Room freed by a delete is where the next insert goes, also after the
+     * table is reopened, and no page is added for it.
+     */
+    @Test public void deleteMakesRoom() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(hf.getId(), 1),
+                Permissions.READ_ONLY);
+        bp.deleteTuple(tid, page.getTuple(3));
+        bp.transactionComplete(tid);
+        assertEquals(slots * 2 - 1, TestUtil.readTuples(hf, new TransactionId()).size());
+
+        HeapFile reopened = Utility.openHeapFile(2, hf.getFile());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertTrue(reopened.getFreeSpaceMap().getEntry(1) > 0);
+        assertEquals(0, reopened.getFreeSpaceMap().getEntry(0));
+        TransactionId t2 = new TransactionId();
+        Tuple t = Utility.getHeapTuple(9, 2);
+        Database.getBufferPool().insertTuple(t2, reopened.getId(), t);
+        assertEquals(new RecordId(new HeapPageId(hf.getId(), 1), 3), t.getRecordId());
+        assertEquals(2, reopened.numPages());
+        Database.getBufferPool().transactionComplete(t2);
+    }
+
+    /**
+     * An aborted insert leaves nothing behind.
+     */
+    @Test public void abortDiscards() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(hf.getId(), 0),
+                Permissions.READ_ONLY);
+        bp.deleteTuple(tid, page.getTuple(0));
+        bp.transactionComplete(tid, false);
+        assertEquals(slots * 2, TestUtil.readTuples(hf, new TransactionId()).size());
+    }
+
+    /**
+     * Deleting a tuple that isn't stored in the table fails.
+     */
+    @Test(expected=DbException.class) public void deleteUnstored() throws Exception {
+        hf.deleteTuple(tid, Utility.getHeapTuple(1, 2));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileWriteTest.class);
+    }
+}
@@ -51,6 +51,30 @@ public class HeapPageIdTest extends SimpleDbTestBase {
         assertEquals(code2, pid.hashCode());
     }
 
+    /**
+     * Page 0 hashes like any other page, and neighbouring pages and tables
+     * don't collide.
+     */
+    @Test public void hashCodeSpread() {
+        java.util.HashSet<Integer> codes = new java.util.HashSet<Integer>();
+        for (int table = 0; table < 10; table++) {
+            for (int page = 0; page < 100; page++)
+                codes.add(new HeapPageId(table, page).hashCode());
+        }
+        assertEquals(1000, codes.size());
+    }
+
+    /**
+     * Unit test for HeapPageId.toKey()
+     */
+    @Test public void toKey() {
+        HeapPageId p = new HeapPageId(-7, 12);
+        assertEquals(-7, (int) (p.toKey() >> 32));
+        assertEquals(12, (int) p.toKey());
+        assertEquals(HeapPageId.key(-7, 12), p.toKey());
+        assertFalse(new HeapPageId(12, -7).toKey() == p.toKey());
+    }
+
     /**
      * Unit test for HeapPageId.equals()
      */
@@ -10,9 +10,13 @@ import java.util.*;
 
 import org.junit.Before;
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import junit.framework.JUnit4TestAdapter;
 
 public class HeapPageReadTest extends SimpleDbTestBase {
@@ -120,6 +124,83 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Slots used on either side of 64-slot word boundaries, up to the last
+     * slot, are all found by the iterator and counted.
+     */
+    @Test public void sparseSlots() throws Exception {
+        int[] used = { 0, 63, 64, 127, 200, 503 };
+        byte[] data = HeapPage.createEmptyPageData();
+        for (int slot : used)
+            data[slot / 8] |= 1 << (slot % 8);
+        HeapPage page = new HeapPage(pid, data);
+        assertEquals(504 - used.length, page.getNumEmptySlots());
+        Iterator<Tuple> it = page.iterator();
+        for (int slot : used) {
+            assertTrue(page.isSlotUsed(slot));
+            assertEquals(new RecordId(pid, slot), it.next().getRecordId());
+        }
+        assertFalse(it.hasNext());
+        assertArrayEquals(data, page.getPageData());
+    }
+
+    /**
+     * Unit test for HeapPage.getField() and getTuple(): single fields agree
+     * with the decoded tuple, and a tuple is only decoded once.
+     */
+    @Test public void lazyDecode() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(EXAMPLE_VALUES[i][1], ((IntField) page.getField(i, 1)).getValue());
+            Tuple t = page.getTuple(i);
+            assertEquals(new IntField(EXAMPLE_VALUES[i][0]), t.getField(0));
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+            assertSame(t, page.getTuple(i));
+        }
+        assertNull(page.getTuple(20));
+        assertNull(page.getField(20, 0));
+    }
+
+    /**
+     * Unit test for HeapPage.iterator(TupleCursor): one cursor is reused for
+     * every row, and retain() gives a tuple that outlives the cursor's move.
+     */
+    @Test public void cursorIterator() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        TupleCursor cursor = new TupleCursor(Utility.getTupleDesc(2));
+        Iterator<Tuple> it = page.iterator(cursor);
+        ArrayList<Tuple> kept = new ArrayList<Tuple>();
+        int row = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertSame(cursor, t);
+            assertEquals(EXAMPLE_VALUES[row][0], cursor.getInt(0));
+            assertEquals(new IntField(EXAMPLE_VALUES[row][1]), t.getField(1));
+            assertEquals(new RecordId(pid, row), t.getRecordId());
+            kept.add(t.retain());
+            row++;
+        }
+        assertEquals(20, row);
+        for (int i = 0; i < row; i++)
+            assertEquals(new IntField(EXAMPLE_VALUES[i][0]), kept.get(i).getField(0));
+        try {
+            cursor.setField(0, new IntField(1));
+            fail("a cursor is read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    /**
+     * getPageData() reproduces the page whether or not its tuples were decoded.
+     */
+    @Test public void pageDataRoundTrip() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+        for (int i = 0; i < 20; i += 2)
+            page.getTuple(i);
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+    }
+
     /**
      * JUnit suite target
      */
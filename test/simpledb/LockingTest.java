@@ -0,0 +1,137 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LockingTest extends SimpleDbTestBase {
+
+    private static final int TIMEOUT = 100;
+
+    private BufferPool bp;
+    private HeapPageId p0, p1;
+    private TransactionId tid1, tid2;
+
+    @Before public void setUp() throws Exception {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(1, 992 * 2, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        p0 = new HeapPageId(table.getId(), 0);
+        p1 = new HeapPageId(table.getId(), 1);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+    }
+
+    /** Starts a thread requesting pid for tid and gives it TIMEOUT ms. */
+    private TestUtil.LockGrabber grab(TransactionId tid, PageId pid, Permissions perm)
+            throws Exception {
+        TestUtil.LockGrabber t = new TestUtil.LockGrabber(tid, pid, perm);
+        t.start();
+        t.join(TIMEOUT);
+        return t;
+    }
+
+    /**
+     * Shared locks are compatible with each other; an exclusive lock is
+     * compatible with neither.
+     */
+    @Test public void sharedAndExclusive() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        assertTrue(grab(tid2, p0, Permissions.READ_ONLY).acquired());
+        assertTrue(bp.holdsLock(tid1, p0));
+        assertTrue(bp.holdsLock(tid2, p0));
+
+        TestUtil.LockGrabber writer = grab(new TransactionId(), p1, Permissions.READ_WRITE);
+        assertTrue(writer.acquired());
+        assertFalse(grab(tid1, p1, Permissions.READ_ONLY).acquired());
+    }
+
+    /**
+     * A waiting request is granted once the conflicting lock is released
+     * by transactionComplete.
+     */
+    @Test public void waiterGrantedOnRelease() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        TestUtil.LockGrabber t = grab(tid2, p0, Permissions.READ_ONLY);
+        assertFalse(t.acquired());
+        bp.unpinPage(tid1, p0);
+        bp.transactionComplete(tid1);
+        t.join(TIMEOUT * 10);
+        assertTrue(t.acquired());
+        assertFalse(bp.holdsLock(tid1, p0));
+    }
+
+    /**
+     * The only reader of a page can upgrade to an exclusive lock; with a
+     * second reader the upgrade waits.
+     */
+    @Test public void upgrade() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        assertFalse(grab(tid2, p0, Permissions.READ_ONLY).acquired());
+
+        bp.getPage(tid1, p1, Permissions.READ_ONLY);
+        assertTrue(grab(tid2, p1, Permissions.READ_ONLY).acquired());
+        assertFalse(grab(tid1, p1, Permissions.READ_WRITE).acquired());
+    }
+
+    /**
+     * releasePage drops one lock before the transaction completes.
+     */
+    @Test public void releasePage() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_WRITE);
+        bp.releasePage(tid1, p0);
+        assertFalse(bp.holdsLock(tid1, p0));
+        assertTrue(grab(tid2, p0, Permissions.READ_WRITE).acquired());
+    }
+
+    /**
+     * Two transactions that each wait for a page the other holds: the one
+     * that would close the cycle is aborted, and the other proceeds once
+     * the aborted one completes.
+     */
+    @Test public void deadlockAborts() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid2, p1, Permissions.READ_ONLY);
+        TestUtil.LockGrabber t1 = grab(tid1, p1, Permissions.READ_WRITE);
+        assertFalse(t1.acquired());
+        try {
+            bp.getPage(tid2, p0, Permissions.READ_WRITE);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException expected) {
+        }
+        bp.transactionComplete(tid2, false);
+        t1.join(TIMEOUT * 10);
+        assertTrue(t1.acquired());
+    }
+
+    /**
+     * Two readers of one page that both try to upgrade deadlock too.
+     */
+    @Test public void upgradeDeadlockAborts() throws Exception {
+        bp.getPage(tid1, p0, Permissions.READ_ONLY);
+        bp.getPage(tid2, p0, Permissions.READ_ONLY);
+        TestUtil.LockGrabber t1 = grab(tid1, p0, Permissions.READ_WRITE);
+        assertFalse(t1.acquired());
+        try {
+            bp.getPage(tid2, p0, Permissions.READ_WRITE);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException expected) {
+        }
+        bp.transactionComplete(tid2, false);
+        t1.join(TIMEOUT * 10);
+        assertTrue(t1.acquired());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockingTest.class);
+    }
+}
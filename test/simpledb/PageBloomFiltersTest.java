@@ -0,0 +1,180 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PageBloomFiltersTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 2;
+    private static final int PAGES = 8;
+
+    private ArrayList<Integer> keys;
+    private File out;
+    private HeapFile hf;
+
+    /**
+     * Eight pages of a unique even key, in no order, and a value cycling
+     * through 0..9, with 1% filters on the key.
+     */
+    @Before public void setUp() throws Exception {
+        int slots = TestUtil.slotsPerPage(COLUMNS);
+        keys = new ArrayList<Integer>();
+        for (int i = 0; i < slots * PAGES; i++)
+            keys.add(i * 2);
+        Collections.shuffle(keys, new Random(25));
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < keys.size(); i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(keys.get(i), i % 10)));
+        out = TestUtil.createTempFile("bloom", ".dat");
+        HeapFileEncoder.convert(tuples, out, BufferPool.getPageSize(), COLUMNS);
+        hf = Utility.openHeapFile(COLUMNS, out);
+        TransactionId tid = new TransactionId();
+        hf.buildBloomFilters(tid, new int[] { 0 }, 0.01);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @After public void tearDown() throws Exception {
+        hf.close();
+        TestUtil.deleteSideFiles(out);
+    }
+
+    private static Predicate pred(int field, Predicate.Op op, int value) {
+        return new Predicate(field, op, new IntField(value));
+    }
+
+    /**
+     * Every page's filter holds every key on it, and claims few of the
+     * keys it doesn't hold.
+     */
+    @Test public void noFalseNegatives() throws Exception {
+        PageBloomFilters bf = hf.getBloomFilters();
+        int slots = keys.size() / PAGES;
+        for (int i = 0; i < keys.size(); i++)
+            assertTrue(bf.mightContain(i / slots, pred(0, Predicate.Op.EQUALS, keys.get(i))));
+        int claimed = 0;
+        for (int k = 1; k < 20000; k += 2) {
+            for (int pg = 0; pg < PAGES; pg++) {
+                if (bf.mightContain(pg, pred(0, Predicate.Op.EQUALS, k)))
+                    claimed++;
+            }
+        }
+        assertTrue("false positive rate " + claimed / (10000.0 * PAGES),
+                claimed < 10000 * PAGES * 0.03);
+    }
+
+    /**
+     * A lookup on the key reads about one page; other predicates read them
+     * all.
+     */
+    @Test public void lookupsSkipPages() throws Exception {
+        TransactionId tid = new TransactionId();
+        int read = 0;
+        for (int i = 0; i < keys.size(); i += 97) {
+            int[] r = TestUtil.scanMatching(hf, tid, pred(0, Predicate.Op.EQUALS, keys.get(i)));
+            assertEquals(1, r[0]);
+            read += PAGES - r[1];
+        }
+        int lookups = (keys.size() + 96) / 97;
+        assertTrue(read < lookups * 1.2);
+        assertEquals(0, TestUtil.scanMatching(hf, tid, pred(0, Predicate.Op.EQUALS, 1))[0]);
+        assertEquals(0, TestUtil.scanMatching(hf, tid, pred(0, Predicate.Op.GREATER_THAN, 100))[1]);
+        assertEquals(0, TestUtil.scanMatching(hf, tid, pred(1, Predicate.Op.EQUALS, 3))[1]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An insert adds its key to its page's filter at once, and the filter
+     * is written with the page.
+     */
+    @Test public void insertAddsKey() throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate p = pred(0, Predicate.Op.EQUALS, 12345);
+        assertArrayEquals(new int[] { 0, PAGES }, TestUtil.scanMatching(hf, tid, p));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(12345, COLUMNS));
+        assertEquals(1, TestUtil.scanMatching(hf, tid, p)[0]);
+        Database.getBufferPool().transactionComplete(tid);
+
+        int bits = hf.getBloomFilters().getBits();
+        hf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf = Utility.openHeapFile(COLUMNS, out);
+        assertEquals(bits, hf.getBloomFilters().getBits());
+        tid = new TransactionId();
+        int[] r = TestUtil.scanMatching(hf, tid, p);
+        assertEquals(1, r[0]);
+        assertTrue(r[1] >= PAGES - 1);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Deletes, as part of tid, the first tuple of page 0.
+     *
+     * @return the key of the tuple deleted
+     */
+    private int deleteFirst(TransactionId tid) throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+        Tuple t = page.getTuple(0);
+        bp.deleteTuple(tid, t);
+        bp.unpinPage(tid, pid);
+        return ((IntField) t.getField(0)).getValue();
+    }
+
+    /**
+     * A lookup in a snapshot still finds a key a commit deleted since,
+     * though the commit rebuilt the page's filter without it.
+     */
+    @Test public void snapshotFindsDeletedKey() throws Exception {
+        TransactionId reader = new TransactionId();
+        Database.getBufferPool().beginSnapshot(reader);
+        TransactionId tid = new TransactionId();
+        Predicate p = pred(0, Predicate.Op.EQUALS, deleteFirst(tid));
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertArrayEquals(new int[] { 1, 0 }, TestUtil.scanMatching(hf, reader, p));
+        Database.getBufferPool().transactionComplete(reader);
+        tid = new TransactionId();
+        assertEquals(0, TestUtil.scanMatching(hf, tid, p)[0]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A delete flushed before its transaction aborts leaves the key in the
+     * page's filter, for the rollback to restore.
+     */
+    @Test public void flushedDeleteKeepsKey() throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate p = pred(0, Predicate.Op.EQUALS, deleteFirst(tid));
+        Database.getBufferPool().flushAllPages();
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertTrue(hf.getBloomFilters().mightContain(0, p));
+    }
+
+    /** A rate that isn't a probability is refused. */
+    @Test(expected = IllegalArgumentException.class)
+    public void badRate() throws Exception {
+        TransactionId tid = new TransactionId();
+        hf.buildBloomFilters(tid, new int[] { 1 }, 1.5);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageBloomFiltersTest.class);
+    }
+}
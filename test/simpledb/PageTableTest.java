@@ -0,0 +1,77 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PageTableTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for PageTable.get, put and remove.
+     */
+    @Test public void putGetRemove() {
+        PageTable t = new PageTable(4);
+        long a = HeapPageId.key(1, 0);
+        long b = HeapPageId.key(1, 1);
+        assertEquals(-1, t.get(a));
+        t.put(a, 3);
+        t.put(b, 0);
+        assertEquals(3, t.get(a));
+        assertEquals(0, t.get(b));
+        assertEquals(2, t.size());
+        assertEquals(3, t.remove(a));
+        assertEquals(-1, t.get(a));
+        assertEquals(0, t.get(b));
+        assertEquals(-1, t.remove(a));
+        assertEquals(1, t.size());
+    }
+
+    /**
+     * Removing entries from the middle of long probe runs, including runs
+     * that wrap past the end of the table, keeps every other key reachable.
+     */
+    @Test public void randomChurn() {
+        final int max = 64;
+        PageTable t = new PageTable(max);
+        HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+        Random r = new Random(133);
+        for (int i = 0; i < 20000; i++) {
+            long key = HeapPageId.key(r.nextInt(3), r.nextInt(200));
+            if (expected.containsKey(key)) {
+                assertEquals(expected.remove(key).intValue(), t.remove(key));
+            } else if (expected.size() < max) {
+                t.put(key, i % max);
+                expected.put(key, i % max);
+            }
+            if (i % 97 == 0) {
+                for (Map.Entry<Long, Integer> e : expected.entrySet())
+                    assertEquals(e.getValue().intValue(), t.get(e.getKey()));
+            }
+        }
+        assertEquals(expected.size(), t.size());
+    }
+
+    /**
+     * A put beyond the table's sizing is refused.
+     */
+    @Test(expected=IllegalStateException.class) public void full() {
+        PageTable t = new PageTable(2);
+        for (int i = 0; i < 10; i++)
+            t.put(HeapPageId.key(1, i), i);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageTableTest.class);
+    }
+}
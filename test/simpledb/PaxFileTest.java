@@ -0,0 +1,151 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxFileTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 5;
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private File raw, out;
+    private TupleDesc td;
+    private HeapFile rows;
+    private PaxFile pax;
+    private int slots;
+
+    /**
+     * Three and a half pages of five int columns, as a heap file and as
+     * the PaxFile transposed from it.
+     */
+    @Before public void setUp() throws Exception {
+        slots = TestUtil.slotsPerPage(COLUMNS);
+        tuples = new ArrayList<ArrayList<Integer>>();
+        raw = SystemTestUtil.createRandomHeapFileUnopened(COLUMNS, slots * 7 / 2, 1000,
+                null, tuples);
+        out = TestUtil.createTempFile("pax", ".dat");
+        td = Utility.getTupleDesc(COLUMNS);
+        HeapFileEncoder.transpose(raw, out, BufferPool.getPageSize(), td);
+        rows = new HeapFile(raw, td);
+        Database.getCatalog().addTable(rows, "rows");
+        pax = new PaxFile(out, td);
+        Database.getCatalog().addTable(pax, "pax");
+    }
+
+    @After public void tearDown() throws Exception {
+        pax.close();
+        TestUtil.deleteSideFiles(out);
+    }
+
+    /**
+     * Each field's values are stored together, after the header, where
+     * getInts reads them in bulk, and a page writes back the bytes it was
+     * read from.
+     */
+    @Test public void columnLayout() throws Exception {
+        assertEquals(raw.length(), out.length());
+        assertEquals(4, pax.numPages());
+        HeapPageId pid = new HeapPageId(pax.getId(), 1);
+        PaxPage page = (PaxPage) pax.readPage(pid);
+        int headerSize = (slots + 7) / 8;
+        byte[] data = new byte[BufferPool.getPageSize()];
+        RandomAccessFile f = new RandomAccessFile(out, "r");
+        try {
+            f.seek(BufferPool.getPageSize());
+            f.readFully(data);
+        } finally {
+            f.close();
+        }
+        assertArrayEquals(data, page.getPageData());
+        ByteBuffer b = ByteBuffer.wrap(data);
+        for (int j = 0; j < COLUMNS; j++) {
+            ArrayList<Integer> expected = tuples.get(slots + 3);
+            assertEquals((int) expected.get(j), b.getInt(headerSize + slots * 4 * j + 3 * 4));
+            assertEquals(expected.get(j), (Integer) ((IntField) page.getField(3, j)).getValue());
+        }
+        int[] values = new int[slots];
+        assertEquals(slots, page.getInts(2, values));
+        for (int i = 0; i < slots; i++)
+            assertEquals((int) tuples.get(slots + i).get(2), values[i]);
+    }
+
+    /**
+     * A scan returns the same tuples with the same RecordIds as one of the
+     * heap file, and a cursor reads the same fields.
+     */
+    @Test public void scansLikeHeapFile() throws Exception {
+        SystemTestUtil.matchTuples(pax, tuples);
+        TransactionId tid = new TransactionId();
+        DbFileIterator a = rows.iterator(tid);
+        DbFileIterator b = pax.cursorIterator(tid);
+        a.open();
+        b.open();
+        while (a.hasNext()) {
+            Tuple x = a.next();
+            TupleCursor y = (TupleCursor) b.next();
+            assertEquals(x.getRecordId().getPageId().pageNumber(),
+                    y.getRecordId().getPageId().pageNumber());
+            assertEquals(x.getRecordId().tupleno(), y.getRecordId().tupleno());
+            for (int j = 0; j < COLUMNS; j++)
+                assertEquals(((IntField) x.getField(j)).getValue(), y.getInt(j));
+        }
+        assertFalse(b.hasNext());
+        a.close();
+        b.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts, deletes and bulk loads are written back by columns, and are
+     * there when the file is opened again.
+     */
+    @Test public void writesSurviveReopen() throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        DbFileIterator it = pax.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        bp.deleteTuple(tid, first);
+        tuples.remove(SystemTestUtil.tupleToList(first));
+        bp.insertTuple(tid, pax.getId(), Utility.getHeapTuple(-1, COLUMNS));
+        tuples.add(new ArrayList<Integer>(Arrays.asList(-1, -1, -1, -1, -1)));
+        bp.transactionComplete(tid);
+
+        tid = new TransactionId();
+        BulkAppender a = pax.bulkAppend(tid);
+        for (int i = 0; i < slots * 2 + 5; i++) {
+            a.append(Utility.getHeapTuple(i, COLUMNS));
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i, i, i, i)));
+        }
+        bp.transactionComplete(tid);
+
+        pax.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pax = new PaxFile(out, td);
+        Database.getCatalog().addTable(pax, "pax");
+        assertEquals(7, pax.numPages());
+        SystemTestUtil.matchTuples(pax, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxFileTest.class);
+    }
+}
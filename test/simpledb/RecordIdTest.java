@@ -60,6 +60,9 @@ public class RecordIdTest extends SimpleDbTestBase {
      */
     @Test public void hCode() {
     	assertEquals(hrid.hashCode(), hrid2.hashCode());
+    	// tuple 0 used to hash the same as every other tuple on its page
+    	assertFalse(new RecordId(new HeapPageId(1, 0), 0).hashCode()
+    	        == new RecordId(new HeapPageId(1, 1), 0).hashCode());
     }
 
     /**
@@ -0,0 +1,205 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SnapshotTest extends SimpleDbTestBase {
+
+    private static final int TIMEOUT = 100;
+
+    private HeapFile table;
+    private BufferPool bp;
+    private HeapPageId p0;
+    private TransactionId writer;
+    /** A table loaded from text, so it has zone maps, if a test made one. */
+    private File zoned;
+
+    @Before public void setUp() throws Exception {
+        table = SystemTestUtil.createRandomHeapFile(1, 992 * 2, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        p0 = new HeapPageId(table.getId(), 0);
+        writer = new TransactionId();
+    }
+
+    @After public void tearDown() {
+        TestUtil.deleteSideFiles(table.getFile());
+        if (zoned != null)
+            TestUtil.deleteSideFiles(zoned);
+    }
+
+    /**
+     * @return a table of two int columns loaded from text, so that it has
+     *     zone maps, with a row (key, 0) for each of keys
+     */
+    private HeapFile zonedTable(int[] keys) throws Exception {
+        File text = TestUtil.createTempFile("snapshot", ".txt");
+        Writer w = new FileWriter(text);
+        try {
+            for (int key : keys)
+                w.write(key + ",0\n");
+        } finally {
+            w.close();
+        }
+        zoned = TestUtil.createTempFile("snapshot", ".dat");
+        HeapFileEncoder.convert(text, zoned, BufferPool.getPageSize(),
+                Utility.getTupleDesc(2), ',');
+        return Utility.openHeapFile(2, zoned);
+    }
+
+    /** Takes p0 exclusively for writer and dirties it. */
+    private Page dirty() throws Exception {
+        Page page = bp.getPage(writer, p0, Permissions.READ_WRITE);
+        page.markDirty(true, writer);
+        return page;
+    }
+
+    /**
+     * A snapshot reads a page another transaction holds exclusively without
+     * waiting, and sees the committed before-image rather than the writer's
+     * dirty page.
+     */
+    @Test public void readsPastWriter() throws Exception {
+        Page current = dirty();
+        TransactionId reader = new TransactionId();
+        bp.beginSnapshot(reader);
+        TestUtil.LockGrabber t = new TestUtil.LockGrabber(reader, p0, Permissions.READ_ONLY);
+        t.start();
+        t.join(TIMEOUT * 10);
+        assertTrue(t.acquired());
+
+        Page seen = bp.getPage(reader, p0, Permissions.READ_ONLY);
+        assertNotSame(current, seen);
+        assertNull(seen.isDirty());
+        assertFalse(bp.holdsLock(reader, p0));
+        bp.transactionComplete(reader);
+    }
+
+    /**
+     * A snapshot begun before a commit keeps reading the version that
+     * commit replaced; one begun after reads the page as committed. The old
+     * version is dropped once the older snapshot completes.
+     */
+    @Test public void versionsFollowCommits() throws Exception {
+        TransactionId before = new TransactionId();
+        bp.beginSnapshot(before);
+        Page current = dirty();
+        bp.unpinPage(writer, p0);
+        bp.transactionComplete(writer);
+        assertNull(current.isDirty());
+        assertEquals(1, bp.getVersionCount());
+
+        TransactionId after = new TransactionId();
+        bp.beginSnapshot(after);
+        assertSame(current, bp.getPage(after, p0, Permissions.READ_ONLY));
+        Page old = bp.getPage(before, p0, Permissions.READ_ONLY);
+        assertNotSame(current, old);
+        assertSame(old, bp.getPage(before, p0, Permissions.READ_ONLY));
+
+        bp.transactionComplete(after);
+        assertEquals(1, bp.getVersionCount());
+        bp.transactionComplete(before);
+        assertEquals(0, bp.getVersionCount());
+        assertFalse(bp.isSnapshot(before));
+    }
+
+    /**
+     * Without open snapshots, commits keep no versions.
+     */
+    @Test public void noSnapshotsNoVersions() throws Exception {
+        dirty();
+        bp.unpinPage(writer, p0);
+        bp.transactionComplete(writer);
+        assertEquals(0, bp.getVersionCount());
+    }
+
+    /**
+     * A scan in a snapshot sees neither a delete made while it runs nor the
+     * deleter's commit; a snapshot begun after the commit does.
+     */
+    @Test public void scanIgnoresConcurrentDelete() throws Exception {
+        TransactionId reader = new TransactionId();
+        bp.beginSnapshot(reader);
+        DbFileIterator it = table.iterator(reader);
+        it.open();
+        it.next();
+
+        HeapPage page = (HeapPage) bp.getPage(writer, p0, Permissions.READ_ONLY);
+        bp.deleteTuple(writer, page.getTuple(1));
+        bp.unpinPage(writer, p0);
+        bp.transactionComplete(writer);
+
+        int n = 1;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        assertEquals(992 * 2, n);
+        bp.transactionComplete(reader);
+        assertEquals(0, bp.getVersionCount());
+
+        TransactionId later = new TransactionId();
+        bp.beginSnapshot(later);
+        assertFalse(((HeapPage) bp.getPage(later, p0, Permissions.READ_ONLY)).isSlotUsed(1));
+        bp.transactionComplete(later);
+    }
+
+    /**
+     * A scan in a snapshot with a predicate pushed down still finds a row a
+     * commit deleted since, though the commit narrowed the page's zone map.
+     */
+    @Test public void predicateScanIgnoresConcurrentDelete() throws Exception {
+        HeapFile hf = zonedTable(new int[] { 5, 7 });
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        TransactionId reader = new TransactionId();
+        bp.beginSnapshot(reader);
+
+        HeapPage page = (HeapPage) bp.getPage(writer, pid, Permissions.READ_ONLY);
+        bp.deleteTuple(writer, page.getTuple(0));
+        bp.unpinPage(writer, pid);
+        bp.transactionComplete(writer);
+        assertFalse(hf.getZoneMap().mightMatch(0,
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(5))));
+
+        assertEquals(2, TestUtil.readTuples(hf, reader).size());
+        assertArrayEquals(new int[] { 1, 0 }, TestUtil.scanMatching(hf, reader,
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(5))));
+        assertArrayEquals(new int[] { 1, 0 }, TestUtil.scanMatching(hf, reader,
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(6))));
+        bp.transactionComplete(reader);
+
+        TransactionId later = new TransactionId();
+        assertArrayEquals(new int[] { 0, 1 }, TestUtil.scanMatching(hf, later,
+                new Predicate(0, Predicate.Op.LESS_THAN, new IntField(6))));
+        bp.transactionComplete(later);
+        hf.close();
+    }
+
+    /**
+     * Snapshot transactions are read-only.
+     */
+    @Test(expected=DbException.class) public void writeRejected() throws Exception {
+        TransactionId reader = new TransactionId();
+        bp.beginSnapshot(reader);
+        bp.getPage(reader, p0, Permissions.READ_WRITE);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SnapshotTest.class);
+    }
+}
@@ -0,0 +1,127 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class StringDictionaryTest extends SimpleDbTestBase {
+
+    private static final String[] CODES = { "open", "closed", "pending" };
+    private static final int ROWS = 2100;
+
+    private File in, out;
+    private TupleDesc td;
+    private HeapFile hf;
+
+    /**
+     * A table of an int and a dictionary encoded string of three values,
+     * written by HeapFileEncoder.
+     */
+    @Before public void setUp() throws Exception {
+        in = TestUtil.createTempFile("dict", ".txt");
+        out = TestUtil.createTempFile("dict", ".dat");
+        FileWriter w = new FileWriter(in);
+        for (int i = 0; i < ROWS; i++)
+            w.write(i + "," + CODES[i % CODES.length] + "\n");
+        w.close();
+        td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE },
+                new String[] { "id", "status" }, null, new boolean[] { false, true });
+        HeapFileEncoder.convert(in, out, BufferPool.getPageSize(), td, ',', 2, 1000);
+        hf = open();
+    }
+
+    @After public void tearDown() throws Exception {
+        hf.close();
+        TestUtil.deleteSideFiles(out);
+    }
+
+    private HeapFile open() {
+        HeapFile f = new HeapFile(out, td);
+        Database.getCatalog().addTable(f, "dict");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        return f;
+    }
+
+    /**
+     * An encoded string takes four bytes in a tuple, and every row with a
+     * value shares one StringField.
+     */
+    @Test public void sharedFields() throws Exception {
+        assertEquals(8, td.getSize());
+        TupleDesc plain = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        assertFalse(td.equals(plain));
+        assertTrue(td.sameFields(plain));
+        int slots = TestUtil.slotsPerPage(td);
+        assertEquals((ROWS + slots - 1) / slots, hf.numPages());
+        assertEquals(CODES.length, hf.getDictionary().size(1));
+
+        ArrayList<Tuple> rows = TestUtil.readTuples(hf);
+        assertEquals(ROWS, rows.size());
+        for (int i = 0; i < ROWS; i++) {
+            StringField f = (StringField) rows.get(i).getField(1);
+            assertEquals(CODES[i % CODES.length], f.getValue());
+            assertSame(rows.get(i % CODES.length).getField(1), f);
+        }
+    }
+
+    /**
+     * A value first stored by an insert gets the next code, which a table
+     * opened afresh still decodes.
+     */
+    @Test public void insertAddsCode() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE }));
+        t.setField(0, new IntField(-1));
+        t.setField(1, new StringField("rejected", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(CODES.length + 1, hf.getDictionary().size(1));
+
+        hf.close();
+        hf = open();
+        ArrayList<Tuple> rows = TestUtil.readTuples(hf);
+        assertEquals(ROWS + 1, rows.size());
+        Tuple last = rows.get(ROWS);
+        assertEquals(-1, ((IntField) last.getField(0)).getValue());
+        assertEquals("rejected", ((StringField) last.getField(1)).getValue());
+    }
+
+    /**
+     * An interned operand is compared by code, and agrees with comparing
+     * the strings; a value no row has can't be interned but still compares.
+     */
+    @Test public void equalityByCode() throws Exception {
+        StringField closed = hf.intern(1, "closed");
+        assertSame(hf.getDictionary().lookup(1, "closed"), closed);
+        Predicate byCode = new Predicate(1, Predicate.Op.EQUALS, closed);
+        Predicate byString = new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("closed", Type.STRING_LEN));
+        Predicate missing = new Predicate(1, Predicate.Op.NOT_EQUALS, hf.intern(1, "lost"));
+        assertNull(hf.getDictionary().lookup(1, "lost"));
+        int matches = 0;
+        for (Tuple t : TestUtil.readTuples(hf)) {
+            assertEquals(byString.filter(t), byCode.filter(t));
+            assertTrue(missing.filter(t));
+            if (byCode.filter(t))
+                matches++;
+        }
+        assertEquals(ROWS / CODES.length, matches);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StringDictionaryTest.class);
+    }
+}
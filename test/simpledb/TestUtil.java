@@ -190,6 +190,91 @@ public class TestUtil {
         return buf;
     }
 
+    /** Suffixes of the side files a HeapFile may keep next to its file. */
+    private static final String[] SIDE_FILES = { FreeSpaceMap.SUFFIX,
+        BulkAppender.SUFFIX, StringDictionary.SUFFIX, ExtentMap.SUFFIX,
+        ZoneMap.SUFFIX, PageBloomFilters.SUFFIX };
+
+    /**
+     * @return the tuple slots on a page of tuples of td
+     */
+    public static int slotsPerPage(TupleDesc td) {
+        return (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+    }
+
+    /**
+     * @return the tuple slots on a page of tuples of columns int fields
+     */
+    public static int slotsPerPage(int columns) {
+        return slotsPerPage(Utility.getTupleDesc(columns));
+    }
+
+    /**
+     * @return a new empty temporary file, deleted when the VM exits along
+     *   with any side files a table stored in it gets
+     */
+    public static File createTempFile(String prefix, String suffix) throws IOException {
+        File f = File.createTempFile(prefix, suffix);
+        f.deleteOnExit();
+        for (String side : SIDE_FILES)
+            new File(f.getPath() + side).deleteOnExit();
+        return f;
+    }
+
+    /**
+     * Deletes the side files of the table stored in f: its free space map,
+     * bulk load marker, dictionary, extent map, zone map and Bloom filters.
+     */
+    public static void deleteSideFiles(File f) {
+        for (String side : SIDE_FILES)
+            new File(f.getPath() + side).delete();
+    }
+
+    /**
+     * @return the tuples of f, read as part of tid
+     */
+    public static ArrayList<Tuple> readTuples(DbFile f, TransactionId tid)
+            throws DbException, TransactionAbortedException {
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        while (it.hasNext())
+            tuples.add(it.next());
+        it.close();
+        return tuples;
+    }
+
+    /**
+     * @return the tuples of f, read in a transaction of their own
+     */
+    public static ArrayList<Tuple> readTuples(DbFile f)
+            throws DbException, TransactionAbortedException, IOException {
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> tuples = readTuples(f, tid);
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    /**
+     * Scans f as part of tid for the tuples that satisfy p, checking that
+     * each does.
+     *
+     * @return the number of tuples, and the pages the scan skipped
+     */
+    public static int[] scanMatching(HeapFile f, TransactionId tid, Predicate p)
+            throws DbException, TransactionAbortedException {
+        SeqScan scan = new SeqScan(tid, f.getId(), "t", false, p);
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            assertTrue(p.filter(scan.next()));
+            n++;
+        }
+        int skipped = scan.getPagesSkipped();
+        scan.close();
+        return new int[] { n, skipped };
+    }
+
     /**
      * Stub DbFile class for unit testing.
      */
@@ -239,6 +324,9 @@ public class TestUtil {
 		public TupleDesc getTupleDesc() {			
 			return td;
 		}
+
+        public void close() {
+        }
     }
 
     /**
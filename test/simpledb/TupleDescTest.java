@@ -167,6 +167,92 @@ public class TupleDescTest extends SimpleDbTestBase {
         assertFalse(intString.equals(singleInt2));
     }
 
+    /**
+     * Unit test for TupleDesc.getFieldOffset()
+     */
+    @Test public void getFieldOffset() {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        assertEquals(0, td.getFieldOffset(0));
+        assertEquals(Type.INT_TYPE.getLen(), td.getFieldOffset(1));
+        assertEquals(Type.INT_TYPE.getLen() + Type.STRING_TYPE.getLen(), td.getFieldOffset(2));
+    }
+
+    /**
+     * A declared string length sets the field's width, and TupleDescs that
+     * differ only in it are not equal; merge keeps the lengths.
+     */
+    @Test public void stringLens() {
+        Type[] types = new Type[]{Type.STRING_TYPE, Type.INT_TYPE, Type.STRING_TYPE};
+        TupleDesc td = new TupleDesc(types, new String[3], new int[]{8, 0, 16});
+        assertEquals(8, td.getStringLen(0));
+        assertEquals(Type.STRING_LEN, td.getStringLen(1));
+        assertEquals(16, td.getStringLen(2));
+        assertEquals(12, td.getFieldOffset(1));
+        assertEquals(16, td.getFieldOffset(2));
+        assertEquals(36, td.getSize());
+
+        TupleDesc same = new TupleDesc(types, new String[]{"a", "b", "c"}, td.getStringLens());
+        assertEquals(td, same);
+        assertEquals(td.hashCode(), same.hashCode());
+        assertFalse(td.equals(new TupleDesc(types)));
+        assertFalse(td.equals(new TupleDesc(types, new String[3], new int[]{16, 0, 8})));
+
+        TupleDesc merged = TupleDesc.merge(td, new TupleDesc(types));
+        assertEquals(td.getSize() + new TupleDesc(types).getSize(), merged.getSize());
+        assertEquals(16, merged.getStringLen(2));
+        assertEquals(Type.STRING_LEN, merged.getStringLen(3));
+    }
+
+    /**
+     * fieldNameToIndex() finds the first field with a name, even after
+     * unnamed fields.
+     */
+    @Test public void nameToIdFirstMatch() {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+                new String[]{null, "a", "a"});
+        assertEquals(1, td.fieldNameToIndex("a"));
+    }
+
+    /**
+     * Dictionary encoding changes the layout, so an encoded TupleDesc does
+     * not equal a plain one, though their fields hold the same values.
+     */
+    @Test public void dictionaryEquality() {
+        Type[] types = new Type[]{Type.INT_TYPE, Type.STRING_TYPE};
+        TupleDesc plain = new TupleDesc(types);
+        TupleDesc encoded = new TupleDesc(types, new String[2], null, new boolean[]{false, true});
+        TupleDesc encodedToo = new TupleDesc(types, new String[]{"a", "b"}, null,
+                encoded.getDictionaryEncoded());
+        assertFalse(encoded.equals(plain));
+        assertFalse(plain.equals(encoded));
+        assertFalse(encoded.hashCode() == plain.hashCode());
+        assertEquals(encoded, encodedToo);
+        assertEquals(encoded.hashCode(), encodedToo.hashCode());
+
+        assertTrue(encoded.sameFields(plain));
+        assertTrue(plain.sameFields(encoded));
+        assertFalse(plain.sameFields(new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE})));
+        assertFalse(plain.sameFields(new TupleDesc(types, new String[2], new int[]{0, 8})));
+    }
+
+    /**
+     * Equal TupleDescs have equal hash codes, so they can be used as keys.
+     */
+    @Test public void testHashCode() {
+        TupleDesc intString = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        TupleDesc named = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE},
+                new String[]{"x", "y"});
+        TupleDesc stringInt = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE});
+        assertEquals(intString, named);
+        assertEquals(intString.hashCode(), named.hashCode());
+        assertFalse(intString.hashCode() == stringInt.hashCode());
+
+        java.util.HashMap<TupleDesc, String> map = new java.util.HashMap<TupleDesc, String>();
+        map.put(intString, "int, string");
+        assertEquals("int, string", map.get(named));
+        assertNull(map.get(stringInt));
+    }
+
     /**
      * JUnit suite target
      */
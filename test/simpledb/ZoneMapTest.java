@@ -0,0 +1,159 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 2;
+
+    private File out;
+    private HeapFile hf;
+    private int slots, rows;
+
+    /**
+     * Ten pages, the last short three rows, of a time and a value that
+     * cycles through 0..99, loaded in time order from text.
+     */
+    @Before public void setUp() throws Exception {
+        slots = TestUtil.slotsPerPage(COLUMNS);
+        rows = slots * 10 - 3;
+        File text = TestUtil.createTempFile("zones", ".txt");
+        Writer w = new FileWriter(text);
+        try {
+            for (int i = 0; i < rows; i++)
+                w.write(i + "," + (i % 100) + "\n");
+        } finally {
+            w.close();
+        }
+        out = TestUtil.createTempFile("zones", ".dat");
+        HeapFileEncoder.convert(text, out, BufferPool.getPageSize(),
+                Utility.getTupleDesc(COLUMNS), ',');
+        hf = Utility.openHeapFile(COLUMNS, out);
+    }
+
+    @After public void tearDown() throws Exception {
+        hf.close();
+        TestUtil.deleteSideFiles(out);
+    }
+
+    /** @return the tuples of hf that satisfy p, checking the pages skipped */
+    private int count(TransactionId tid, Predicate p, int expectSkipped) throws Exception {
+        int[] r = TestUtil.scanMatching(hf, tid, p);
+        assertEquals(expectSkipped, r[1]);
+        return r[0];
+    }
+
+    private static Predicate pred(int field, Predicate.Op op, int value) {
+        return new Predicate(field, op, new IntField(value));
+    }
+
+    /**
+     * A range on the load order reads only the pages holding it; one on a
+     * field spread over every page reads them all.
+     */
+    @Test public void rangesSkipPages() throws Exception {
+        assertTrue(ZoneMap.fileFor(out).exists());
+        assertEquals(10 * COLUMNS * 8, ZoneMap.fileFor(out).length());
+        TransactionId tid = new TransactionId();
+        assertEquals(rows - slots * 8,
+                count(tid, pred(0, Predicate.Op.GREATER_THAN_OR_EQ, slots * 8), 8));
+        assertEquals(slots, count(tid, pred(0, Predicate.Op.LESS_THAN, slots), 9));
+        assertEquals(1, count(tid, pred(0, Predicate.Op.EQUALS, slots * 5 + 7), 9));
+        assertEquals(0, count(tid, pred(0, Predicate.Op.GREATER_THAN, rows), 10));
+        assertEquals((rows - 43) / 100 + 1, count(tid, pred(1, Predicate.Op.EQUALS, 42), 0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An insert widens its page's range at once, so its own transaction
+     * finds the tuple, and the page's range is written with the page.
+     */
+    @Test public void insertWidensRange() throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate negative = pred(0, Predicate.Op.LESS_THAN, 0);
+        assertEquals(0, count(tid, negative, 10));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(-5, COLUMNS));
+        assertEquals(1, count(tid, negative, 9));
+        Database.getBufferPool().transactionComplete(tid);
+
+        hf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        hf = Utility.openHeapFile(COLUMNS, out);
+        tid = new TransactionId();
+        assertEquals(1, count(tid, negative, 9));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A delete flushed before its transaction aborts leaves the page's
+     * range wide enough for the rows a rollback restores; one that commits
+     * narrows it.
+     */
+    @Test public void flushedDeleteKeepsRange() throws Exception {
+        Predicate first = pred(0, Predicate.Op.LESS_THAN, 1);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        TransactionId tid = new TransactionId();
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid,
+                Permissions.READ_ONLY);
+        Database.getBufferPool().deleteTuple(tid, page.getTuple(0));
+        Database.getBufferPool().unpinPage(tid, pid);
+        Database.getBufferPool().flushAllPages();
+        assertTrue(hf.getZoneMap().mightMatch(0, first));
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertTrue(hf.getZoneMap().mightMatch(0, first));
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+        Database.getBufferPool().deleteTuple(tid, page.getTuple(1));
+        Database.getBufferPool().unpinPage(tid, pid);
+        Database.getBufferPool().transactionComplete(tid);
+        assertFalse(hf.getZoneMap().mightMatch(0, pred(0, Predicate.Op.LESS_THAN, 2)));
+    }
+
+    /**
+     * Pages bulk loaded get their ranges as they are written, and an abort
+     * takes the ranges off with the pages.
+     */
+    @Test public void bulkAppendKeepsRanges() throws Exception {
+        Predicate big = pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 1000000);
+        TransactionId tid = new TransactionId();
+        BulkAppender a = hf.bulkAppend(tid);
+        for (int i = 0; i < slots * 2; i++)
+            a.append(Utility.getHeapTuple(1000000 + i, COLUMNS));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(12, hf.numPages());
+        assertEquals(12 * COLUMNS * 8, ZoneMap.fileFor(out).length());
+
+        tid = new TransactionId();
+        a = hf.bulkAppend(tid);
+        for (int i = 0; i < slots * (BulkAppender.BATCH_PAGES + 1); i++)
+            a.append(Utility.getHeapTuple(2000000 + i, COLUMNS));
+        assertTrue(ZoneMap.fileFor(out).length() > 12 * COLUMNS * 8);
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(12 * COLUMNS * 8, ZoneMap.fileFor(out).length());
+
+        tid = new TransactionId();
+        assertEquals(slots * 2, count(tid, big, 10));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,92 @@
+package simpledb.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.HeapFile;
+import simpledb.HeapFileEncoder;
+import simpledb.Utility;
+
+/**
+ * Helpers shared by the benchmarks in this package. Benchmarks are plain
+ * main() programs rather than JUnit tests so that they stay out of the
+ * test and systemtest targets; run one with
+ * <code>ant runbench -Dbench=HeapFileScanBench</code>.
+ */
+public class BenchUtil {
+
+    /**
+     * Creates a heap file of numPages full pages of random integer tuples.
+     * One full page is encoded and then written numPages times, so building
+     * a multi-GB table does not need the tuples in memory.
+     */
+    public static File createFullPageFile(int columns, int numPages, int maxValue)
+            throws IOException {
+        int perPage = (BufferPool.getPageSize() * 8) / (columns * 4 * 8 + 1);
+        Random r = new Random(columns * 31 + numPages);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(perPage);
+        for (int i = 0; i < perPage; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>(columns);
+            for (int j = 0; j < columns; j++)
+                tuple.add(r.nextInt(maxValue));
+            tuples.add(tuple);
+        }
+        File one = File.createTempFile("benchpage", ".dat");
+        one.deleteOnExit();
+        HeapFileEncoder.convert(tuples, one, BufferPool.getPageSize(), columns);
+        byte[] page = readAll(one);
+
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(f), 1 << 20);
+        for (int i = 0; i < numPages; i++)
+            os.write(page, 0, BufferPool.getPageSize());
+        os.close();
+        return f;
+    }
+
+    /** Creates a table with createFullPageFile and adds it to the catalog. */
+    public static HeapFile createFullPageTable(int columns, int numPages)
+            throws IOException {
+        return Utility.openHeapFile(columns, createFullPageFile(columns, numPages, 1 << 16));
+    }
+
+    static byte[] readAll(File f) throws IOException {
+        byte[] buf = new byte[(int) f.length()];
+        java.io.DataInputStream in = new java.io.DataInputStream(new java.io.FileInputStream(f));
+        in.readFully(buf);
+        in.close();
+        return buf;
+    }
+
+    /** Reads the raw bytes of one page of hf, bypassing HeapPage. */
+    public static byte[] readPageBytes(HeapFile hf, int pgNo) throws IOException {
+        byte[] buf = new byte[BufferPool.getPageSize()];
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(hf.getFile(), "r");
+        try {
+            raf.seek((long) pgNo * buf.length);
+            raf.readFully(buf);
+        } finally {
+            raf.close();
+        }
+        return buf;
+    }
+
+    /** Parses args[i] as an int, falling back to def. */
+    public static int intArg(String[] args, int i, int def) {
+        return args.length > i ? Integer.parseInt(args[i]) : def;
+    }
+
+    /** Prints one result line in a fixed format. */
+    public static void report(String name, long bytes, long nanos) {
+        double secs = nanos / 1e9;
+        System.out.printf("%-32s %10.1f ms %10.1f MB/s%n", name, nanos / 1e6,
+                bytes / (1024.0 * 1024.0) / secs);
+    }
+}
@@ -0,0 +1,117 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapFileEncoder;
+import simpledb.IntField;
+import simpledb.Predicate;
+import simpledb.SeqScan;
+import simpledb.TransactionId;
+import simpledb.Type;
+import simpledb.TupleDesc;
+
+/**
+ * Encodes a CSV of a wide log table, a request id in no order and seven
+ * other int columns, into a heap file, then for each of several target
+ * false positive rates builds Bloom filters on the request id and looks
+ * up ids that are in the table and ids that aren't. Reports the size of
+ * the filters, the measured false positive rate (the share of pages
+ * lacking an id that a lookup still read) and the time per lookup, next
+ * to that of lookups by full scan.
+ * <p>
+ * Usage: BloomLookupBench [rows] [lookups]
+ */
+public class BloomLookupBench {
+
+    /** Request ids are i * ID_STEP; odd, so distinct for distinct i. */
+    private static final int ID_STEP = 0x9E3779B1;
+
+    public static void main(String[] args) throws Exception {
+        int rows = BenchUtil.intArg(args, 0, 1000000);
+        int lookups = BenchUtil.intArg(args, 1, 200);
+
+        File csv = File.createTempFile("bloombench", ".txt");
+        csv.deleteOnExit();
+        Random r = new Random(25);
+        BufferedWriter w = new BufferedWriter(new FileWriter(csv), 1 << 20);
+        for (int i = 0; i < rows; i++) {
+            w.append(Integer.toString(i * ID_STEP));
+            for (int j = 1; j < 8; j++)
+                w.append(',').append(Integer.toString(r.nextInt(1000)));
+            w.append('\n');
+        }
+        w.close();
+        Type[] types = new Type[8];
+        for (int j = 0; j < types.length; j++)
+            types[j] = Type.INT_TYPE;
+        TupleDesc td = new TupleDesc(types);
+
+        Database.reset();
+        File f = File.createTempFile("bloombench", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".zone").deleteOnExit();
+        File bloomFile = new File(f.getPath() + ".bloom");
+        bloomFile.deleteOnExit();
+        HeapFileEncoder.convert(csv, f, BufferPool.getPageSize(), td, ',');
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, "log");
+        int pages = hf.numPages();
+        System.out.println(pages + " pages of " + rows + " rows");
+
+        int scans = Math.max(1, lookups / 50);
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++)
+            lookup(hf, r.nextInt(rows) * ID_STEP);
+        System.out.printf("%-40s %8.3f ms/lookup%n", "full scan",
+                (System.nanoTime() - start) / 1e6 / scans);
+
+        double[] rates = { 0.1, 0.01, 0.001 };
+        for (double rate : rates) {
+            TransactionId tid = new TransactionId();
+            start = System.nanoTime();
+            hf.buildBloomFilters(tid, new int[] { 0 }, rate);
+            Database.getBufferPool().transactionComplete(tid);
+            long build = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long read = 0;
+            for (int i = 0; i < lookups; i++)
+                read += pages - lookup(hf, r.nextInt(rows) * ID_STEP);
+            double hit = (System.nanoTime() - start) / 1e6 / lookups;
+            start = System.nanoTime();
+            long falsePositives = 0;
+            for (int i = 0; i < lookups; i++)
+                falsePositives += pages - lookup(hf, (rows + r.nextInt(rows)) * ID_STEP);
+            double miss = (System.nanoTime() - start) / 1e6 / lookups;
+            // a hit reads its own page and, like a miss, the false positives
+            double measured = (double) falsePositives / ((long) lookups * pages);
+            System.out.printf("target %-6s filters %6.1f%% of table, built in %.0f ms%n",
+                    rate, 100.0 * bloomFile.length() / f.length(), build / 1e6);
+            System.out.printf("  measured false positive rate %.5f, %.2f pages read per hit%n",
+                    measured, (double) read / lookups);
+            System.out.printf("  %8.3f ms/lookup hit, %8.3f ms/lookup miss%n", hit, miss);
+        }
+        hf.close();
+        Database.getCatalog().clear();
+    }
+
+    /** Looks id up in hf, and returns the pages the scan skipped. */
+    private static int lookup(HeapFile hf, int id) throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(0, Predicate.Op.EQUALS, new IntField(id));
+        SeqScan scan = new SeqScan(tid, hf.getId(), "l", true, p);
+        scan.open();
+        while (scan.hasNext())
+            scan.next();
+        int skipped = scan.getPagesSkipped();
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return skipped;
+    }
+}
@@ -0,0 +1,47 @@
+package simpledb.bench;
+
+import simpledb.BufferPool;
+import simpledb.BulkAppender;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.TransactionId;
+import simpledb.Utility;
+
+/**
+ * Loads the same rows into an empty table twice, once a tuple at a time
+ * through BufferPool.insertTuple and once through a BulkAppender, each in
+ * one transaction, and reports the time including the commit.
+ * <p>
+ * Usage: BulkAppendBench [rows] [columns]
+ */
+public class BulkAppendBench {
+
+    public static void main(String[] args) throws Exception {
+        int rows = BenchUtil.intArg(args, 0, 1000000);
+        int columns = BenchUtil.intArg(args, 1, 4);
+        long bytes = (long) rows * columns * 4;
+
+        Database.reset();
+        // room for every page the per-tuple load dirties
+        int pages = rows / ((BufferPool.getPageSize() * 8) / (columns * 4 * 8 + 1)) + 2;
+        BufferPool bp = Database.resetBufferPool(pages);
+
+        HeapFile hf = Utility.openHeapFile(columns, BenchUtil.createFullPageFile(columns, 0, 1));
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++)
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, columns));
+        bp.transactionComplete(tid);
+        BenchUtil.report("BufferPool.insertTuple", bytes, System.nanoTime() - start);
+
+        hf = Utility.openHeapFile(columns, BenchUtil.createFullPageFile(columns, 0, 1));
+        tid = new TransactionId();
+        start = System.nanoTime();
+        BulkAppender a = hf.bulkAppend(tid);
+        for (int i = 0; i < rows; i++)
+            a.append(Utility.getHeapTuple(i, columns));
+        bp.transactionComplete(tid);
+        BenchUtil.report("BulkAppender", bytes, System.nanoTime() - start);
+        Database.getCatalog().clear();
+    }
+}
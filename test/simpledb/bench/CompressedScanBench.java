@@ -0,0 +1,98 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.DbFileIterator;
+import simpledb.HeapFile;
+import simpledb.HeapFileEncoder;
+import simpledb.TransactionId;
+import simpledb.TupleDesc;
+import simpledb.Type;
+
+/**
+ * Encodes a CSV of a fact table, a sequential id, a small status code, a
+ * year and an amount, into a heap file, compresses a copy of it, and scans
+ * both cold from the BufferPool. Reports the file sizes, and scan
+ * throughput in MB of raw pages per second, so the two rates compare rows
+ * per second; the compressed scan reads fewer bytes from disk and spends
+ * the difference decompressing.
+ * <p>
+ * Usage: CompressedScanBench [rows] [rounds]
+ * <p>
+ * The OS page cache is warmed by the first round, so later rounds show
+ * the cost of decompression rather than the I/O it saves.
+ */
+public class CompressedScanBench {
+
+    public static void main(String[] args) throws Exception {
+        int rows = BenchUtil.intArg(args, 0, 1000000);
+        int rounds = BenchUtil.intArg(args, 1, 5);
+
+        File csv = File.createTempFile("compressbench", ".txt");
+        csv.deleteOnExit();
+        Random r = new Random(22);
+        BufferedWriter w = new BufferedWriter(new FileWriter(csv), 1 << 20);
+        for (int i = 0; i < rows; i++)
+            w.append(Integer.toString(i)).append(',')
+                .append(Integer.toString(r.nextInt(8))).append(',')
+                .append(Integer.toString(2000 + i * 20 / rows)).append(',')
+                .append(Integer.toString(r.nextInt(10000))).append('\n');
+        w.close();
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE,
+                Type.INT_TYPE, Type.INT_TYPE });
+
+        Database.reset();
+        File rawFile = File.createTempFile("compressbench", ".dat");
+        rawFile.deleteOnExit();
+        HeapFileEncoder.convert(csv, rawFile, BufferPool.getPageSize(), td, ',');
+        HeapFile raw = new HeapFile(rawFile, td);
+        Database.getCatalog().addTable(raw, "raw");
+
+        File packedFile = File.createTempFile("compressbench", ".dat");
+        packedFile.deleteOnExit();
+        new File(packedFile.getPath() + ".ext").deleteOnExit();
+        long start = System.nanoTime();
+        HeapFileEncoder.compress(rawFile, packedFile, BufferPool.getPageSize());
+        BenchUtil.report("compressing", rawFile.length(), System.nanoTime() - start);
+        HeapFile packed = new HeapFile(packedFile, td);
+        Database.getCatalog().addTable(packed, "packed");
+
+        System.out.println("raw file: " + rawFile.length() + " bytes, compressed file: "
+                + packedFile.length() + " bytes, " + packed.numPages() + " pages each");
+        long bytes = rawFile.length();
+        for (int round = 0; round < rounds; round++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            start = System.nanoTime();
+            int n = scan(raw);
+            BenchUtil.report("raw pages, " + n + " rows", bytes, System.nanoTime() - start);
+
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            start = System.nanoTime();
+            n = scan(packed);
+            BenchUtil.report("compressed pages, " + n + " rows", bytes,
+                    System.nanoTime() - start);
+        }
+        raw.close();
+        packed.close();
+        Database.getCatalog().clear();
+    }
+
+    private static int scan(HeapFile hf) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+}
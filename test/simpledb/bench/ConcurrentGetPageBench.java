@@ -0,0 +1,89 @@
+package simpledb.bench;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapPageId;
+import simpledb.PageId;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+
+/**
+ * Read-only getPage throughput with 1..maxThreads threads on a pool that
+ * holds the whole table, so every call is a hit. "one monitor" wraps each
+ * call in a single shared lock, which is how the pool behaved when the page
+ * table was a Hashtable and getPage was synchronized.
+ * <p>
+ * Usage: ConcurrentGetPageBench [pages] [callsPerThread] [maxThreads]
+ */
+public class ConcurrentGetPageBench {
+
+    public static void main(String[] args) throws Exception {
+        int pages = BenchUtil.intArg(args, 0, 256);
+        int calls = BenchUtil.intArg(args, 1, 2000000);
+        int maxThreads = BenchUtil.intArg(args, 2,
+                Runtime.getRuntime().availableProcessors());
+
+        Database.reset();
+        HeapFile hf = BenchUtil.createFullPageTable(1, pages);
+        BufferPool bp = Database.resetBufferPool(pages);
+        PageId[] pids = new PageId[pages];
+        for (int i = 0; i < pages; i++) {
+            pids[i] = new HeapPageId(hf.getId(), i);
+            TransactionId tid = new TransactionId();
+            bp.getPage(tid, pids[i], Permissions.READ_ONLY);
+            bp.unpinPage(tid, pids[i]);
+        }
+
+        System.out.println("available processors: "
+                + Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run("one monitor", bp, pids, calls, threads, new Object());
+            run("page table", bp, pids, calls, threads, null);
+        }
+        Database.getCatalog().clear();
+    }
+
+    static void run(String name, final BufferPool bp, final PageId[] pids,
+            final int calls, int threads, final Object monitor) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            ts[t] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    TransactionId tid = new TransactionId();
+                    try {
+                        start.await();
+                        for (int i = 0; i < calls; i++) {
+                            PageId pid = pids[r.nextInt(pids.length)];
+                            if (monitor == null) {
+                                bp.getPage(tid, pid, Permissions.READ_ONLY);
+                                bp.unpinPage(tid, pid);
+                            } else {
+                                synchronized (monitor) {
+                                    bp.getPage(tid, pid, Permissions.READ_ONLY);
+                                    bp.unpinPage(tid, pid);
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            ts[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : ts)
+            t.join();
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("%-12s %2d threads %8.2f M getPage/s%n", name, threads,
+                (double) calls * threads / (nanos / 1e3));
+    }
+}
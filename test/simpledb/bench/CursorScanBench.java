@@ -0,0 +1,74 @@
+package simpledb.bench;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.DbFileIterator;
+import simpledb.HeapFile;
+import simpledb.IntField;
+import simpledb.TransactionId;
+import simpledb.Tuple;
+import simpledb.TupleCursor;
+
+/**
+ * Compares a full scan that sums one column through HeapFile.iterator,
+ * which returns a decoded Tuple per row, with one through
+ * HeapFile.cursorIterator, which moves a single TupleCursor over the page
+ * bytes. The buffer pool is reset before each scan so every page is freshly
+ * read, and the heap allocated by each scan is reported.
+ * <p>
+ * Usage: CursorScanBench [numPages] [rounds]
+ */
+public class CursorScanBench {
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = BenchUtil.intArg(args, 0, 2000);
+        int rounds = BenchUtil.intArg(args, 1, 5);
+
+        Database.reset();
+        HeapFile hf = BenchUtil.createFullPageTable(4, numPages);
+        long bytes = (long) numPages * BufferPool.getPageSize();
+
+        for (int r = 0; r < rounds; r++) {
+            Database.resetBufferPool(numPages + 10);
+            long alloc = LazyDecodeBench.allocatedBytes();
+            long start = System.nanoTime();
+            DbFileIterator it = hf.iterator(new TransactionId());
+            it.open();
+            long sum = 0, rows = 0;
+            while (it.hasNext()) {
+                sum += ((IntField) it.next().getField(0)).getValue();
+                rows++;
+            }
+            it.close();
+            report("tuple per row", bytes, System.nanoTime() - start,
+                    LazyDecodeBench.allocatedBytes() - alloc, rows);
+            sink = sum;
+
+            Database.resetBufferPool(numPages + 10);
+            alloc = LazyDecodeBench.allocatedBytes();
+            start = System.nanoTime();
+            it = hf.cursorIterator(new TransactionId());
+            it.open();
+            sum = 0;
+            rows = 0;
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                sum += ((TupleCursor) t).getInt(0);
+                rows++;
+            }
+            it.close();
+            report("reused cursor", bytes, System.nanoTime() - start,
+                    LazyDecodeBench.allocatedBytes() - alloc, rows);
+            sink = sum;
+        }
+        Database.getCatalog().clear();
+    }
+
+    static void report(String name, long bytes, long nanos, long alloc, long rows) {
+        BenchUtil.report(name, bytes, nanos);
+        System.out.printf("    %d rows, %.1f bytes allocated per row%n", rows,
+                (double) alloc / rows);
+    }
+}
@@ -0,0 +1,100 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.DbFileIterator;
+import simpledb.HeapFile;
+import simpledb.HeapFileEncoder;
+import simpledb.Predicate;
+import simpledb.StringField;
+import simpledb.TransactionId;
+import simpledb.TupleDesc;
+import simpledb.Type;
+
+/**
+ * Encodes one CSV of an int and a low-cardinality string column twice, once
+ * with the string stored inline and once dictionary encoded, and scans each
+ * table testing the string for equality with one value. Reports the table
+ * sizes, and scan throughput in MB of the inline table per second, so the
+ * two rates compare rows per second.
+ * <p>
+ * Usage: DictionaryScanBench [rows] [distinct] [rounds]
+ */
+public class DictionaryScanBench {
+
+    public static void main(String[] args) throws Exception {
+        int rows = BenchUtil.intArg(args, 0, 1000000);
+        int distinct = BenchUtil.intArg(args, 1, 16);
+        int rounds = BenchUtil.intArg(args, 2, 5);
+
+        File csv = File.createTempFile("dictbench", ".txt");
+        csv.deleteOnExit();
+        Random r = new Random(21);
+        BufferedWriter w = new BufferedWriter(new FileWriter(csv), 1 << 20);
+        for (int i = 0; i < rows; i++)
+            w.append(Integer.toString(i)).append(",status-").append(
+                    Integer.toString(r.nextInt(distinct))).append('\n');
+        w.close();
+
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        String[] names = new String[] { "id", "status" };
+        TupleDesc inlineTd = new TupleDesc(types, names);
+        TupleDesc dictTd = new TupleDesc(types, names, null, new boolean[] { false, true });
+
+        Database.reset();
+        File inlineFile = File.createTempFile("dictbench", ".dat");
+        inlineFile.deleteOnExit();
+        HeapFileEncoder.convert(csv, inlineFile, BufferPool.getPageSize(), inlineTd, ',');
+        HeapFile inline = new HeapFile(inlineFile, inlineTd);
+        Database.getCatalog().addTable(inline, "inline");
+
+        File dictFile = File.createTempFile("dictbench", ".dat");
+        dictFile.deleteOnExit();
+        new File(dictFile.getPath() + ".dict").deleteOnExit();
+        HeapFileEncoder.convert(csv, dictFile, BufferPool.getPageSize(), dictTd, ',');
+        HeapFile dict = new HeapFile(dictFile, dictTd);
+        Database.getCatalog().addTable(dict, "dict");
+
+        System.out.println("inline table: " + inline.numPages() + " pages, dictionary table: "
+                + dict.numPages() + " pages");
+        long bytes = (long) inline.numPages() * BufferPool.getPageSize();
+        Predicate inlineEq = new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("status-0", Type.STRING_LEN));
+        Predicate dictEq = new Predicate(1, Predicate.Op.EQUALS, dict.intern(1, "status-0"));
+        for (int round = 0; round < rounds; round++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            long start = System.nanoTime();
+            int n = scan(inline, inlineEq);
+            BenchUtil.report("inline strings, " + n + " matches", bytes,
+                    System.nanoTime() - start);
+
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            start = System.nanoTime();
+            n = scan(dict, dictEq);
+            BenchUtil.report("dictionary codes, " + n + " matches", bytes,
+                    System.nanoTime() - start);
+        }
+        inline.close();
+        dict.close();
+        Database.getCatalog().clear();
+    }
+
+    private static int scan(HeapFile hf, Predicate p) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            if (p.filter(it.next()))
+                n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+}
@@ -0,0 +1,61 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.HeapFileEncoder;
+import simpledb.Type;
+
+/**
+ * Writes a CSV of integer columns and converts it with HeapFileEncoder on
+ * one thread and on every processor, reporting input MB/s for each.
+ * <p>
+ * Usage: HeapFileEncoderBench [csvMB] [columns] [rounds]
+ */
+public class HeapFileEncoderBench {
+
+    public static void main(String[] args) throws Exception {
+        int mb = BenchUtil.intArg(args, 0, 256);
+        int columns = BenchUtil.intArg(args, 1, 4);
+        int rounds = BenchUtil.intArg(args, 2, 3);
+
+        File csv = File.createTempFile("encoderbench", ".txt");
+        csv.deleteOnExit();
+        Random r = new Random(19);
+        BufferedWriter w = new BufferedWriter(new FileWriter(csv), 1 << 20);
+        long limit = (long) mb << 20;
+        long written = 0;
+        StringBuilder line = new StringBuilder();
+        while (written < limit) {
+            line.setLength(0);
+            for (int j = 0; j < columns; j++) {
+                if (j > 0)
+                    line.append(',');
+                line.append(r.nextInt(1 << 24));
+            }
+            line.append('\n');
+            w.append(line);
+            written += line.length();
+        }
+        w.close();
+
+        File out = File.createTempFile("encoderbench", ".dat");
+        out.deleteOnExit();
+        Type[] types = new Type[columns];
+        for (int j = 0; j < columns; j++)
+            types[j] = Type.INT_TYPE;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int round = 0; round < rounds; round++) {
+            for (int threads : new int[] { 1, cpus }) {
+                long start = System.nanoTime();
+                HeapFileEncoder.convert(csv, out, BufferPool.getPageSize(), columns, types,
+                        ',', threads, 4 << 20);
+                BenchUtil.report("convert, " + threads + " thread(s)", csv.length(),
+                        System.nanoTime() - start);
+            }
+        }
+    }
+}
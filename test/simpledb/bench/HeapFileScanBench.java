@@ -0,0 +1,74 @@
+package simpledb.bench;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapPage;
+import simpledb.HeapPageId;
+
+/**
+ * Compares cold-scan throughput of HeapFile.readPage, using positional reads
+ * and using the memory-mapped mode, against the old read path, which
+ * opened, skipped and closed a fresh stream for every page.
+ * <p>
+ * Usage: HeapFileScanBench [numPages] [rounds]
+ * <p>
+ * "Cold" here means nothing is cached in the BufferPool; the OS page cache
+ * is warmed by the first round, so the numbers isolate per-call overhead
+ * rather than device speed.
+ */
+public class HeapFileScanBench {
+
+    public static void main(String[] args) throws Exception {
+        int numPages = BenchUtil.intArg(args, 0, 4096);
+        int rounds = BenchUtil.intArg(args, 1, 5);
+
+        Database.reset();
+        HeapFile hf = BenchUtil.createFullPageTable(2, numPages);
+        HeapFile mapped = new HeapFile(hf.getFile(), hf.getTupleDesc(), true);
+        long bytes = (long) numPages * BufferPool.getPageSize();
+
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < numPages; i++)
+                legacyReadPage(hf.getFile(), new HeapPageId(hf.getId(), i));
+            BenchUtil.report("stream per page (round " + r + ")", bytes,
+                    System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < numPages; i++)
+                hf.readPage(new HeapPageId(hf.getId(), i));
+            BenchUtil.report("positional channel (round " + r + ")", bytes,
+                    System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < numPages; i++)
+                mapped.readPage(new HeapPageId(hf.getId(), i));
+            BenchUtil.report("memory-mapped (round " + r + ")", bytes,
+                    System.nanoTime() - start);
+        }
+        mapped.close();
+        Database.getCatalog().clear();
+    }
+
+    /** The read path HeapFile used before it kept a FileChannel open. */
+    static HeapPage legacyReadPage(File f, HeapPageId id) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f));
+        try {
+            byte pageBuf[] = new byte[BufferPool.getPageSize()];
+            long offset = (long) id.pageNumber() * BufferPool.getPageSize();
+            if (bis.skip(offset) != offset)
+                throw new IllegalArgumentException("Unable to seek to correct place in heapfile");
+            if (bis.read(pageBuf, 0, pageBuf.length) < pageBuf.length)
+                throw new IllegalArgumentException("Unable to read page");
+            return new HeapPage(id, pageBuf);
+        } finally {
+            bis.close();
+        }
+    }
+}
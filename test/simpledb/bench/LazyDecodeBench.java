@@ -0,0 +1,88 @@
+package simpledb.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapPage;
+import simpledb.HeapPageId;
+import simpledb.IntField;
+import simpledb.Tuple;
+
+/**
+ * Measures the heap allocated by a selective scan over HeapPages, comparing
+ * the page iterator, which builds a Tuple for every used slot, with testing
+ * one column through HeapPage.getField and building only the matching
+ * tuples. Each page is constructed afresh, as after a buffer pool miss.
+ * <p>
+ * Usage: LazyDecodeBench [numPages] [selectivityPercent] [rounds]
+ */
+public class LazyDecodeBench {
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = BenchUtil.intArg(args, 0, 2000);
+        int percent = BenchUtil.intArg(args, 1, 5);
+        int rounds = BenchUtil.intArg(args, 2, 5);
+
+        Database.reset();
+        HeapFile hf = BenchUtil.createFullPageTable(4, numPages);
+        // values are uniform in [0, 65536)
+        int bound = (1 << 16) / 100 * percent;
+        byte[][] pages = new byte[numPages][];
+        for (int i = 0; i < numPages; i++)
+            pages[i] = BenchUtil.readPageBytes(hf, i);
+        long bytes = (long) numPages * BufferPool.getPageSize();
+
+        for (int r = 0; r < rounds; r++) {
+            long alloc = allocatedBytes();
+            long start = System.nanoTime();
+            long matches = 0;
+            for (int i = 0; i < numPages; i++) {
+                HeapPage p = new HeapPage(new HeapPageId(hf.getId(), i), pages[i]);
+                Iterator<Tuple> it = p.iterator();
+                while (it.hasNext()) {
+                    Tuple t = it.next();
+                    if (((IntField) t.getField(0)).getValue() < bound)
+                        matches++;
+                }
+            }
+            report("iterator, every tuple", bytes, System.nanoTime() - start,
+                    allocatedBytes() - alloc, numPages, matches);
+
+            alloc = allocatedBytes();
+            start = System.nanoTime();
+            matches = 0;
+            for (int i = 0; i < numPages; i++) {
+                HeapPage p = new HeapPage(new HeapPageId(hf.getId(), i), pages[i]);
+                for (int s = 0; s < p.getNumSlots(); s++) {
+                    IntField f = (IntField) p.getField(s, 0);
+                    if (f != null && f.getValue() < bound) {
+                        sink += p.getTuple(s).hashCode();
+                        matches++;
+                    }
+                }
+            }
+            report("getField, matches only", bytes, System.nanoTime() - start,
+                    allocatedBytes() - alloc, numPages, matches);
+        }
+        Database.getCatalog().clear();
+    }
+
+    static void report(String name, long bytes, long nanos, long alloc,
+            int numPages, long matches) {
+        BenchUtil.report(name, bytes, nanos);
+        System.out.printf("    %d matches, %.1f KB allocated per page, %.0f MB/s allocation%n",
+                matches, alloc / 1024.0 / numPages,
+                alloc / (1024.0 * 1024.0) / (nanos / 1e9));
+    }
+
+    /** @return bytes allocated by this thread so far */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
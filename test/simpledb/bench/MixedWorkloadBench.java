@@ -0,0 +1,92 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.DbFileIterator;
+import simpledb.HeapFile;
+import simpledb.HeapPageId;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+
+/**
+ * Point lookups against a small hot table while another thread repeatedly
+ * scans a large table, with and without scan rings. Reports the hit rate
+ * the lookups see.
+ * <p>
+ * Usage: MixedWorkloadBench [poolPages] [hotPages] [scanPages] [lookups]
+ * <p>
+ * Lookups are paced (a 1 ms pause every 10) so that the scan streams many
+ * pages through the pool between two touches of the same hot page.
+ */
+public class MixedWorkloadBench {
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = BenchUtil.intArg(args, 0, 200);
+        int hotPages = BenchUtil.intArg(args, 1, 150);
+        int scanPages = BenchUtil.intArg(args, 2, 2000);
+        int lookups = BenchUtil.intArg(args, 3, 20000);
+
+        Database.reset();
+        HeapFile hot = BenchUtil.createFullPageTable(1, hotPages);
+        HeapFile big = BenchUtil.createFullPageTable(1, scanPages);
+
+        System.setProperty(BufferPool.RING_PROPERTY, "0");
+        run("without scan ring", poolPages, hot, big, lookups);
+        System.clearProperty(BufferPool.RING_PROPERTY);
+        run("with scan ring", poolPages, hot, big, lookups);
+        Database.getCatalog().clear();
+    }
+
+    static void run(String name, int poolPages, final HeapFile hot, final HeapFile big,
+            int lookups) throws Exception {
+        final BufferPool bp = Database.resetBufferPool(poolPages);
+        final TransactionId tid = new TransactionId();
+        final boolean[] done = new boolean[1];
+        Thread scanner = new Thread() {
+            public void run() {
+                try {
+                    DbFileIterator it = big.iterator(tid);
+                    while (!done[0]) {
+                        it.open();
+                        while (it.hasNext() && !done[0])
+                            it.next();
+                        it.close();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        scanner.start();
+
+        // warm up, then count only the lookups' own hits
+        Random r = new Random(42);
+        int hotPages = hot.numPages();
+        for (int i = 0; i < hotPages; i++) {
+            HeapPageId pid = new HeapPageId(hot.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+        long hits = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            long before = bp.getMissCount();
+            HeapPageId pid = new HeapPageId(hot.getId(), r.nextInt(hotPages));
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+            // the scanner may miss concurrently, so this undercounts hits
+            if (bp.getMissCount() == before)
+                hits++;
+            // pace the lookups so the scan gets through many pages between them
+            if (i % 10 == 0)
+                Thread.sleep(1);
+        }
+        long nanos = System.nanoTime() - start;
+        done[0] = true;
+        scanner.join();
+        System.out.printf("%-20s lookup hit rate >= %5.1f%%  (%d lookups in %.1f ms, %d evictions)%n",
+                name, 100.0 * hits / lookups, lookups, nanos / 1e6, bp.getEvictionCount());
+    }
+}
@@ -0,0 +1,71 @@
+package simpledb.bench;
+
+import java.util.Iterator;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapPage;
+import simpledb.HeapPageId;
+import simpledb.LruEvictionPolicy;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+import simpledb.TupleCursor;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Fills an on-heap and an off-heap BufferPool with the same table and
+ * reports the Java heap each takes (via SystemTestUtil.getMemoryFootprint)
+ * and the time for cursor scans of the resident pages.
+ * <p>
+ * Usage: OffHeapPoolBench [numPages] [rounds]
+ */
+public class OffHeapPoolBench {
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = BenchUtil.intArg(args, 0, 8192);
+        int rounds = BenchUtil.intArg(args, 1, 3);
+
+        Database.reset();
+        HeapFile hf = BenchUtil.createFullPageTable(2, numPages);
+        long bytes = (long) numPages * BufferPool.getPageSize();
+        TransactionId tid = new TransactionId();
+
+        for (int offHeap = 0; offHeap <= 1; offHeap++) {
+            String name = offHeap == 1 ? "off-heap" : "on-heap";
+            long before = SystemTestUtil.getMemoryFootprint();
+            BufferPool bp = new BufferPool(numPages, new LruEvictionPolicy(), offHeap == 1);
+            for (int i = 0; i < numPages; i++) {
+                HeapPageId pid = new HeapPageId(hf.getId(), i);
+                bp.getPage(tid, pid, Permissions.READ_ONLY);
+                bp.unpinPage(tid, pid);
+            }
+            long heap = SystemTestUtil.getMemoryFootprint() - before;
+            System.out.printf("%-8s pool of %d pages: %8.1f MB of Java heap%n",
+                    name, numPages, heap / (1024.0 * 1024));
+
+            TupleCursor cursor = new TupleCursor(hf.getTupleDesc());
+            for (int r = 0; r < rounds; r++) {
+                long start = System.nanoTime();
+                long sum = 0;
+                for (int i = 0; i < numPages; i++) {
+                    HeapPageId pid = new HeapPageId(hf.getId(), i);
+                    HeapPage p = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+                    Iterator<?> it = p.iterator(cursor);
+                    while (it.hasNext()) {
+                        it.next();
+                        sum += cursor.getInt(0);
+                    }
+                    bp.unpinPage(tid, pid);
+                }
+                sink += sum;
+                BenchUtil.report(name + " cursor scan (round " + r + ")", bytes,
+                        System.nanoTime() - start);
+            }
+            bp = null;
+        }
+        Database.getCatalog().clear();
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb.bench;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapPageId;
+import simpledb.Permissions;
+import simpledb.TransactionId;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the memory the BufferPool's page index takes for numPages
+ * frames, now a PageTable of primitive arrays allocated with the pool, with
+ * the ConcurrentHashMap keyed by HeapPageId it replaced, filled with the
+ * same number of pages. Then times getPage hits (each followed by its
+ * unpinPage) on a resident table and reports the bytes each allocates.
+ * <p>
+ * Usage: PageTableFootprintBench [numPages] [hits]
+ */
+public class PageTableFootprintBench {
+
+    static volatile Object keep;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = BenchUtil.intArg(args, 0, 16384);
+        int hits = BenchUtil.intArg(args, 1, 2000000);
+
+        long before = SystemTestUtil.getMemoryFootprint();
+        keep = new BufferPool(numPages);
+        long poolBytes = SystemTestUtil.getMemoryFootprint() - before;
+        keep = null;
+
+        before = SystemTestUtil.getMemoryFootprint();
+        ConcurrentHashMap<HeapPageId, Object> chm = new ConcurrentHashMap<HeapPageId, Object>(
+                numPages * 2, 0.75f, Runtime.getRuntime().availableProcessors() * 4);
+        for (int i = 0; i < numPages; i++)
+            chm.put(new HeapPageId(1, i), Boolean.TRUE);
+        keep = chm;
+        long chmBytes = SystemTestUtil.getMemoryFootprint() - before;
+        keep = null;
+        chm = null;
+
+        System.out.printf("ConcurrentHashMap, %d pages: %8.1f KB (%.1f bytes/page)%n",
+                numPages, chmBytes / 1024.0, chmBytes / (double) numPages);
+        System.out.printf("empty BufferPool(%d):        %8.1f KB (%.1f bytes/page)%n",
+                numPages, poolBytes / 1024.0, poolBytes / (double) numPages);
+
+        Database.reset();
+        int resident = Math.min(numPages, 1024);
+        HeapFile hf = BenchUtil.createFullPageTable(1, resident);
+        BufferPool bp = Database.resetBufferPool(resident);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < resident; i++) {
+            HeapPageId pid = new HeapPageId(hf.getId(), i);
+            bp.getPage(tid, pid, Permissions.READ_ONLY);
+            bp.unpinPage(tid, pid);
+        }
+        for (int round = 0; round < 3; round++) {
+            long alloc = LazyDecodeBench.allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < hits; i++) {
+                HeapPageId pid = new HeapPageId(hf.getId(), i % resident);
+                keep = bp.getPage(tid, pid, Permissions.READ_ONLY);
+                bp.unpinPage(tid, pid);
+            }
+            long nanos = System.nanoTime() - start;
+            alloc = LazyDecodeBench.allocatedBytes() - alloc;
+            System.out.printf("getPage hit (round %d): %6.1f ns, %5.1f bytes allocated%n",
+                    round, nanos / (double) hits, alloc / (double) hits);
+        }
+        Database.getCatalog().clear();
+    }
+}
@@ -0,0 +1,98 @@
+package simpledb.bench;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import simpledb.HeapPageId;
+
+/**
+ * Times page-table lookups keyed by HeapPageId with the current hashCode
+ * against the decimal-concatenation hash HeapPageId used before, in both
+ * the ConcurrentHashMap the BufferPool uses and a plain HashMap. Each probe
+ * is a new HeapPageId, as in BufferPool.getPage. Also prints how many
+ * distinct hash codes each scheme gives the resident pages.
+ * <p>
+ * Usage: PageTableLookupBench [tables] [pagesPerTable] [lookups] [rounds]
+ */
+public class PageTableLookupBench {
+
+    /** A HeapPageId hashed the way HeapPageId used to be. */
+    static class LegacyPageId extends HeapPageId {
+        LegacyPageId(int tableId, int pgNo) {
+            super(tableId, pgNo);
+        }
+
+        @Override
+        public int hashCode() {
+            int lengthOfPgNm = (int) Math.floor(Math.log10(pageNumber()) + 1);
+            return (int) (pageNumber() + Math.pow(10, lengthOfPgNm) * getTableId());
+        }
+    }
+
+    static volatile long sink;
+
+    public static void main(String[] args) {
+        int tables = BenchUtil.intArg(args, 0, 8);
+        int pages = BenchUtil.intArg(args, 1, 4096);
+        int lookups = BenchUtil.intArg(args, 2, 2000000);
+        int rounds = BenchUtil.intArg(args, 3, 5);
+
+        // table ids are hashes of file names in this codebase, so spread out
+        Random r = new Random(42);
+        int[] tableIds = new int[tables];
+        for (int t = 0; t < tables; t++)
+            tableIds[t] = r.nextInt();
+        int[] probeTable = new int[lookups];
+        int[] probePage = new int[lookups];
+        for (int i = 0; i < lookups; i++) {
+            probeTable[i] = tableIds[r.nextInt(tables)];
+            probePage[i] = r.nextInt(pages);
+        }
+
+        for (int legacy = 1; legacy >= 0; legacy--) {
+            HashSet<Integer> codes = new HashSet<Integer>();
+            for (int t : tableIds)
+                for (int p = 0; p < pages; p++)
+                    codes.add(id(legacy == 1, t, p).hashCode());
+            System.out.printf("%s hash: %d distinct codes for %d pages%n",
+                    legacy == 1 ? "legacy" : "mixing", codes.size(), tables * pages);
+        }
+
+        for (int round = 0; round < rounds; round++) {
+            for (int legacy = 1; legacy >= 0; legacy--) {
+                String name = legacy == 1 ? "legacy" : "mixing";
+                Map<HeapPageId, Object> chm =
+                    new ConcurrentHashMap<HeapPageId, Object>(tables * pages * 2);
+                Map<HeapPageId, Object> hm = new HashMap<HeapPageId, Object>(tables * pages * 2);
+                for (int t : tableIds) {
+                    for (int p = 0; p < pages; p++) {
+                        chm.put(id(legacy == 1, t, p), Boolean.TRUE);
+                        hm.put(id(legacy == 1, t, p), Boolean.TRUE);
+                    }
+                }
+                time(name + " ConcurrentHashMap", chm, legacy == 1, probeTable, probePage);
+                time(name + " HashMap", hm, legacy == 1, probeTable, probePage);
+            }
+        }
+    }
+
+    static HeapPageId id(boolean legacy, int table, int page) {
+        return legacy ? new LegacyPageId(table, page) : new HeapPageId(table, page);
+    }
+
+    static void time(String name, Map<HeapPageId, Object> map, boolean legacy,
+            int[] probeTable, int[] probePage) {
+        long start = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < probeTable.length; i++) {
+            if (map.get(id(legacy, probeTable[i], probePage[i])) != null)
+                found++;
+        }
+        long nanos = System.nanoTime() - start;
+        sink += found;
+        System.out.printf("%-30s %8.1f ns/lookup%n", name, nanos / (double) probeTable.length);
+    }
+}
@@ -0,0 +1,91 @@
+package simpledb.bench;
+
+import java.io.File;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.DbFileIterator;
+import simpledb.HeapFile;
+import simpledb.IntField;
+import simpledb.Page;
+import simpledb.PageId;
+import simpledb.TransactionId;
+import simpledb.Tuple;
+import simpledb.Utility;
+
+/**
+ * Measures sequential scan time with and without read-ahead, against a
+ * table whose page reads take a fixed time, as they would from a disk that
+ * isn't in the OS cache. The consumer does a little work per tuple so that
+ * reads and processing can overlap.
+ * <p>
+ * Usage: PrefetchBench [numPages] [readMicros] [workPerTuple]
+ */
+public class PrefetchBench {
+
+    /** A HeapFile whose reads sleep for a fixed time first. */
+    static class LatentHeapFile extends HeapFile {
+        final long readNanos;
+
+        LatentHeapFile(File f, int columns, long readNanos) {
+            super(f, Utility.getTupleDesc(columns));
+            this.readNanos = readNanos;
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            long until = System.nanoTime() + readNanos;
+            try {
+                Thread.sleep(readNanos / 1000000, (int) (readNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            while (System.nanoTime() < until)
+                ; // sleep may return early
+            return super.readPage(pid);
+        }
+    }
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = BenchUtil.intArg(args, 0, 1000);
+        int readMicros = BenchUtil.intArg(args, 1, 500);
+        int work = BenchUtil.intArg(args, 2, 200);
+
+        Database.reset();
+        File f = BenchUtil.createFullPageFile(2, numPages, 1 << 16);
+        HeapFile hf = new LatentHeapFile(f, 2, readMicros * 1000L);
+        Database.getCatalog().addTable(hf, "bench");
+        long bytes = (long) numPages * BufferPool.getPageSize();
+
+        String[] modes = { "0", "16", "0", "16" };
+        for (String mode : modes) {
+            System.setProperty(BufferPool.PREFETCH_PROPERTY, mode);
+            BufferPool bp = Database.resetBufferPool(256);
+            long start = System.nanoTime();
+            scan(hf, work);
+            long nanos = System.nanoTime() - start;
+            BenchUtil.report("read-ahead " + mode + " pages", bytes, nanos);
+            System.out.printf("    prefetched %d, hit ratio %.2f, wasted %d, misses %d%n",
+                    bp.getPrefetchCount(), bp.getPrefetchHitRatio(),
+                    bp.getWastedPrefetchCount(), bp.getMissCount());
+        }
+        Database.getCatalog().clear();
+    }
+
+    static void scan(HeapFile hf, int work) throws Exception {
+        DbFileIterator it = hf.iterator(new TransactionId());
+        it.open();
+        long sum = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int v = ((IntField) t.getField(0)).getValue();
+            for (int i = 0; i < work; i++)
+                v = v * 31 + i;
+            sum += v;
+        }
+        it.close();
+        sink = sum;
+    }
+}
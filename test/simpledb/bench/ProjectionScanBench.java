@@ -0,0 +1,114 @@
+package simpledb.bench;
+
+import java.io.File;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapFileEncoder;
+import simpledb.HeapPageId;
+import simpledb.PaxFile;
+import simpledb.PaxPage;
+import simpledb.Permissions;
+import simpledb.SeqScan;
+import simpledb.TransactionId;
+import simpledb.TupleCursor;
+import simpledb.Utility;
+
+/**
+ * Scans a wide table of int columns stored as a HeapFile and as a PaxFile,
+ * through SeqScan with reused tuples, summing first two of the columns and
+ * then all of them, and reads the two columns of the PaxFile a page at a
+ * time with {@link PaxPage#getInts}. Reports throughput in MB of pages per
+ * second.
+ * <p>
+ * Usage: ProjectionScanBench [columns] [numPages] [rounds]
+ * <p>
+ * The pool holds both tables and is warmed before timing, so the numbers
+ * show the cost of reading fields out of resident pages: a PAX page keeps
+ * the two columns' values together instead of spread across every row.
+ */
+public class ProjectionScanBench {
+
+    public static void main(String[] args) throws Exception {
+        int columns = BenchUtil.intArg(args, 0, 20);
+        int numPages = BenchUtil.intArg(args, 1, 2000);
+        int rounds = BenchUtil.intArg(args, 2, 5);
+
+        Database.reset();
+        HeapFile rows = BenchUtil.createFullPageTable(columns, numPages);
+        File paxFile = File.createTempFile("paxbench", ".dat");
+        paxFile.deleteOnExit();
+        HeapFileEncoder.transpose(rows.getFile(), paxFile, BufferPool.getPageSize(),
+                rows.getTupleDesc());
+        PaxFile pax = new PaxFile(paxFile, Utility.getTupleDesc(columns));
+        Database.getCatalog().addTable(pax, "pax");
+        Database.resetBufferPool(numPages * 2 + 64);
+
+        int[] two = { 1, columns - 2 };
+        int[] all = new int[columns];
+        for (int j = 0; j < columns; j++)
+            all[j] = j;
+        long bytes = (long) numPages * BufferPool.getPageSize();
+        sum(rows, all);
+        sum(pax, all);
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            long s = sum(rows, two);
+            BenchUtil.report("rows, 2 of " + columns + " columns (" + s + ")", bytes,
+                    System.nanoTime() - start);
+            start = System.nanoTime();
+            s = sum(pax, two);
+            BenchUtil.report("pax, 2 of " + columns + " columns (" + s + ")", bytes,
+                    System.nanoTime() - start);
+            start = System.nanoTime();
+            s = sumColumns(pax, two);
+            BenchUtil.report("pax, 2 columns by page (" + s + ")", bytes,
+                    System.nanoTime() - start);
+            start = System.nanoTime();
+            s = sum(rows, all);
+            BenchUtil.report("rows, all columns", bytes, System.nanoTime() - start);
+            start = System.nanoTime();
+            s = sum(pax, all);
+            BenchUtil.report("pax, all columns", bytes, System.nanoTime() - start);
+        }
+        pax.close();
+        Database.getCatalog().clear();
+    }
+
+    /** @return the sum of the given columns over every row of hf */
+    private static long sum(HeapFile hf, int[] cols) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t", true);
+        scan.open();
+        long sum = 0;
+        while (scan.hasNext()) {
+            TupleCursor c = (TupleCursor) scan.next();
+            for (int j : cols)
+                sum += c.getInt(j);
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return sum;
+    }
+
+    /** @return the sum of the given int columns of pax, a page at a time */
+    private static long sumColumns(PaxFile pax, int[] cols) throws Exception {
+        TransactionId tid = new TransactionId();
+        BufferPool bp = Database.getBufferPool();
+        int[] values = new int[BufferPool.getPageSize() / 4]; // more than the slots
+        long sum = 0;
+        for (int p = 0; p < pax.numPages(); p++) {
+            HeapPageId pid = new HeapPageId(pax.getId(), p);
+            PaxPage page = (PaxPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+            for (int j : cols) {
+                int n = page.getInts(j, values);
+                for (int i = 0; i < n; i++)
+                    sum += values[i];
+            }
+            bp.unpinPage(tid, pid);
+        }
+        bp.transactionComplete(tid);
+        return sum;
+    }
+}
@@ -0,0 +1,114 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapPage;
+import simpledb.HeapPageId;
+
+/**
+ * Times HeapPage's slot bitmap operations on sparse and dense pages:
+ * counting empty slots, and walking the used slots with nextUsedSlot
+ * (without decoding tuples, which would hide the bitmap cost). Each is compared
+ * with the byte-at-a-time versions HeapPage used before, which counted bit
+ * by bit and rescanned from the current slot on every hasNext().
+ * <p>
+ * Usage: SlotBitmapBench [iterations]
+ */
+public class SlotBitmapBench {
+
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = BenchUtil.intArg(args, 0, 20000);
+
+        Database.reset();
+        HeapFile hf = BenchUtil.createFullPageTable(1, 1);
+        int[] percents = { 1, 10, 50, 100 };
+        for (int round = 0; round < 2; round++) {
+            for (int percent : percents) {
+                byte[] data = HeapPage.createEmptyPageData();
+                HeapPage empty = new HeapPage(new HeapPageId(hf.getId(), 0), data);
+                int numSlots = empty.getNumSlots();
+                Random r = new Random(percent);
+                for (int i = 0; i < numSlots; i++) {
+                    if (r.nextInt(100) < percent)
+                        data[i / 8] |= 1 << (i % 8);
+                }
+                HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), data);
+                int headerSize = (numSlots + 7) / 8;
+                String label = percent + "% full";
+
+                long start = System.nanoTime();
+                for (int n = 0; n < iterations; n++)
+                    sink += legacyNumEmptySlots(data, headerSize, numSlots);
+                report(label, "empty slots, per bit", start, iterations);
+
+                start = System.nanoTime();
+                for (int n = 0; n < iterations; n++)
+                    sink += page.getNumEmptySlots();
+                report(label, "empty slots, bitCount", start, iterations);
+
+                start = System.nanoTime();
+                for (int n = 0; n < iterations / 10; n++)
+                    sink += legacyWalk(data, numSlots);
+                report(label, "walk, rescanning", start, iterations / 10);
+
+                start = System.nanoTime();
+                for (int n = 0; n < iterations / 10; n++) {
+                    long sum = 0;
+                    for (int i = page.nextUsedSlot(0); i >= 0; i = page.nextUsedSlot(i + 1))
+                        sum += i;
+                    sink += sum;
+                }
+                report(label, "walk, trailing zeros", start, iterations / 10);
+            }
+        }
+        Database.getCatalog().clear();
+    }
+
+    static void report(String label, String name, long start, int iterations) {
+        System.out.printf("%-9s %-24s %10.1f ns/page%n", label, name,
+                (System.nanoTime() - start) / (double) iterations);
+    }
+
+    /** HeapPage.getNumEmptySlots as it was. */
+    static int legacyNumEmptySlots(byte[] header, int headerSize, int numSlots) {
+        int count = 0;
+        for (int j = 0; j < headerSize; j++) {
+            for (int i = 0; i < 8; i++)
+                count += (header[j] >> i) & 1;
+        }
+        return numSlots - count;
+    }
+
+    static boolean legacySlotUsed(byte[] header, int i) {
+        return ((header[i / 8] >> (i % 8)) & 1) > 0;
+    }
+
+    /** The used-slot walk of the old HeapPage iterator, without decoding. */
+    static long legacyWalk(byte[] header, int numSlots) {
+        long sum = 0;
+        int current = 0;
+        while (true) {
+            // hasNext(): scan forward from current without moving
+            int probe = current;
+            while (probe < numSlots && !legacySlotUsed(header, probe))
+                probe++;
+            if (probe == numSlots)
+                return sum;
+            // next(): calls hasNext() again for every slot it steps over
+            while (true) {
+                int again = current;
+                while (again < numSlots && !legacySlotUsed(header, again))
+                    again++;
+                if (legacySlotUsed(header, current)) {
+                    sum += current++;
+                    break;
+                }
+                current++;
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.HeapFile;
+import simpledb.HeapFileEncoder;
+import simpledb.IntField;
+import simpledb.Predicate;
+import simpledb.SeqScan;
+import simpledb.TransactionId;
+import simpledb.TupleDesc;
+import simpledb.Type;
+
+/**
+ * Encodes a CSV of readings, a timestamp in load order, a sensor and a
+ * value, into a heap file with zone maps, then scans it cold from the
+ * BufferPool for the readings since a recent timestamp: once with the
+ * predicate pushed into the SeqScan, which skips the pages the zone map
+ * rules out, and once filtering every tuple of a full scan. Reports pages
+ * skipped and throughput in MB of the table's pages per second.
+ * <p>
+ * Usage: ZoneMapScanBench [rows] [percent selected] [rounds]
+ */
+public class ZoneMapScanBench {
+
+    public static void main(String[] args) throws Exception {
+        int rows = BenchUtil.intArg(args, 0, 1000000);
+        int percent = BenchUtil.intArg(args, 1, 5);
+        int rounds = BenchUtil.intArg(args, 2, 5);
+
+        File csv = File.createTempFile("zonebench", ".txt");
+        csv.deleteOnExit();
+        Random r = new Random(24);
+        BufferedWriter w = new BufferedWriter(new FileWriter(csv), 1 << 20);
+        long time = 1350000000L;
+        for (int i = 0; i < rows; i++) {
+            time += r.nextInt(3);
+            w.append(Long.toString(time)).append(',')
+                .append(Integer.toString(r.nextInt(100))).append(',')
+                .append(Integer.toString(r.nextInt(10000))).append('\n');
+        }
+        w.close();
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE,
+                Type.INT_TYPE });
+
+        Database.reset();
+        File f = File.createTempFile("zonebench", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".zone").deleteOnExit();
+        HeapFileEncoder.convert(csv, f, BufferPool.getPageSize(), td, ',');
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, "readings");
+
+        int since = (int) (1350000000L + (time - 1350000000L) * (100 - percent) / 100);
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(since));
+        long bytes = (long) hf.numPages() * BufferPool.getPageSize();
+        System.out.println(hf.numPages() + " pages, selecting the last " + percent + "%");
+        for (int round = 0; round < rounds; round++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            SeqScan scan = new SeqScan(tid, hf.getId(), "r", true, p);
+            scan.open();
+            int n = 0;
+            while (scan.hasNext()) {
+                scan.next();
+                n++;
+            }
+            BenchUtil.report("pruned, " + n + " rows, " + scan.getPagesSkipped()
+                    + " pages skipped", bytes, System.nanoTime() - start);
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            tid = new TransactionId();
+            start = System.nanoTime();
+            scan = new SeqScan(tid, hf.getId(), "r", true);
+            scan.open();
+            n = 0;
+            while (scan.hasNext()) {
+                if (p.filter(scan.next()))
+                    n++;
+            }
+            BenchUtil.report("full scan, " + n + " rows", bytes, System.nanoTime() - start);
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        hf.close();
+        Database.getCatalog().clear();
+    }
+}
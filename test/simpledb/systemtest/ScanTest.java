@@ -67,6 +67,26 @@ public class ScanTest extends SimpleDbTestBase {
         Database.getBufferPool().transactionComplete(tid);
     }
 
+    /** A scan that reuses one TupleCursor returns the same rows as a plain scan. */
+    @Test public void testCursorScan() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, 3000, null, tuples);
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(new SeqScan(tid, f.getId(), "table", true), tuples);
+
+        // rows kept across calls to next() must be retained
+        SeqScan scan = new SeqScan(tid, f.getId(), "table", true);
+        ArrayList<Tuple> kept = new ArrayList<Tuple>();
+        scan.open();
+        while (scan.hasNext())
+            kept.add(scan.next().retain());
+        scan.close();
+        assertEquals(tuples.size(), kept.size());
+        for (int i = 0; i < kept.size(); ++i)
+            assertEquals(tuples.get(i), SystemTestUtil.tupleToList(kept.get(i)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     /** Test getAlias, getTableName, and that TupleDesc has alias correctly  */
     @Test public void testTupleDesc() throws IOException, DbException, TransactionAbortedException {
     	ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();